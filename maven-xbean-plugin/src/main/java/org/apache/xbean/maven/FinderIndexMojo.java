@@ -0,0 +1,83 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.xbean.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.xbean.finder.ArchiveIndex;
+import org.apache.xbean.finder.archive.FileArchive;
+
+/**
+ * Precomputes the xbean-finder annotation index of the compiled classes
+ * so AnnotationFinder can read it at runtime instead of scanning the bytecode.
+ *
+ * @version $Id$
+ * @goal index
+ * @description Creates the xbean-finder annotation index of the project classes
+ * @phase process-classes
+ */
+public class FinderIndexMojo extends AbstractMojo {
+
+    /**
+     * @parameter expression="${project.build.outputDirectory}"
+     * @required
+     */
+    private File classesDirectory;
+
+    /**
+     * @parameter expression="${xbean.finder.index.skip}" default-value="false"
+     */
+    private boolean skip;
+
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        if (skip) {
+            getLog().info("Skipping xbean-finder index");
+            return;
+        }
+        if (!classesDirectory.isDirectory()) {
+            getLog().info("No classes to index in " + classesDirectory);
+            return;
+        }
+
+        final File index = new File(classesDirectory, ArchiveIndex.LOCATION);
+        final URLClassLoader loader;
+        try {
+            loader = new URLClassLoader(new URL[]{classesDirectory.toURI().toURL()}, getClass().getClassLoader());
+        } catch (MalformedURLException e) {
+            throw new MojoExecutionException("Error during setting up classpath", e);
+        }
+
+        try {
+            ArchiveIndex.write(new FileArchive(loader, classesDirectory), index);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Can't write " + index, e);
+        } catch (RuntimeException e) {
+            final MojoFailureException failure = new MojoFailureException("Can't index " + classesDirectory + ": " + e.getMessage());
+            failure.initCause(e);
+            throw failure;
+        }
+
+        getLog().info("Wrote xbean-finder index " + index);
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.xbean.maven;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.util.List;
+
+import org.apache.xbean.finder.AnnotationFinder;
+import org.apache.xbean.finder.ArchiveIndex;
+import org.apache.xbean.finder.archive.FileArchive;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FinderIndexMojoTest {
+    private static final File BASEDIR = new File(System.getProperty("basedir", "."));
+
+    @Test
+    public void index() throws Exception {
+        final File classes = classes("index");
+
+        mojo(classes, false).execute();
+
+        final File index = new File(classes, ArchiveIndex.LOCATION);
+        assertTrue(index.isFile());
+
+        final AnnotationFinder.Options options = new AnnotationFinder.Options().checkRuntimeAnnotation(false).indexes(true);
+        final List<String> names = new AnnotationFinder(new FileArchive(getClass().getClassLoader(), classes), options)
+                .getAnnotatedClassNames();
+        assertEquals(1, names.size());
+        assertEquals(FinderIndexMojoTest.class.getName(), names.get(0));
+    }
+
+    @Test
+    public void skip() throws Exception {
+        final File classes = classes("skip");
+
+        mojo(classes, true).execute();
+
+        assertFalse(new File(classes, ArchiveIndex.LOCATION).exists());
+    }
+
+    @Test
+    public void noClasses() throws Exception {
+        final File classes = new File(BASEDIR, "target/FinderIndexMojoTest/missing");
+
+        mojo(classes, false).execute();
+
+        assertFalse(classes.exists());
+    }
+
+    private static FinderIndexMojo mojo(final File classes, final boolean skip) throws Exception {
+        final FinderIndexMojo mojo = new FinderIndexMojo();
+        set(mojo, "classesDirectory", classes);
+        set(mojo, "skip", skip);
+        return mojo;
+    }
+
+    private static void set(final Object target, final String name, final Object value) throws Exception {
+        final Field field = target.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+
+    // a classes directory holding this test, annotated with @Test
+    private static File classes(final String name) throws Exception {
+        final String path = FinderIndexMojoTest.class.getName().replace('.', '/') + ".class";
+        final File classes = new File(BASEDIR, "target/FinderIndexMojoTest/" + name);
+        final File file = new File(classes, path);
+        file.getParentFile().mkdirs();
+
+        final InputStream in = FinderIndexMojoTest.class.getClassLoader().getResourceAsStream(path);
+        final OutputStream out = new FileOutputStream(file);
+        try {
+            final byte[] buffer = new byte[1024];
+            for (int length = in.read(buffer); length != -1; length = in.read(buffer)) {
+                out.write(buffer, 0, length);
+            }
+        } finally {
+            in.close();
+            out.close();
+        }
+        return classes;
+    }
+}
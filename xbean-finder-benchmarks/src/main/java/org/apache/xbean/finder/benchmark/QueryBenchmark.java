@@ -0,0 +1,129 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.benchmark;
+
+import org.apache.xbean.finder.Annotated;
+import org.apache.xbean.finder.AnnotationFinder;
+import org.apache.xbean.finder.archive.JarArchive;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The main queries of a linked finder. Classes are loaded by the first invocation
+ * and cached by the finder, so the steady state cost of the queries is measured.
+ *
+ * @version $Rev$ $Date$
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class QueryBenchmark {
+
+    @Param({"1000", "10000"})
+    public int classes;
+
+    @Param({"20"})
+    public int annotations;
+
+    @Param({"4"})
+    public int depth;
+
+    private File work;
+    private URLClassLoader loader;
+    private AnnotationFinder finder;
+    private Class<? extends Annotation> annotation;
+    private Class<? extends Annotation> metaAnnotation;
+    private Class<?> service;
+    private Class<?> root;
+
+    @Setup
+    public void scan() throws Exception {
+        work = Files.tempDirectory("xbean-finder-benchmark");
+        final File jar = new SyntheticJar(classes, annotations, depth, 0).writeJar(new File(work, "synthetic.jar"));
+        loader = new URLClassLoader(new URL[]{jar.toURI().toURL()}, QueryBenchmark.class.getClassLoader());
+
+        finder = new AnnotationFinder(new JarArchive(loader, new URL("jar:" + jar.toURI().toURL() + "!/"))).link();
+        annotation = loader.loadClass(SyntheticJar.annotation(2)).asSubclass(Annotation.class);
+        metaAnnotation = loader.loadClass(SyntheticJar.annotation(0)).asSubclass(Annotation.class);
+        service = loader.loadClass(SyntheticJar.SERVICE);
+        root = loader.loadClass(SyntheticJar.className(0));
+    }
+
+    @TearDown
+    public void delete() throws IOException {
+        loader.close();
+        Files.delete(work);
+    }
+
+    @Benchmark
+    public List<Class<?>> findAnnotatedClasses() {
+        return finder.findAnnotatedClasses(annotation);
+    }
+
+    @Benchmark
+    public List<Method> findAnnotatedMethods() {
+        return finder.findAnnotatedMethods(annotation);
+    }
+
+    @Benchmark
+    public List<Field> findAnnotatedFields() {
+        return finder.findAnnotatedFields(annotation);
+    }
+
+    @Benchmark
+    public List<Annotated<Class<?>>> findMetaAnnotatedClasses() {
+        return finder.findMetaAnnotatedClasses(metaAnnotation);
+    }
+
+    @Benchmark
+    public List<? extends Class<?>> findImplementations() {
+        return finder.findImplementations(service);
+    }
+
+    @Benchmark
+    public List<? extends Class<?>> findSubclasses() {
+        return finder.findSubclasses(root);
+    }
+
+    @Benchmark
+    public Iterable<String> findAnnotatedClassNames() {
+        return finder.findAnnotatedClassNames(annotation.getName());
+    }
+}
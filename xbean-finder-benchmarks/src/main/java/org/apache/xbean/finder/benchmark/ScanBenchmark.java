@@ -0,0 +1,129 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.benchmark;
+
+import org.apache.xbean.finder.AnnotationFinder;
+import org.apache.xbean.finder.archive.ClasspathArchive;
+import org.apache.xbean.finder.archive.FileArchive;
+import org.apache.xbean.finder.archive.JarArchive;
+import org.apache.xbean.finder.archive.MappedJarArchive;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creation of an AnnotationFinder over the generated classes for each kind of archive,
+ * and the link() of a fresh finder.
+ *
+ * @version $Rev$ $Date$
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ScanBenchmark {
+
+    @Param({"1000", "10000"})
+    public int classes;
+
+    @Param({"20"})
+    public int annotations;
+
+    @Param({"4"})
+    public int depth;
+
+    @Param({"0", "3"})
+    public int releases;
+
+    private File work;
+    private File jar;
+    private File dir;
+    private URL jarUrl;
+    private URLClassLoader loader;
+
+    @Setup
+    public void generate() throws IOException {
+        work = Files.tempDirectory("xbean-finder-benchmark");
+        final SyntheticJar synthetic = new SyntheticJar(classes, annotations, depth, releases);
+        jar = synthetic.writeJar(new File(work, "synthetic.jar"));
+        dir = synthetic.writeDirectory(new File(work, "classes"));
+        jarUrl = new URL("jar:" + jar.toURI().toURL() + "!/");
+        loader = new URLClassLoader(new URL[]{jar.toURI().toURL()}, ScanBenchmark.class.getClassLoader());
+    }
+
+    @TearDown
+    public void delete() throws IOException {
+        loader.close();
+        Files.delete(work);
+    }
+
+    @Benchmark
+    public AnnotationFinder jarArchive() {
+        return new AnnotationFinder(new JarArchive(loader, jarUrl));
+    }
+
+    @Benchmark
+    public AnnotationFinder mappedJarArchive() {
+        return new AnnotationFinder(new MappedJarArchive(loader, jarUrl));
+    }
+
+    @Benchmark
+    public AnnotationFinder fileArchive() {
+        return new AnnotationFinder(new FileArchive(loader, dir));
+    }
+
+    @Benchmark
+    public AnnotationFinder classpathArchive() throws IOException {
+        return new AnnotationFinder(new ClasspathArchive(loader, jar.toURI().toURL()));
+    }
+
+    @Benchmark
+    public AnnotationFinder link(Unlinked unlinked) {
+        return unlinked.finder.link();
+    }
+
+    /**
+     * A finder created before each link() invocation, so only the linking is measured.
+     */
+    @State(Scope.Thread)
+    public static class Unlinked {
+        private AnnotationFinder finder;
+
+        @Setup(Level.Invocation)
+        public void scan(ScanBenchmark benchmark) {
+            finder = new AnnotationFinder(new JarArchive(benchmark.loader, benchmark.jarUrl));
+        }
+    }
+}
@@ -0,0 +1,225 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.benchmark;
+
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+/**
+ * Generates the classes scanned by the benchmarks, written as a jar and as an exploded directory.
+ * <p/>
+ * The classes are spread in packages of 100 classes, each one annotated with one of the
+ * generated annotations on the class, a field, a method and its parameter. Classes form
+ * chains of the given depth whose roots implement {@link #SERVICE}. The first annotation
+ * is a meta-annotation root used by the second one.
+ * <p/>
+ * With releases > 0 the jar is a multi-release jar where every tenth class is also
+ * present under META-INF/versions/N/ for each release from 9.
+ *
+ * @version $Rev$ $Date$
+ */
+public class SyntheticJar {
+    public static final String PACKAGE = "synthetic";
+    public static final String SERVICE = PACKAGE + ".Service";
+    public static final String METATYPE = PACKAGE + ".annotation.Metatype";
+
+    private static final int CLASSES_PER_PACKAGE = 100;
+
+    private final int classes;
+    private final int annotations;
+    private final int depth;
+    private final int releases;
+
+    public SyntheticJar(int classes, int annotations, int depth, int releases) {
+        if (classes < 1 || annotations < 2 || depth < 1 || releases < 0) {
+            throw new IllegalArgumentException("classes, depth > 0, annotations > 1 and releases >= 0 expected");
+        }
+        this.classes = classes;
+        this.annotations = annotations;
+        this.depth = depth;
+        this.releases = releases;
+    }
+
+    public static String annotation(int index) {
+        return PACKAGE + ".annotation.A" + index;
+    }
+
+    public static String className(int index) {
+        return PACKAGE + ".p" + (index / CLASSES_PER_PACKAGE) + ".C" + index;
+    }
+
+    /**
+     * @return the class files by entry name, versioned entries included
+     */
+    public Map<String, byte[]> generate() {
+        final Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+
+        entries.put(path(METATYPE), annotationType(METATYPE, METATYPE, null));
+        entries.put(path(annotation(0)), annotationType(annotation(0), METATYPE, null));
+        entries.put(path(annotation(1)), annotationType(annotation(1), METATYPE, annotation(0)));
+        for (int i = 2; i < annotations; i++) {
+            entries.put(path(annotation(i)), annotationType(annotation(i), null, null));
+        }
+
+        entries.put(path(SERVICE), service());
+
+        for (int i = 0; i < classes; i++) {
+            final byte[] bytecode = type(i);
+            entries.put(path(className(i)), bytecode);
+            if (i % 10 == 0) {
+                for (int release = 9; release < 9 + releases; release++) {
+                    entries.put("META-INF/versions/" + release + "/" + path(className(i)), bytecode);
+                }
+            }
+        }
+        return entries;
+    }
+
+    public File writeJar(File file) throws IOException {
+        final Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        if (releases > 0) {
+            manifest.getMainAttributes().put(new Attributes.Name("Multi-Release"), "true");
+        }
+
+        final JarOutputStream out = new JarOutputStream(new FileOutputStream(file), manifest);
+        try {
+            for (Map.Entry<String, byte[]> entry : generate().entrySet()) {
+                out.putNextEntry(new JarEntry(entry.getKey()));
+                out.write(entry.getValue());
+                out.closeEntry();
+            }
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    public File writeDirectory(File dir) throws IOException {
+        for (Map.Entry<String, byte[]> entry : generate().entrySet()) {
+            final File file = new File(dir, entry.getKey());
+            if (!file.getParentFile().isDirectory() && !file.getParentFile().mkdirs()) {
+                throw new IOException("Can't create " + file.getParentFile());
+            }
+            final OutputStream out = new FileOutputStream(file);
+            try {
+                out.write(entry.getValue());
+            } finally {
+                out.close();
+            }
+        }
+        return dir;
+    }
+
+    private byte[] type(int index) {
+        final String name = internal(className(index));
+        final boolean root = index % depth == 0;
+        final String superName = root ? "java/lang/Object" : internal(className(index - 1));
+
+        final ClassWriter writer = new ClassWriter(0);
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, name, null, superName,
+                root ? new String[]{internal(SERVICE)} : null);
+        annotate(writer.visitAnnotation(descriptor(annotation(index % annotations)), true), "class" + index);
+
+        final FieldVisitor field = writer.visitField(Opcodes.ACC_PUBLIC, "value", "Ljava/lang/String;", null, null);
+        annotate(field.visitAnnotation(descriptor(annotation((index + 1) % annotations)), true), "field");
+        field.visitEnd();
+
+        final MethodVisitor constructor = writer.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        constructor.visitCode();
+        constructor.visitVarInsn(Opcodes.ALOAD, 0);
+        constructor.visitMethodInsn(Opcodes.INVOKESPECIAL, superName, "<init>", "()V", false);
+        constructor.visitInsn(Opcodes.RETURN);
+        constructor.visitMaxs(1, 1);
+        constructor.visitEnd();
+
+        final MethodVisitor method = writer.visitMethod(Opcodes.ACC_PUBLIC, "run" + index, "(Ljava/lang/String;)V", null, null);
+        annotate(method.visitAnnotation(descriptor(annotation((index + 2) % annotations)), true), "method");
+        annotate(method.visitParameterAnnotation(0, descriptor(annotation((index + 3) % annotations)), true), "parameter");
+        method.visitCode();
+        method.visitInsn(Opcodes.RETURN);
+        method.visitMaxs(0, 2);
+        method.visitEnd();
+
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    private static byte[] annotationType(String annotation, String metaAnnotation, String annotatedWith) {
+        final ClassWriter writer = new ClassWriter(0);
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_ABSTRACT | Opcodes.ACC_INTERFACE | Opcodes.ACC_ANNOTATION,
+                internal(annotation), null, "java/lang/Object", new String[]{"java/lang/annotation/Annotation"});
+
+        final AnnotationVisitor retention = writer.visitAnnotation("Ljava/lang/annotation/Retention;", true);
+        retention.visitEnum("value", "Ljava/lang/annotation/RetentionPolicy;", "RUNTIME");
+        retention.visitEnd();
+        if (metaAnnotation != null) {
+            writer.visitAnnotation(descriptor(metaAnnotation), true).visitEnd();
+        }
+        if (annotatedWith != null) {
+            annotate(writer.visitAnnotation(descriptor(annotatedWith), true), "meta");
+        }
+
+        final MethodVisitor value = writer.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_ABSTRACT, "value", "()Ljava/lang/String;", null, null);
+        final AnnotationVisitor defaultValue = value.visitAnnotationDefault();
+        defaultValue.visit(null, "");
+        defaultValue.visitEnd();
+        value.visitEnd();
+
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    private static byte[] service() {
+        final ClassWriter writer = new ClassWriter(0);
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_ABSTRACT | Opcodes.ACC_INTERFACE,
+                internal(SERVICE), null, "java/lang/Object", null);
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    private static void annotate(AnnotationVisitor visitor, String value) {
+        visitor.visit("value", value);
+        visitor.visitEnd();
+    }
+
+    private static String internal(String className) {
+        return className.replace('.', '/');
+    }
+
+    private static String descriptor(String className) {
+        return "L" + internal(className) + ";";
+    }
+
+    private static String path(String className) {
+        return internal(className) + ".class";
+    }
+}
@@ -35,6 +35,7 @@ import java.util.List;
 import java.util.Map;
 
 import org.apache.xbean.asm9.original.commons.EmptyVisitor;
+import org.apache.xbean.finder.util.LazyView;
 import org.apache.xbean.finder.util.SingleLinkedList;
 import org.objectweb.asm.AnnotationVisitor;
 import org.objectweb.asm.ClassReader;
@@ -220,6 +221,21 @@ public abstract class AbstractFinder implements IAnnotationFinder {
         return classes;
     }
 
+    /**
+     * Names of the classes annotated with the given annotation type, evaluated
+     * while iterating and without loading any class. Unlike findAnnotatedClasses
+     * the retention of the annotation is not checked.
+     *
+     * @param annotation class name of the annotation
+     */
+    public Iterable<String> findAnnotatedClassNames(String annotation) {
+        return new LazyView<Info, String>(getAnnotationInfos(annotation)) {
+            protected String map(Info info) {
+                return info instanceof ClassInfo ? info.getName() : null;
+            }
+        };
+    }
+
     public List<Annotated<Class<?>>> findMetaAnnotatedClasses(Class<? extends Annotation> annotation) {
         List<Class<?>> classes = findAnnotatedClasses(annotation);
         List<Annotated<Class<?>>> list = new ArrayList<Annotated<Class<?>>>();
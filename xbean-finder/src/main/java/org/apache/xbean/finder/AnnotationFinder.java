@@ -20,28 +20,42 @@
 
 package org.apache.xbean.finder;
 
+import org.apache.xbean.asm9.original.commons.AsmConstants;
 import org.apache.xbean.asm9.original.commons.EmptyVisitor;
 import org.apache.xbean.finder.archive.Archive;
+import org.apache.xbean.finder.archive.BytecodeInputStream;
+import org.apache.xbean.finder.archive.ChecksumEntry;
+import org.apache.xbean.finder.archive.CompositeArchive;
+import org.apache.xbean.finder.archive.FileArchive;
+import org.apache.xbean.finder.filter.PackageScope;
 import org.apache.xbean.finder.util.Classes;
-import org.apache.xbean.finder.util.SingleLinkedList;
+import org.apache.xbean.finder.util.ConstantPool;
+import org.apache.xbean.finder.util.CompactList;
+import org.apache.xbean.finder.util.LazyView;
+import org.apache.xbean.finder.util.SymbolTable;
 import org.objectweb.asm.AnnotationVisitor;
 import org.objectweb.asm.Attribute;
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.FieldVisitor;
 import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.annotation.Annotation;
 import java.lang.annotation.ElementType;
 import java.lang.annotation.Target;
 import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Array;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.Member;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -52,6 +66,14 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
 
 /**
  * ClassFinder searches the classpath of the specified classloader for
@@ -73,24 +95,44 @@ public class AnnotationFinder implements IAnnotationFinder {
     // xbean.finder.prevent-lazy-linking= true will prevent it, see readClassDef(Class)
     private static final boolean ALLOW_LAZY_LINKING = !Boolean.getBoolean("xbean.finder.prevent-lazy-linking");
 
-    private final Set<Class<? extends Annotation>> metaroots = new HashSet<Class<? extends Annotation>>();
+    // names of the annotation types which are meta-annotation roots, decided from their bytecode
+    private final Set<String> metaroots = new CopyOnWriteArraySet<String>();
 
     protected final Map<String, List<Info>> annotated = newAnnotatedMap();
 
     protected final Map<String, ClassInfo> classInfos = newClassInfoMap();
     protected final Map<String, ClassInfo> originalInfos = newClassInfoMap();
-    private final List<String> classesNotLoaded = new LinkedList<String>();
+    private final SymbolTable symbols = new SymbolTable();
+    private final List<String> classesNotLoaded = newClassesNotLoadedList();
     private final Archive archive;
     private final boolean checkRuntimeAnnotation;
-    private volatile boolean linking;
+    // set for the thread running a linking method, a query of another thread doesn't link what it reads
+    private final ThreadLocal<Boolean> linking = new ThreadLocal<Boolean>();
+    private boolean subclassesLinked;
+    private boolean implementationsLinked;
+    private boolean metaAnnotationsLinked;
+    private byte[][] prefilter;
+    // what the infos read from the bytecode depend on, see getScanConfiguration()
+    private String scanConfiguration;
+    private final AtomicInteger prefiltered = new AtomicInteger();
+    private volatile ScanListener listener;
+    private final boolean deduplicate;
+    // checksum of the copy read for each class, only while scanning with deduplicate()
+    private Map<String, Checksum> checksums;
+    private final List<DuplicateClass> duplicates = new ArrayList<DuplicateClass>();
+
+    private volatile Hierarchy hierarchy;
+    // changes of classInfos, the hierarchy index is stale once it differs from the indexed count
+    private final AtomicInteger modifications = new AtomicInteger();
 
     private AnnotationFinder(AnnotationFinder parent, Iterable<String> classNames) {
         this.archive = new SubArchive(classNames);
         this.checkRuntimeAnnotation = parent.checkRuntimeAnnotation;
+        this.deduplicate = parent.deduplicate;
         this.metaroots.addAll(parent.metaroots);
 
-        for (Class<? extends Annotation> metaroot : metaroots) {
-            final ClassInfo info = parent.classInfos.get(metaroot.getName());
+        for (String metaroot : metaroots) {
+            final ClassInfo info = parent.classInfos.get(metaroot);
             if (info == null) continue;
             readClassDef(info);
         }
@@ -100,19 +142,16 @@ public class AnnotationFinder implements IAnnotationFinder {
             readClassDef(info);
         }
 
-        resolveAnnotations(parent, new LinkedList<String>());
+        resolveAnnotations(parent, new HashSet<String>());
         for (ClassInfo classInfo : classInfos.values()) {
             if (isMetaRoot(classInfo)) {
-                try {
-                    metaroots.add((Class<? extends Annotation>) classInfo.get());
-                } catch (ClassNotFoundException e) {
-                    classesNotLoaded.add(classInfo.getName());
-                }
+                metaroots.add(classInfo.getName());
             }
         }
 
-        for (Class<? extends Annotation> metaroot : metaroots) {
-            List<Info> infoList = annotated.get(metaroot.getName());
+        for (String metaroot : metaroots) {
+            List<Info> infoList = annotated.get(metaroot);
+            if (infoList == null) continue;
             for (Info info : infoList) {
                 final String className = info.getName() + "$$";
                 final ClassInfo i = parent.classInfos.get(className);
@@ -130,6 +169,28 @@ public class AnnotationFinder implements IAnnotationFinder {
         return new HashMap<String, ClassInfo>();
     }
 
+    protected List<String> newClassesNotLoadedList() {
+        return new LinkedList<String>();
+    }
+
+    /**
+     * @return the list used for the annotated index entries and the subclasses of a ClassInfo
+     */
+    protected <T> List<T> newInfoList() {
+        return new CompactList<T>();
+    }
+
+    /**
+     * When true the classes found more than once are reported by {@link #getDuplicates()}
+     * and the copies identical to the one already read, by CRC-32 and size, are not parsed,
+     * the info of the first copy is kept. Different copies are parsed and replace the previous
+     * one as usual. The classes read from an index or a cache have no known checksum and are
+     * always reported as different copies. Defaults to {@link Options#deduplicate(boolean)}.
+     */
+    protected boolean deduplicate() {
+        return deduplicate;
+    }
+
     protected boolean cleanOnNaked() {
         return false;
     }
@@ -144,26 +205,396 @@ public class AnnotationFinder implements IAnnotationFinder {
      * @param checkRuntimeAnnotation Has no effect on findMetaAnnotated* methods
      */
     public AnnotationFinder(Archive archive, boolean checkRuntimeAnnotation) {
+        this(archive, new Options().checkRuntimeAnnotation(checkRuntimeAnnotation));
+    }
+
+    public AnnotationFinder(Archive archive) {
+        this(archive, true);
+    }
+
+    /**
+     * Scans the archive as configured by the options, see {@link Options}.
+     *
+     * @param archive
+     * @param options how the archive is scanned, the options can be combined
+     */
+    public AnnotationFinder(Archive archive, Options options) {
         this.archive = archive;
-        this.checkRuntimeAnnotation = checkRuntimeAnnotation;
+        this.checkRuntimeAnnotation = options.checkRuntimeAnnotation;
+        this.listener = options.listener;
+        this.deduplicate = options.deduplicate;
 
-        for (Archive.Entry entry : archive) {
-            final String className = entry.getName();
-            try {
-                readClassDef(entry.getName(), entry.getBytecode());
-            } catch (NoClassDefFoundError e) {
-                throw new NoClassDefFoundError("Could not fully load class: " + className + "\n due to:" + e.getMessage());
-            } catch (IOException e) {
-                e.printStackTrace();
+        if (options.annotationTypes != null) {
+            final List<byte[]> descriptors = new ArrayList<byte[]>();
+            for (String annotationType : options.annotationTypes) {
+                descriptors.add(ConstantPool.utf8("L" + annotationType.replace('.', '/') + ";"));
             }
+            this.prefilter = descriptors.toArray(new byte[descriptors.size()][]);
         }
+        this.scanConfiguration = scanConfiguration(options.annotationTypes);
+
+        readClassDefs(options);
 
         // keep track of what was originally from the archives
         originalInfos.putAll(classInfos);
     }
 
-    public AnnotationFinder(Archive archive) {
-        this(archive, true);
+    private void readClassDefs(Options options) {
+        if (deduplicate()) {
+            checksums = new HashMap<String, Checksum>();
+        }
+        try {
+            if (options.parallelism < 1 || options.executor != null) {
+                scan(archive, options, options.executor);
+                return;
+            }
+
+            final ForkJoinPool pool = new ForkJoinPool(options.parallelism);
+            try {
+                scan(archive, options, pool);
+            } finally {
+                pool.shutdown();
+            }
+        } finally {
+            checksums = null;
+        }
+    }
+
+    /**
+     * Scans the archives one by one so each of them can be measured, read from
+     * its index or its cached class infos, and its classes compared to the ones
+     * of the previous archives.
+     */
+    private void scan(Archive archive, Options options, Executor executor) {
+        if (archive instanceof CompositeArchive) {
+            for (Archive nested : ((CompositeArchive) archive).getArchives()) {
+                scan(nested, options, executor);
+            }
+            return;
+        }
+
+        final long start = System.nanoTime();
+
+        // the indexes and caches hold the infos read by a finder which doesn't filter them
+        final boolean reusable = scanConfiguration != null;
+        List<ScannedClass> known = options.indexes && reusable ? readIndex(archive) : null;
+        String fingerprint = null;
+        if (known == null && options.cache != null && reusable) {
+            fingerprint = options.cache.fingerprint(this, archive);
+            if (fingerprint != null) {
+                known = options.cache.load(this, archive, fingerprint);
+            }
+        }
+        if (known != null) {
+            for (ScannedClass scanned : known) {
+                if (checksums != null && scanned.classInfo != null) {
+                    unique(archive, scanned.getName());
+                }
+                scanned.index();
+            }
+            archiveScanned(new ArchiveScan(archive, System.nanoTime() - start, 0, known.size(), 0, 0, 0, 0));
+            return;
+        }
+
+        final ArchiveScanner scanner = new ArchiveScanner(archive, fingerprint != null);
+        if (executor == null) {
+            scanner.scan();
+        } else {
+            scanner.scan(executor, options.parallelism);
+        }
+
+        // an archive missing classes would be incomplete once reloaded
+        if (fingerprint != null && scanner.failed == 0 && scanner.identical == 0) {
+            options.cache.store(this, archive, fingerprint, scanner.scanned);
+        }
+        archiveScanned(new ArchiveScan(archive, System.nanoTime() - start, scanner.bytesRead, scanner.entries,
+                scanner.entries - scanner.skipped - scanner.failed - scanner.identical, scanner.skipped, scanner.failed, scanner.identical));
+    }
+
+    /**
+     * @return the classes of the index shipped with the archive, null if it has none or it can't be read
+     */
+    private List<ScannedClass> readIndex(Archive archive) {
+        final List<ScannedClass> indexed;
+        try {
+            indexed = ArchiveIndex.read(this, archive);
+        } catch (IOException e) {
+            return null; // unreadable index, scan the bytecode
+        }
+        if (indexed == null) return null;
+
+        // the index describes the whole archive
+        final PackageScope scope = ArchiveIndex.scope(archive);
+        if (scope == null) return indexed;
+
+        final List<ScannedClass> scoped = new ArrayList<ScannedClass>();
+        for (ScannedClass scanned : indexed) {
+            if (scope.accept(scanned.getName() + ".")) {
+                scoped.add(scanned);
+            }
+        }
+        return scoped;
+    }
+
+    /**
+     * The infos of a class depend on the annotations the finder keeps, they can be
+     * reused by another finder only if both have the same configuration.
+     *
+     * @return the annotation types of the prefilter, "*" for all, null if a subclass
+     * overrides {@link #isTracked(String)} or {@link #cleanOnNaked()}
+     */
+    String getScanConfiguration() {
+        return scanConfiguration;
+    }
+
+    private String scanConfiguration(Iterable<String> annotationTypes) {
+        if (overrides("isTracked", String.class) || overrides("cleanOnNaked")) return null;
+        if (annotationTypes == null) return "*";
+
+        final List<String> names = new ArrayList<String>();
+        for (String annotationType : annotationTypes) {
+            names.add(annotationType);
+        }
+        Collections.sort(names);
+        final StringBuilder configuration = new StringBuilder();
+        for (String name : names) {
+            configuration.append(name).append(',');
+        }
+        return configuration.toString();
+    }
+
+    private boolean overrides(String name, Class<?>... parameterTypes) {
+        for (Class<?> type = getClass(); type != AnnotationFinder.class; type = type.getSuperclass()) {
+            try {
+                type.getDeclaredMethod(name, parameterTypes);
+                return true;
+            } catch (NoSuchMethodException e) {
+                // no-op: look at the parent
+            }
+        }
+        return false;
+    }
+
+    private void archiveScanned(ArchiveScan scan) {
+        final ScanListener listener = this.listener;
+        if (listener != null) {
+            listener.archiveScanned(scan);
+        }
+    }
+
+    /**
+     * Reads the entries of one archive and counts what was read.
+     * <p/>
+     * The entries are iterated and compared to the previous copies by the calling thread.
+     * When parallel, the parsing runs on the executor and the parsed infos are indexed
+     * in archive order so the resulting finder is the same as the sequential one.
+     */
+    private final class ArchiveScanner {
+        private final Archive archive;
+        // the parsed classes, kept to be stored in a cache
+        private final List<ScannedClass> scanned;
+        private final int prefilteredBefore = prefiltered.get();
+        private long bytesRead;
+        private int entries;
+        private int skipped;
+        private int failed;
+        private int identical;
+
+        private ArchiveScanner(Archive archive, boolean keep) {
+            this.archive = archive;
+            this.scanned = keep ? new ArrayList<ScannedClass>() : null;
+        }
+
+        private void scan() {
+            for (Archive.Entry entry : archive) {
+                final String className = entry.getName();
+                entries++;
+                try {
+                    final InputStream in = open(entry);
+                    if (in == null) continue;
+
+                    if (scanned != null) {
+                        index(parse(className, in));
+                    } else if (in instanceof BytecodeInputStream) {
+                        bytesRead += ((BytecodeInputStream) in).getLength();
+                        readClassDef(className, in);
+                    } else {
+                        final CountingInputStream counting = new CountingInputStream(in);
+                        try {
+                            readClassDef(className, counting);
+                        } finally {
+                            bytesRead += counting.count;
+                        }
+                    }
+                } catch (NoClassDefFoundError e) {
+                    throw new NoClassDefFoundError("Could not fully load class: " + className + "\n due to:" + e.getMessage());
+                } catch (IOException e) {
+                    failed++;
+                    e.printStackTrace();
+                }
+            }
+            skipped = prefiltered.get() - prefilteredBefore;
+        }
+
+        private void scan(Executor executor, int parallelism) {
+            if (parallelism < 1) throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+
+            // bounded window so we don't hold the parsed infos of the whole archive in memory
+            final int window = parallelism * 4;
+            final LinkedList<FutureTask<ScannedClass>> pending = new LinkedList<FutureTask<ScannedClass>>();
+            try {
+                for (final Archive.Entry entry : archive) {
+                    final String className = entry.getName();
+                    entries++;
+                    final InputStream bytecode;
+                    try {
+                        bytecode = checksums == null ? null : unique(archive, entry);
+                    } catch (IOException e) {
+                        failed++;
+                        e.printStackTrace();
+                        continue;
+                    }
+                    if (checksums != null && bytecode == null) {
+                        identical++;
+                        continue;
+                    }
+
+                    final FutureTask<ScannedClass> task = new FutureTask<ScannedClass>(new Callable<ScannedClass>() {
+                        public ScannedClass call() throws Exception {
+                            try {
+                                return parse(className, bytecode != null ? bytecode : entry.getBytecode());
+                            } catch (NoClassDefFoundError e) {
+                                throw new NoClassDefFoundError("Could not fully load class: " + className + "\n due to:" + e.getMessage());
+                            }
+                        }
+                    });
+                    pending.add(task);
+                    executor.execute(task);
+
+                    if (pending.size() >= window) {
+                        index(pending.removeFirst());
+                    }
+                }
+                while (!pending.isEmpty()) {
+                    index(pending.removeFirst());
+                }
+                skipped = prefiltered.get() - prefilteredBefore;
+            } finally {
+                for (FutureTask<ScannedClass> task : pending) {
+                    task.cancel(true);
+                }
+            }
+        }
+
+        /**
+         * @return the bytecode of the entry, null if an identical copy of the class was already read
+         */
+        private InputStream open(Archive.Entry entry) throws IOException {
+            if (checksums == null) return entry.getBytecode();
+
+            final InputStream in = unique(archive, entry);
+            if (in == null) {
+                identical++;
+            }
+            return in;
+        }
+
+        private void index(FutureTask<ScannedClass> task) {
+            try {
+                index(task.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while scanning " + archive, e);
+            } catch (ExecutionException e) {
+                final Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    failed++;
+                    cause.printStackTrace();
+                } else if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                } else {
+                    throw new IllegalStateException(cause);
+                }
+            }
+        }
+
+        private void index(ScannedClass scannedClass) {
+            bytesRead += scannedClass.bytesRead;
+            scannedClass.index();
+            if (scanned != null) {
+                scanned.add(scannedClass);
+            }
+        }
+    }
+
+    // may run on the executor of a parallel scan
+    private ScannedClass parse(String className, InputStream in) throws IOException {
+        if (in instanceof BytecodeInputStream) {
+            final ScannedClass scannedClass = scanClassDef(className, in);
+            scannedClass.bytesRead = ((BytecodeInputStream) in).getLength();
+            return scannedClass;
+        }
+
+        final CountingInputStream counting = new CountingInputStream(in);
+        final ScannedClass scannedClass = scanClassDef(className, counting);
+        scannedClass.bytesRead = counting.count;
+        return scannedClass;
+    }
+
+    /**
+     * The checksum comes from the archive when it knows it, as the jars do from their
+     * central directory, else it is computed from the bytecode which is then parsed from memory.
+     *
+     * @return the bytecode of the entry, null if an identical copy of the class was already read
+     */
+    private InputStream unique(Archive archive, Archive.Entry entry) throws IOException {
+        final String className = entry.getName();
+        InputStream in = null;
+        long crc = -1;
+        long size = -1;
+        if (entry instanceof ChecksumEntry) {
+            crc = ((ChecksumEntry) entry).getCrc();
+            size = ((ChecksumEntry) entry).getSize();
+        }
+        if (crc < 0 || size < 0) {
+            final byte[] bytecode = readBytes(entry.getBytecode());
+            final CRC32 checksum = new CRC32();
+            checksum.update(bytecode);
+            crc = checksum.getValue();
+            size = bytecode.length;
+            in = new BytecodeInputStream(bytecode);
+        }
+
+        final Checksum previous = checksums.put(className, new Checksum(archive, crc, size));
+        if (previous != null) {
+            final boolean identical = previous.crc >= 0 && previous.crc == crc && previous.size == size;
+            duplicates.add(new DuplicateClass(className, previous.archive, archive, identical));
+            if (identical) {
+                checksums.put(className, previous);
+                return null;
+            }
+        }
+        return in != null ? in : entry.getBytecode();
+    }
+
+    /**
+     * A class read from an index or a cache, its checksum is unknown so it
+     * is reported as a different copy of the previous and next ones.
+     */
+    private void unique(Archive archive, String className) {
+        final Checksum previous = checksums.put(className, new Checksum(archive, -1, -1));
+        if (previous != null) {
+            duplicates.add(new DuplicateClass(className, previous.archive, archive, false));
+        }
+    }
+
+    /**
+     * @return the classes found more than once by the scan when {@link #deduplicate()} is true
+     */
+    public List<DuplicateClass> getDuplicates() {
+        return Collections.unmodifiableList(duplicates);
     }
 
     public boolean hasMetaAnnotations() {
@@ -171,7 +602,7 @@ public class AnnotationFinder implements IAnnotationFinder {
     }
 
     private void readClassDef(ClassInfo info) {
-        classInfos.put(info.getName(), info);
+        putClassInfo(info);
         index(info);
         index(info.constructors);
         for (MethodInfo ctor : info.constructors) {
@@ -184,20 +615,16 @@ public class AnnotationFinder implements IAnnotationFinder {
         index(info.fields);
     }
 
-    private void resolveAnnotations(AnnotationFinder parent, List<String> scanned) {
-        // Get a list of the annotations that exist before we start
-        final List<String> annotations = new ArrayList<String>(annotated.keySet());
+    private void resolveAnnotations(AnnotationFinder parent, Set<String> resolved) {
+        final LinkedList<String> worklist = new LinkedList<String>(annotated.keySet());
+        while (!worklist.isEmpty()) {
+            final String annotation = worklist.removeFirst();
+            if (!resolved.add(annotation)) continue;
 
-        for (String annotation : annotations) {
-            if (scanned.contains(annotation)) continue;
             final ClassInfo info = parent.classInfos.get(annotation);
             if (info == null) continue;
             readClassDef(info);
-        }
-
-        // If the "annotated" list has grown, then we must scan those
-        if (annotated.keySet().size() != annotations.size()) {
-            resolveAnnotations(parent, annotations);
+            collectAnnotations(info, worklist);
         }
     }
 
@@ -240,34 +667,316 @@ public class AnnotationFinder implements IAnnotationFinder {
     }
 
     public AnnotationFinder enableMetaAnnotations() {
-        // diff new and old lists
-        resolveAnnotations(new LinkedList<String>());
+        final long start = System.nanoTime();
+        resolveAnnotations(new HashSet<String>());
 
         linkMetaAnnotations();
 
+        metaAnnotationsLinked = true;
+        linked(ScanListener.LinkPhase.META_ANNOTATIONS, start);
         return this;
     }
 
     public AnnotationFinder enableFindImplementations() {
+        final long start = System.nanoTime();
         for (ClassInfo classInfo : classInfos.values().toArray(new ClassInfo[classInfos.size()])) {
 
             linkInterfaces(classInfo);
 
         }
+        indexHierarchy();
+        implementationsLinked = true;
+        linked(ScanListener.LinkPhase.IMPLEMENTATIONS, start);
         return this;
     }
 
+    /**
+     * @return whether the calling thread was already linking
+     */
+    private boolean startLinking() {
+        final boolean original = isLinking();
+        if (ALLOW_LAZY_LINKING) {
+            linking.set(Boolean.TRUE);
+        }
+        return original;
+    }
+
+    private void endLinking(boolean original) {
+        if (!original) {
+            linking.remove();
+        }
+    }
+
+    private boolean isLinking() {
+        return linking.get() != null;
+    }
+
     public AnnotationFinder enableFindSubclasses() {
-        final boolean originalLinking = linking;
-        linking = ALLOW_LAZY_LINKING;
-        for (ClassInfo classInfo : classInfos.values().toArray(new ClassInfo[classInfos.size()])) {
+        final long start = System.nanoTime();
+        final boolean originalLinking = startLinking();
+        try {
+            for (ClassInfo classInfo : classInfos.values().toArray(new ClassInfo[classInfos.size()])) {
 
-            linkParent(classInfo);
+                linkParent(classInfo);
+            }
+        } finally {
+            endLinking(originalLinking);
         }
-        linking = originalLinking;
+        subclassesLinked = true;
+        linked(ScanListener.LinkPhase.SUBCLASSES, start);
         return this;
     }
 
+    private void linked(ScanListener.LinkPhase phase, long start) {
+        final ScanListener listener = this.listener;
+        if (listener != null) {
+            listener.linked(phase, System.nanoTime() - start);
+        }
+    }
+
+    public ScanListener getScanListener() {
+        return listener;
+    }
+
+    /**
+     * Replaces the listener notified of the link phases and of the classes loaded by the find* methods.
+     *
+     * @param listener can be null
+     */
+    public AnnotationFinder setScanListener(ScanListener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     * Rescans the FileArchive(s) of this finder, directly or through a CompositeArchive,
+     * and updates the indexes for the class files added, modified or deleted since the
+     * previous scan. Only the changed classes are read again and only them are linked
+     * again, according to the enableXXX() methods invoked so far: their parents and
+     * interfaces, the annotation types they use and the meta annotations of those types.
+     * The index of the subclasses and implementations is patched with the changed classes,
+     * it is built again on its next use if linking them read classes out of the changed ones.
+     * <p/>
+     * Other kinds of archives are considered unchanged.
+     *
+     * @return the names of the classes which were added, modified or removed
+     */
+    public List<String> update() {
+        final List<FileArchive> fileArchives = new ArrayList<FileArchive>();
+        collectFileArchives(archive, fileArchives);
+        if (fileArchives.isEmpty()) {
+            throw new IllegalStateException("Only finders over a FileArchive can be updated: " + archive);
+        }
+
+        final Set<String> removed = new HashSet<String>();
+        final Set<String> changed = new HashSet<String>();
+        final Set<String> added = new HashSet<String>();
+        for (FileArchive fileArchive : fileArchives) {
+            final FileArchive.Changes changes = fileArchive.refresh();
+            removed.addAll(changes.getRemoved());
+            changed.addAll(changes.getModified());
+            for (String className : changes.getAdded()) {
+                // an archive never listed before (read from an index) reports all its classes as added
+                if (originalInfos.containsKey(className)) {
+                    changed.add(className);
+                } else {
+                    added.add(className);
+                }
+            }
+        }
+
+        // patched on a copy, the published index is queried meanwhile
+        Hierarchy index = hierarchy;
+        if (index != null && index.modifications != modifications.get()) {
+            index = null;
+        }
+        if (index == null && subclassesLinked && !added.isEmpty()) {
+            index = indexHierarchy(); // once, the next updates patch it
+        }
+        if (index != null) {
+            index = new Hierarchy(index);
+        }
+        final List<ClassInfo> orphans = new ArrayList<ClassInfo>();
+        if (subclassesLinked && !added.isEmpty()) {
+            for (String className : added) {
+                final List<ClassInfo> subclasses = index.subclasses.get(className);
+                if (subclasses == null) continue;
+                for (ClassInfo classInfo : subclasses) {
+                    if (classInfo.superclassInfo == null) {
+                        orphans.add(classInfo);
+                    }
+                }
+            }
+        }
+        for (String className : removed) {
+            unlinkClassDef(className, orphans, index);
+        }
+        for (String className : changed) {
+            unlinkClassDef(className, orphans, index);
+        }
+        changed.addAll(added);
+
+        final List<ClassInfo> infos = new ArrayList<ClassInfo>();
+        for (String className : changed) {
+            try {
+                readClassDef(className, archive.getBytecode(className));
+            } catch (NoClassDefFoundError e) {
+                throw new NoClassDefFoundError("Could not fully load class: " + className + "\n due to:" + e.getMessage());
+            } catch (ClassNotFoundException e) {
+                classesNotLoaded.add(className);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+
+            final ClassInfo classInfo = classInfos.get(className);
+            if (classInfo != null) {
+                originalInfos.put(className, classInfo);
+                infos.add(classInfo);
+                if (index != null) {
+                    index.index(classInfo);
+                }
+            }
+        }
+        final int indexed = modifications.get();
+
+        if (subclassesLinked) {
+            final boolean originalLinking = startLinking();
+            try {
+                for (ClassInfo classInfo : infos) {
+                    linkParent(classInfo);
+                }
+                for (ClassInfo classInfo : orphans) {
+                    if (classInfos.get(classInfo.getName()) == classInfo) {
+                        linkParent(classInfo);
+                    }
+                }
+            } finally {
+                endLinking(originalLinking);
+            }
+        }
+        if (implementationsLinked) {
+            for (ClassInfo classInfo : infos) {
+                linkInterfaces(classInfo);
+            }
+        }
+        if (metaAnnotationsLinked) {
+            linkMetaAnnotations(infos);
+        }
+
+        if (index != null && indexed == modifications.get()) {
+            hierarchy = new Hierarchy(index, indexed);
+        } else {
+            hierarchy = null; // linking read other classes
+        }
+
+        final List<String> updated = new ArrayList<String>(changed);
+        updated.addAll(removed);
+        return updated;
+    }
+
+    private static void collectFileArchives(Archive archive, List<FileArchive> fileArchives) {
+        if (archive instanceof FileArchive) {
+            fileArchives.add((FileArchive) archive);
+        } else if (archive instanceof CompositeArchive) {
+            for (Archive child : ((CompositeArchive) archive).getArchives()) {
+                collectFileArchives(child, fileArchives);
+            }
+        }
+    }
+
+    /**
+     * Removes the infos read from the bytecode of the class, its subclasses are collected
+     * in orphans so they can be linked again to the new version of the class.
+     */
+    private void unlinkClassDef(String className, List<ClassInfo> orphans, Hierarchy index) {
+        originalInfos.remove(className);
+        final ClassInfo classInfo = classInfos.get(className);
+        if (classInfo == null) {
+            if (!className.endsWith("package-info") && !cleanOnNaked()) return;
+
+            // package-info or class removed from classInfos by cleanOnNaked()
+            for (List<Info> infos : annotated.values()) {
+                for (Info info : new ArrayList<Info>(infos)) {
+                    if (isDeclaredBy(info, className)) {
+                        infos.remove(info);
+                    }
+                }
+            }
+            return;
+        }
+
+        removeClassInfo(className);
+        if (index != null) {
+            index.unindex(classInfo);
+        }
+        unindex(classInfo);
+        for (MethodInfo methodInfo : classInfo.methods) {
+            unindex(methodInfo);
+            for (ParameterInfo parameterInfo : methodInfo.parameters) {
+                unindex(parameterInfo);
+            }
+        }
+        for (MethodInfo methodInfo : classInfo.constructors) {
+            unindex(methodInfo);
+            for (ParameterInfo parameterInfo : methodInfo.parameters) {
+                unindex(parameterInfo);
+            }
+        }
+        for (FieldInfo fieldInfo : classInfo.fields) {
+            unindex(fieldInfo);
+        }
+
+        if (classInfo.superclassInfo != null) {
+            synchronized (classInfo.superclassInfo.subclassInfos) {
+                classInfo.superclassInfo.subclassInfos.remove(classInfo);
+            }
+        }
+        for (ClassInfo subclassInfo : classInfo.subclassInfos) {
+            subclassInfo.superclassInfo = null;
+            orphans.add(subclassInfo);
+        }
+    }
+
+    private boolean isDeclaredBy(Info info, String className) {
+        if (info instanceof PackageInfo) return info.getName().equals(className);
+        if (info instanceof ClassInfo) return info.getName().equals(className);
+        if (info instanceof MethodInfo) return ((MethodInfo) info).getDeclaringClass().getName().equals(className);
+        if (info instanceof FieldInfo) return ((FieldInfo) info).getDeclaringClass().getName().equals(className);
+        if (info instanceof ParameterInfo) {
+            return ((ParameterInfo) info).getDeclaringMethod().getDeclaringClass().getName().equals(className);
+        }
+        return false;
+    }
+
+    private void unindex(Info info) {
+        unindex(info.getAnnotations(), info);
+    }
+
+    private void unindex(ParameterInfo parameterInfo) {
+        // the annotations of a parameter are held by its method, the ParameterInfo itself has none
+        final List<List<AnnotationInfo>> parameterAnnotations = parameterInfo.declaringMethod.parameterAnnotations;
+        if (parameterInfo.index >= parameterAnnotations.size()) return;
+        unindex(parameterAnnotations.get(parameterInfo.index), parameterInfo);
+    }
+
+    private void putClassInfo(ClassInfo classInfo) {
+        classInfos.put(classInfo.getName(), classInfo);
+        modifications.incrementAndGet();
+    }
+
+    private void removeClassInfo(String className) {
+        classInfos.remove(className);
+        modifications.incrementAndGet();
+    }
+
+    private void unindex(List<AnnotationInfo> annotations, Info info) {
+        for (AnnotationInfo annotationInfo : annotations) {
+            final List<Info> infos = annotated.get(annotationInfo.getName());
+            if (infos == null) continue;
+            infos.remove(info);
+        }
+    }
+
     /**
      * Used to support meta annotations
      * <p/>
@@ -279,53 +988,114 @@ public class AnnotationFinder implements IAnnotationFinder {
      * @throws ClassNotFoundException
      * @throws IOException
      */
-    private void resolveAnnotations(List<String> scanned) {
-        // Get a list of the annotations that exist before we start
-        final List<String> annotations = new ArrayList<String>(annotated.keySet());
+    private void resolveAnnotations(Set<String> resolved) {
+        final LinkedList<String> worklist = new LinkedList<String>(annotated.keySet());
+        while (!worklist.isEmpty()) {
+            final String annotation = worklist.removeFirst();
+            if (!resolved.add(annotation)) continue;
 
-        for (String annotation : annotations) {
-            if (scanned.contains(annotation)) continue;
             readClassDef(annotation);
-        }
 
-        // If the "annotated" list has grown, then we must scan those
-        if (annotated.keySet().size() != annotations.size()) {
-            resolveAnnotations(annotations);
+            final ClassInfo info = classInfos.get(annotation);
+            if (info == null) continue;
+            collectAnnotations(info, worklist);
         }
+    }
 
-
-//        for (ClassInfo classInfo : classInfos.values()) {
-//            for (AnnotationInfo annotationInfo : classInfo.getAnnotations()) {
-//                for (AnnotationInfo info : annotationInfo.getAnnotations()) {
-//                    final String annotation = info.getName();
-//
-//                    if (hasName(annotation, "Metaroot") && !scanned.contains(annotation)) {
-//                        readClassDef(annotation);
-//                    }
-//                }
-//            }
-//        }
+    /**
+     * Adds the annotation types used by the class, its fields, methods and parameters,
+     * the ones indexed when the class is read.
+     */
+    private static void collectAnnotations(ClassInfo info, List<String> names) {
+        for (AnnotationInfo annotation : info.getAnnotations()) {
+            names.add(annotation.getName());
+        }
+        for (FieldInfo field : info.fields) {
+            for (AnnotationInfo annotation : field.getAnnotations()) {
+                names.add(annotation.getName());
+            }
+        }
+        for (List<MethodInfo> methods : Arrays.asList(info.constructors, info.methods)) {
+            for (MethodInfo method : methods) {
+                for (AnnotationInfo annotation : method.getAnnotations()) {
+                    names.add(annotation.getName());
+                }
+                for (List<AnnotationInfo> parameterAnnotations : method.parameterAnnotations) {
+                    for (AnnotationInfo annotation : parameterAnnotations) {
+                        names.add(annotation.getName());
+                    }
+                }
+            }
+        }
     }
 
     private void linkMetaAnnotations() {
-        for (ClassInfo classInfo : classInfos.values().toArray(new ClassInfo[classInfos.size()])) {
-            if (isMetaRoot(classInfo)) {
-                try {
-                    metaroots.add((Class<? extends Annotation>) classInfo.get());
-                } catch (ClassNotFoundException e) {
-                    classesNotLoaded.add(classInfo.getName());
-                }
+        // only annotation types can be meta roots, all of them were read by resolveAnnotations
+        for (String annotation : annotated.keySet().toArray(new String[0])) {
+            final ClassInfo classInfo = classInfos.get(annotation);
+            if (classInfo != null && isMetaRoot(classInfo)) {
+                metaroots.add(classInfo.getName());
             }
         }
 
-        for (Class<? extends Annotation> metaroot : metaroots) {
-            List<Info> infoList = annotated.get(metaroot.getName());
-            for (Info info : infoList) {
+        for (String metaroot : metaroots) {
+            List<Info> infoList = annotated.get(metaroot);
+            if (infoList == null) continue;
+            for (Info info : infoList.toArray(new Info[0])) {
                 readClassDef(info.getName() + "$$");
             }
         }
     }
 
+    /**
+     * The linkMetaAnnotations() of update(): the annotation types used by the classes read
+     * again which are not known yet are resolved, the ones which are meta roots are linked
+     * as well as the classes read again annotated with a meta root.
+     */
+    private void linkMetaAnnotations(List<ClassInfo> infos) {
+        final LinkedList<String> worklist = new LinkedList<String>();
+        for (ClassInfo info : infos) {
+            collectAnnotations(info, worklist);
+        }
+
+        final List<ClassInfo> annotations = new ArrayList<ClassInfo>();
+        for (ClassInfo info : infos) {
+            if (info.isAnnotation()) {
+                annotations.add(info);
+            }
+        }
+        final Set<String> resolved = new HashSet<String>();
+        while (!worklist.isEmpty()) {
+            final String annotation = worklist.removeFirst();
+            if (!resolved.add(annotation) || classInfos.containsKey(annotation)) continue;
+
+            readClassDef(annotation);
+
+            final ClassInfo info = classInfos.get(annotation);
+            if (info == null) continue;
+            annotations.add(info);
+            collectAnnotations(info, worklist);
+        }
+
+        for (ClassInfo annotation : annotations) {
+            if (isMetaRoot(annotation) && metaroots.add(annotation.getName())) {
+                final List<Info> infoList = annotated.get(annotation.getName());
+                if (infoList == null) continue;
+                for (Info info : infoList.toArray(new Info[0])) {
+                    readClassDef(info.getName() + "$$");
+                }
+            }
+        }
+        for (ClassInfo info : infos) {
+            for (AnnotationInfo annotation : info.getAnnotations()) {
+                if (metaroots.contains(annotation.getName())) {
+                    readClassDef(info.getName() + "$$");
+                    break;
+                }
+            }
+        }
+    }
+
     private boolean isMetaRoot(ClassInfo classInfo) {
         if (!classInfo.isAnnotation()) return false;
 
@@ -488,50 +1258,204 @@ public class AnnotationFinder implements IAnnotationFinder {
      *
      * @return an unmodifiable live view of classes that could not be loaded in previous findAnnotated* call.
      */
-    public List<String> getClassesNotLoaded() {
-        return Collections.unmodifiableList(classesNotLoaded);
+    public List<String> getClassesNotLoaded() {
+        return Collections.unmodifiableList(classesNotLoaded);
+    }
+
+    public List<Package> findAnnotatedPackages(Class<? extends Annotation> annotation) {
+        classesNotLoaded.clear();
+        List<Package> packages = new LinkedList<Package>();
+        List<Info> infos = getAnnotationInfos(annotation.getName());
+        for (Info info : infos) {
+            if (info instanceof PackageInfo) {
+                PackageInfo packageInfo = (PackageInfo) info;
+                try {
+                    Package pkg = packageInfo.get();
+                    // double check via proper reflection
+                    if (!checkRuntimeAnnotation || pkg.isAnnotationPresent(annotation)) {
+                        packages.add(pkg);
+                    }
+                } catch (ClassNotFoundException e) {
+                    classesNotLoaded.add(packageInfo.getName());
+                }
+            }
+        }
+        return packages;
+    }
+
+    public List<Class<?>> findAnnotatedClasses(Class<? extends Annotation> annotation) {
+        classesNotLoaded.clear();
+        List<Class<?>> classes = new LinkedList<Class<?>>();
+        List<Info> infos = getAnnotationInfos(annotation.getName());
+        for (Info info : infos) {
+            if (info instanceof ClassInfo) {
+                ClassInfo classInfo = (ClassInfo) info;
+                try {
+                    Class clazz = classInfo.get();
+                    // double check via proper reflection
+                    if (!checkRuntimeAnnotation || clazz.isAnnotationPresent(annotation)) {
+                        classes.add(clazz);
+                    }
+                } catch (ClassNotFoundException e) {
+                    classesNotLoaded.add(classInfo.getName());
+                }
+            }
+        }
+        return classes;
+    }
+
+    /**
+     * Names of the classes annotated with the given annotation type, evaluated
+     * while iterating and without loading any class. Unlike findAnnotatedClasses
+     * the retention of the annotation is not checked.
+     *
+     * @param annotation class name of the annotation
+     */
+    public Iterable<String> findAnnotatedClassNames(String annotation) {
+        return new LazyView<ClassInfo, String>(findAnnotatedClassInfos(annotation)) {
+            protected String map(ClassInfo classInfo) {
+                return classInfo.getName();
+            }
+        };
+    }
+
+    /**
+     * Classes annotated with the given annotation type, evaluated while iterating.
+     * No class is loaded until ClassInfo.get() is called and the retention of the
+     * annotation is not checked.
+     *
+     * @param annotation class name of the annotation
+     */
+    public Iterable<ClassInfo> findAnnotatedClassInfos(String annotation) {
+        return new LazyView<Info, ClassInfo>(getAnnotationInfos(annotation)) {
+            protected ClassInfo map(Info info) {
+                return info instanceof ClassInfo ? (ClassInfo) info : null;
+            }
+        };
+    }
+
+    /**
+     * Methods, constructors excluded, annotated with the given annotation type.
+     * See {@link #findAnnotatedClassInfos(String)}.
+     */
+    public Iterable<MethodInfo> findAnnotatedMethodInfos(String annotation) {
+        return new LazyView<Info, MethodInfo>(getAnnotationInfos(annotation)) {
+            protected MethodInfo map(Info info) {
+                return info instanceof MethodInfo && !((MethodInfo) info).isConstructor() ? (MethodInfo) info : null;
+            }
+        };
+    }
+
+    /**
+     * Methods, constructors excluded, annotated with the given annotation type as
+     * class name, method name and descriptor: org.acme.Foo#bar(Ljava/lang/String;)V.
+     * See {@link #findAnnotatedClassInfos(String)}.
+     */
+    public Iterable<String> findAnnotatedMethodNames(String annotation) {
+        return new LazyView<MethodInfo, String>(findAnnotatedMethodInfos(annotation)) {
+            protected String map(MethodInfo methodInfo) {
+                return methodInfo.getDeclaringClass().getName() + "#" + methodInfo.getName() + methodInfo.getDescriptor();
+            }
+        };
+    }
+
+    /**
+     * Constructors annotated with the given annotation type.
+     * See {@link #findAnnotatedClassInfos(String)}.
+     */
+    public Iterable<MethodInfo> findAnnotatedConstructorInfos(String annotation) {
+        return new LazyView<Info, MethodInfo>(getAnnotationInfos(annotation)) {
+            protected MethodInfo map(Info info) {
+                return info instanceof MethodInfo && ((MethodInfo) info).isConstructor() ? (MethodInfo) info : null;
+            }
+        };
+    }
+
+    /**
+     * Fields annotated with the given annotation type.
+     * See {@link #findAnnotatedClassInfos(String)}.
+     */
+    public Iterable<FieldInfo> findAnnotatedFieldInfos(String annotation) {
+        return new LazyView<Info, FieldInfo>(getAnnotationInfos(annotation)) {
+            protected FieldInfo map(Info info) {
+                return info instanceof FieldInfo ? (FieldInfo) info : null;
+            }
+        };
+    }
+
+    /**
+     * Packages, classes, methods, constructors, fields and parameters annotated with
+     * the given annotation type where the element is set to the value, or to an array
+     * containing it. The values are the ones read from the bytecode, see
+     * {@link AnnotationInfo#getValues()}, so nothing is loaded.
+     *
+     * @param annotation class name of the annotation
+     * @param element name of the annotation element, "value" for the single element ones
+     * @param value the boxed primitive, String, class name or enum constant name to match
+     */
+    public Iterable<Info> findAnnotatedInfos(final String annotation, final String element, final Object value) {
+        return new LazyView<Info, Info>(getAnnotationInfos(annotation)) {
+            protected Info map(Info info) {
+                final AnnotationInfo annotationInfo = getAnnotationInfo(info, annotation);
+                return annotationInfo != null && annotationInfo.hasValue(element, value) ? info : null;
+            }
+        };
+    }
+
+    /**
+     * Classes annotated with the given annotation type having this element value.
+     * See {@link #findAnnotatedInfos(String, String, Object)}.
+     */
+    public Iterable<ClassInfo> findAnnotatedClassInfos(String annotation, String element, Object value) {
+        return new LazyView<Info, ClassInfo>(findAnnotatedInfos(annotation, element, value)) {
+            protected ClassInfo map(Info info) {
+                return info instanceof ClassInfo ? (ClassInfo) info : null;
+            }
+        };
     }
 
-    public List<Package> findAnnotatedPackages(Class<? extends Annotation> annotation) {
-        classesNotLoaded.clear();
-        List<Package> packages = new LinkedList<Package>();
-        List<Info> infos = getAnnotationInfos(annotation.getName());
-        for (Info info : infos) {
-            if (info instanceof PackageInfo) {
-                PackageInfo packageInfo = (PackageInfo) info;
-                try {
-                    Package pkg = packageInfo.get();
-                    // double check via proper reflection
-                    if (!checkRuntimeAnnotation || pkg.isAnnotationPresent(annotation)) {
-                        packages.add(pkg);
-                    }
-                } catch (ClassNotFoundException e) {
-                    classesNotLoaded.add(packageInfo.getName());
-                }
+    /**
+     * Methods, constructors excluded, annotated with the given annotation type having this element value.
+     * See {@link #findAnnotatedInfos(String, String, Object)}.
+     */
+    public Iterable<MethodInfo> findAnnotatedMethodInfos(String annotation, String element, Object value) {
+        return new LazyView<Info, MethodInfo>(findAnnotatedInfos(annotation, element, value)) {
+            protected MethodInfo map(Info info) {
+                return info instanceof MethodInfo && !((MethodInfo) info).isConstructor() ? (MethodInfo) info : null;
             }
-        }
-        return packages;
+        };
     }
 
-    public List<Class<?>> findAnnotatedClasses(Class<? extends Annotation> annotation) {
-        classesNotLoaded.clear();
-        List<Class<?>> classes = new LinkedList<Class<?>>();
-        List<Info> infos = getAnnotationInfos(annotation.getName());
-        for (Info info : infos) {
-            if (info instanceof ClassInfo) {
-                ClassInfo classInfo = (ClassInfo) info;
-                try {
-                    Class clazz = classInfo.get();
-                    // double check via proper reflection
-                    if (!checkRuntimeAnnotation || clazz.isAnnotationPresent(annotation)) {
-                        classes.add(clazz);
-                    }
-                } catch (ClassNotFoundException e) {
-                    classesNotLoaded.add(classInfo.getName());
-                }
+    /**
+     * Fields annotated with the given annotation type having this element value.
+     * See {@link #findAnnotatedInfos(String, String, Object)}.
+     */
+    public Iterable<FieldInfo> findAnnotatedFieldInfos(String annotation, String element, Object value) {
+        return new LazyView<Info, FieldInfo>(findAnnotatedInfos(annotation, element, value)) {
+            protected FieldInfo map(Info info) {
+                return info instanceof FieldInfo ? (FieldInfo) info : null;
             }
+        };
+    }
+
+    /**
+     * @return the annotation of this type read on the info, null if it isn't annotated with it
+     */
+    public AnnotationInfo getAnnotationInfo(Info info, String annotation) {
+        final List<AnnotationInfo> annotations;
+        if (info instanceof ParameterInfo) {
+            // parameter annotations are kept by the method
+            final ParameterInfo parameterInfo = (ParameterInfo) info;
+            final List<List<AnnotationInfo>> parameterAnnotations = parameterInfo.declaringMethod.parameterAnnotations;
+            if (parameterInfo.index >= parameterAnnotations.size()) return null;
+            annotations = parameterAnnotations.get(parameterInfo.index);
+        } else {
+            annotations = info.getAnnotations();
         }
-        return classes;
+        for (AnnotationInfo annotationInfo : annotations) {
+            if (annotationInfo.getName().equals(annotation)) return annotationInfo;
+        }
+        return null;
     }
 
     public List<Annotated<Class<?>>> findMetaAnnotatedClasses(Class<? extends Annotation> annotation) {
@@ -617,52 +1541,41 @@ public class AnnotationFinder implements IAnnotationFinder {
     public List<Class<?>> findInheritedAnnotatedClasses(Class<? extends Annotation> annotation) {
         classesNotLoaded.clear();
         List<Class<?>> classes = new LinkedList<Class<?>>();
+        final LinkedList<String> inheriting = new LinkedList<String>();
         List<Info> infos = getAnnotationInfos(annotation.getName());
         for (Info info : infos) {
             try {
                 if (info instanceof ClassInfo) {
                     classes.add(((ClassInfo) info).get());
+                    inheriting.add(info.getName());
                 }
             } catch (ClassNotFoundException cnfe) {
                 // TODO: ignored, but a log message would be appropriate
             }
         }
-        boolean annClassFound;
-        List<ClassInfo> tempClassInfos = new ArrayList<ClassInfo>(classInfos.values());
-        do {
-            annClassFound = false;
-            for (int pos = 0; pos < tempClassInfos.size(); pos++) {
-                ClassInfo classInfo = tempClassInfos.get(pos);
-                try {
-                    // check whether any superclass is annotated
-                    String superType = classInfo.getSuperType();
-                    for (Class clazz : classes) {
-                        if (superType.equals(clazz.getName())) {
-                            classes.add(classInfo.get());
-                            tempClassInfos.remove(pos);
-                            annClassFound = true;
-                            break;
-                        }
-                    }
-                    // check whether any interface is annotated
-                    List<String> interfces = classInfo.getInterfaces();
-                    for (String interfce : interfces) {
-                        for (Class clazz : classes) {
-                            if (interfce.replaceFirst("<.*>", "").equals(clazz.getName())) {
-                                classes.add(classInfo.get());
-                                tempClassInfos.remove(pos);
-                                annClassFound = true;
-                                break;
-                            }
-                        }
+
+        // walk down the hierarchy: subclasses and implementations of the loaded classes
+        final Hierarchy hierarchy = indexHierarchy();
+        final Set<String> seen = new HashSet<String>(inheriting);
+        while (!inheriting.isEmpty()) {
+            final String name = inheriting.removeFirst();
+            for (Map<String, List<ClassInfo>> index : Arrays.asList(hierarchy.subclasses, hierarchy.implementors)) {
+                final List<ClassInfo> children = index.get(name);
+                if (children == null) continue;
+
+                for (ClassInfo classInfo : children) {
+                    if (!seen.add(classInfo.getName())) continue;
+                    try {
+                        classes.add(classInfo.get());
+                        inheriting.add(classInfo.getName());
+                    } catch (ClassNotFoundException e) {
+                        classesNotLoaded.add(classInfo.getName());
+                    } catch (NoClassDefFoundError e) {
+                        classesNotLoaded.add(classInfo.getName());
                     }
-                } catch (ClassNotFoundException e) {
-                    classesNotLoaded.add(classInfo.getName());
-                } catch (NoClassDefFoundError e) {
-                    classesNotLoaded.add(classInfo.getName());
                 }
             }
-        } while (annClassFound);
+        }
         return classes;
     }
 
@@ -1055,19 +1968,17 @@ public class AnnotationFinder implements IAnnotationFinder {
 
         List<Class<? extends T>> classes = new LinkedList<Class<? extends T>>();
 
+        final List<ClassInfo> children = indexHierarchy().subclasses.get(clazz.getName());
+        if (children == null) return classes;
 
-        for (ClassInfo classInfo : classInfos.values()) {
+        for (ClassInfo classInfo : children) {
 
             try {
 
-                final String name = clazz.getName();
-                if (name.equals(classInfo.superType)) {
-
-                    if (clazz.isAssignableFrom(classInfo.get())) {
-                        final Class<? extends T> asSubclass = classInfo.get().asSubclass(clazz);
-                        classes.add(asSubclass);
-                        classes.addAll(_findSubclasses(asSubclass));
-                    }
+                if (clazz.isAssignableFrom(classInfo.get())) {
+                    final Class<? extends T> asSubclass = classInfo.get().asSubclass(clazz);
+                    classes.add(asSubclass);
+                    classes.addAll(_findSubclasses(asSubclass));
                 }
 
             } catch (ClassNotFoundException e) {
@@ -1121,28 +2032,195 @@ public class AnnotationFinder implements IAnnotationFinder {
     private List<ClassInfo> collectImplementations(String interfaceName) {
         final List<ClassInfo> infos = new LinkedList<ClassInfo>();
 
+        final List<ClassInfo> implementations = indexHierarchy().implementors.get(interfaceName);
+        if (implementations == null) return infos;
+
+        for (ClassInfo classInfo : implementations) {
+
+            infos.add(classInfo);
+
+            // access flags come from the bytecode, no need to load the class
+            if (classInfo.isInterface() && !classInfo.isAnnotation()) {
+
+                infos.addAll(collectImplementations(classInfo.name));
+
+            }
+        }
+        return infos;
+    }
+
+    /**
+     * Indexes the classes by super type and by implemented interface so
+     * subclasses and implementations are found without iterating over all
+     * the classInfos. The index is built once and rebuilt only if classes
+     * were read or removed since.
+     */
+    private Hierarchy indexHierarchy() {
+        final Hierarchy current = hierarchy;
+        final int indexed = modifications.get();
+        if (current != null && current.modifications == indexed) return current;
+
+        final Hierarchy built = new Hierarchy(indexed);
         for (ClassInfo classInfo : classInfos.values()) {
+            built.index(classInfo);
+        }
 
-            if (classInfo.interfaces.contains(interfaceName)) {
+        hierarchy = built;
+        return built;
+    }
 
-                infos.add(classInfo);
+    /**
+     * How an {@link AnnotationFinder} scans its archive, all the options can be combined:
+     * <pre>
+     * new AnnotationFinder(archive, new AnnotationFinder.Options()
+     *         .annotationTypes(names)
+     *         .cache(cache)
+     *         .parallelism(4)
+     *         .listener(listener));
+     * </pre>
+     * The archives of a CompositeArchive are read one by one: from their index when
+     * {@link #indexes(boolean)} is set, else from the cache, else their bytecode is parsed.
+     */
+    public static final class Options {
+        private boolean checkRuntimeAnnotation = true;
+        private Iterable<String> annotationTypes;
+        private ScanListener listener;
+        private boolean indexes;
+        private ScanIndexCache cache;
+        private Executor executor;
+        private int parallelism;
+        private boolean deduplicate = Boolean.getBoolean("xbean.finder.deduplicate");
 
-                try {
+        /**
+         * @param checkRuntimeAnnotation Has no effect on findMetaAnnotated* methods, defaults to true
+         */
+        public Options checkRuntimeAnnotation(boolean checkRuntimeAnnotation) {
+            this.checkRuntimeAnnotation = checkRuntimeAnnotation;
+            return this;
+        }
+
+        /**
+         * Only parses the classes using at least one of the given annotations, on the class
+         * or on one of its fields, methods or parameters. The constant pool of each class file
+         * is checked first and only a hierarchy record (name, super type and interfaces)
+         * is kept for the classes which can't match.
+         * <p/>
+         * Meta-annotations are only found if they are part of the given annotations.
+         *
+         * @param annotationTypes class names of the annotations to index, null to parse all the classes
+         */
+        public Options annotationTypes(Iterable<String> annotationTypes) {
+            this.annotationTypes = annotationTypes;
+            return this;
+        }
 
-                    final Class clazz = classInfo.get();
+        /**
+         * @param listener notified of the scan of each archive and later of the link phases and class loads, can be null
+         */
+        public Options listener(ScanListener listener) {
+            this.listener = listener;
+            return this;
+        }
 
-                    if (clazz.isInterface() && !clazz.isAnnotation()) {
+        /**
+         * Reads the jar and directory archives shipping an {@link ArchiveIndex} from it
+         * instead of parsing their bytecode.
+         */
+        public Options indexes(boolean indexes) {
+            this.indexes = indexes;
+            return this;
+        }
 
-                        infos.addAll(collectImplementations(classInfo.name));
+        /**
+         * Reloads the unchanged jar and directory archives from the cache instead of
+         * parsing their bytecode, the other ones are scanned and stored in the cache.
+         *
+         * @param cache where the class infos of each archive are persisted, can be null
+         */
+        public Options cache(ScanIndexCache cache) {
+            this.cache = cache;
+            return this;
+        }
 
-                    }
+        /**
+         * Scans the archive with a dedicated fork/join pool of the given parallelism.
+         *
+         * @param parallelism number of threads parsing entries, 0 to parse them in the calling thread
+         */
+        public Options parallelism(int parallelism) {
+            this.executor = null;
+            this.parallelism = parallelism;
+            return this;
+        }
 
-                } catch (ClassNotFoundException ignore) {
-                    // we'll deal with this later
-                }
-            }
+        /**
+         * Parses up to parallelism entries at once on the given executor.
+         * <p/>
+         * Entries are still iterated by the calling thread and the parsed infos are indexed
+         * in archive order so the resulting finder is the same as the one the sequential
+         * scan builds. The archive entries must support concurrent getBytecode() calls.
+         *
+         * @param executor executor running the parsing tasks
+         * @param parallelism maximum number of entries parsed concurrently
+         */
+        public Options executor(Executor executor, int parallelism) {
+            if (parallelism < 1) throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+            this.executor = executor;
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * @see AnnotationFinder#deduplicate()
+         * @param deduplicate defaults to the xbean.finder.deduplicate system property
+         */
+        public Options deduplicate(boolean deduplicate) {
+            this.deduplicate = deduplicate;
+            return this;
+        }
+    }
+
+    // copy of a class read while scanning, see unique(Archive, Archive.Entry)
+    private static final class Checksum {
+        private final Archive archive;
+        private final long crc;
+        private final long size;
+
+        private Checksum(Archive archive, long crc, long size) {
+            this.archive = archive;
+            this.crc = crc;
+            this.size = size;
+        }
+    }
+
+    // bytes handed to the class reader, see scan(Archive, ScanListener)
+    private static final class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        private CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int read = super.read();
+            if (read != -1) count++;
+            return read;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            final int read = super.read(b, off, len);
+            if (read > 0) count += read;
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            final long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
         }
-        return infos;
     }
 
     protected List<Info> getAnnotationInfos(String name) {
@@ -1154,7 +2232,7 @@ public class AnnotationFinder implements IAnnotationFinder {
     protected List<Info> initAnnotationInfos(String name) {
         List<Info> infos = annotated.get(name);
         if (infos == null) {
-            infos = new SingleLinkedList<Info>();
+            infos = newInfoList();
             annotated.put(name, infos);
         }
         return infos;
@@ -1172,9 +2250,32 @@ public class AnnotationFinder implements IAnnotationFinder {
     }
 
     protected void readClassDef(final String className, InputStream in) throws IOException {
+        // the scanning path of the parallel and concurrent reads, so they all index the same infos
+        scanClassDef(className, in).index();
+    }
+
+    ScannedClass scanClassDef(final String className, InputStream in) throws IOException {
+        final ScannedClass scanned = new ScannedClass();
         try {
-            ClassReader classReader = new ClassReader(in);
-            classReader.accept(new InfoBuildingVisitor(), ASM_FLAGS);
+            if (prefilter != null) {
+                // the buffer of an archive is only valid until the stream is closed
+                final BytecodeInputStream bytecode = in instanceof BytecodeInputStream ? (BytecodeInputStream) in : new BytecodeInputStream(readBytes(in));
+                if (!ConstantPool.containsUtf8(bytecode.getBuffer(), bytecode.getOffset(), bytecode.getLength(), prefilter)) {
+                    final ClassInfo classInfo = readHierarchy(bytecode);
+                    if (classInfo != null) {
+                        scanned.info = classInfo;
+                        scanned.classInfo = classInfo;
+                    } else {
+                        scanned.info = new PackageInfo(className);
+                    }
+                    scanned.prefiltered = true;
+                    return scanned;
+                }
+                in = bytecode;
+            }
+
+            ClassReader classReader = newClassReader(in);
+            classReader.accept(new InfoBuildingVisitor(null, scanned), ASM_FLAGS);
 
         } catch (final Exception e) {
             throw new RuntimeException("Unable to read class definition for " + className, e);
@@ -1182,6 +2283,49 @@ public class AnnotationFinder implements IAnnotationFinder {
         } finally {
             in.close();
         }
+        return scanned;
+    }
+
+    /**
+     * @return the name, super type and interfaces of the class, null for package-info classes or when cleanOnNaked()
+     */
+    private ClassInfo readHierarchy(BytecodeInputStream bytecode) {
+        if (cleanOnNaked()) return null;
+
+        final ClassReader classReader = new ClassReader(bytecode.getBuffer(), bytecode.getOffset(), bytecode.getLength());
+        final String name = classReader.getClassName();
+        if (name.endsWith("package-info")) return null;
+
+        final String superName = classReader.getSuperName();
+        final ClassInfo classInfo = new ClassInfo(name.replace('/', '.'), superName == null ? null : superName.replace('/', '.'));
+        for (String interfce : classReader.getInterfaces()) {
+            classInfo.interfaces.add(symbols.intern(interfce.replace('/', '.')));
+        }
+        classInfo.access = classReader.getAccess();
+        return classInfo;
+    }
+
+    private static ClassReader newClassReader(InputStream in) throws IOException {
+        if (in instanceof BytecodeInputStream) {
+            // already in memory, parse the archive buffer instead of a copy
+            final BytecodeInputStream bytecode = (BytecodeInputStream) in;
+            return new ClassReader(bytecode.getBuffer(), bytecode.getOffset(), bytecode.getLength());
+        }
+        return new ClassReader(in);
+    }
+
+    private static byte[] readBytes(InputStream in) throws IOException {
+        try {
+            // copied even from a BytecodeInputStream, its buffer can be reused once closed
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(in.available() > 0 ? in.available() : 4096);
+            final byte[] buffer = new byte[4096];
+            for (int length = in.read(buffer); length != -1; length = in.read(buffer)) {
+                out.write(buffer, 0, length);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
     }
 
     protected void readClassDef(Class clazz) {
@@ -1202,7 +2346,7 @@ public class AnnotationFinder implements IAnnotationFinder {
         infos.add(classInfo);
         for (Method method : clazz.getDeclaredMethods()) {
             MethodInfo methodInfo = new MethodInfo(classInfo, method);
-            if (linking) {
+            if (isLinking()) {
                 classInfo.methods.add(methodInfo);
             }
             infos.add(methodInfo);
@@ -1215,7 +2359,7 @@ public class AnnotationFinder implements IAnnotationFinder {
 
         for (Constructor<?> constructor : clazz.getConstructors()) {
             MethodInfo methodInfo = new MethodInfo(classInfo, constructor);
-            if (linking) {
+            if (isLinking()) {
                 classInfo.methods.add(methodInfo);
             }
             infos.add(methodInfo);
@@ -1228,7 +2372,7 @@ public class AnnotationFinder implements IAnnotationFinder {
 
         for (Field field : clazz.getDeclaredFields()) {
             final FieldInfo fieldInfo = new FieldInfo(classInfo, field);
-            if (linking) {
+            if (isLinking()) {
                 classInfo.fields.add(fieldInfo);
             }
             infos.add(fieldInfo);
@@ -1241,8 +2385,8 @@ public class AnnotationFinder implements IAnnotationFinder {
             }
         }
 
-        if (linking) {
-            classInfos.put(classInfo.name, classInfo);
+        if (isLinking()) {
+            putClassInfo(classInfo);
         }
     }
 
@@ -1309,7 +2453,7 @@ public class AnnotationFinder implements IAnnotationFinder {
     }
 
     public class Annotatable {
-        private final List<AnnotationInfo> annotations = new LinkedList<AnnotationInfo>();
+        private final List<AnnotationInfo> annotations = new ArrayList<AnnotationInfo>(0);
 
         public Annotatable(AnnotatedElement element) {
             for (Annotation annotation : getAnnotations(element)) {
@@ -1384,7 +2528,7 @@ public class AnnotationFinder implements IAnnotationFinder {
 
         public PackageInfo(String name) {
             info = new ClassInfo(name, null);
-            this.name = name;
+            this.name = info.getName();
             this.pkg = null;
         }
 
@@ -1416,13 +2560,14 @@ public class AnnotationFinder implements IAnnotationFinder {
 
     public class ClassInfo extends Annotatable implements Info {
         private String name;
-        private final List<MethodInfo> methods = new SingleLinkedList<MethodInfo>();
-        private final List<MethodInfo> constructors = new SingleLinkedList<MethodInfo>();
+        private final List<MethodInfo> methods = new CompactList<MethodInfo>();
+        private final List<MethodInfo> constructors = new CompactList<MethodInfo>();
         private String superType;
         private ClassInfo superclassInfo;
-        private final List<ClassInfo> subclassInfos = new SingleLinkedList<ClassInfo>();
-        private final List<String> interfaces = new SingleLinkedList<String>();
-        private final List<FieldInfo> fields = new SingleLinkedList<FieldInfo>();
+        private final List<ClassInfo> subclassInfos = newInfoList();
+        private final List<String> interfaces = new CompactList<String>();
+        private final List<FieldInfo> fields = new CompactList<FieldInfo>();
+        private int access = -1; // unknown until read from the bytecode
         private Class<?> clazz;
 
 
@@ -1435,19 +2580,18 @@ public class AnnotationFinder implements IAnnotationFinder {
             for (Class intrface : clazz.getInterfaces()) {
                 this.interfaces.add(intrface.getName());
             }
+            this.access = clazz.getModifiers() | (clazz.isAnnotation() ? Opcodes.ACC_ANNOTATION : 0);
         }
 
         public ClassInfo(final String name, final String superType) {
-            this.name = name;
-            this.superType = superType;
+            this.name = symbols.intern(name);
+            this.superType = symbols.intern(superType);
         }
 
         @Override
         public String getMetaAnnotationName() {
             for (AnnotationInfo info : getAnnotations()) {
-                for (Class<? extends Annotation> metaroot : metaroots) {
-                    if (info.getName().equals(metaroot.getName())) return name;
-                }
+                if (metaroots.contains(info.getName())) return name;
             }
 
             if (name.endsWith("$$")) {
@@ -1488,18 +2632,53 @@ public class AnnotationFinder implements IAnnotationFinder {
             return superType;
         }
 
+        int getAccess() {
+            return access;
+        }
+
+        void setAccess(int access) {
+            this.access = access;
+        }
+
         public boolean isAnnotation() {
+            if (access != -1) return (access & Opcodes.ACC_ANNOTATION) != 0;
             return "java.lang.Object".equals(superType) && interfaces.size() == 1 && "java.lang.annotation.Annotation".equals(interfaces.get(0));
         }
 
+        public boolean isInterface() {
+            if (access != -1) return (access & Opcodes.ACC_INTERFACE) != 0;
+            try {
+                return get().isInterface();
+            } catch (ClassNotFoundException e) {
+                return false;
+            }
+        }
+
+        public boolean isAbstract() {
+            if (access != -1) return (access & Opcodes.ACC_ABSTRACT) != 0;
+            try {
+                return Modifier.isAbstract(get().getModifiers());
+            } catch (ClassNotFoundException e) {
+                return false;
+            }
+        }
+
         public Class<?> get() throws ClassNotFoundException {
             if (clazz != null) return clazz;
+            final ScanListener listener = AnnotationFinder.this.listener;
+            final long start = listener != null ? System.nanoTime() : 0;
             try {
                 String fixedName = name.replaceFirst("<.*>", "");
                 this.clazz = archive.loadClass(fixedName);
+                if (listener != null) {
+                    listener.classLoaded(name, System.nanoTime() - start, true);
+                }
                 return clazz;
             } catch (ClassNotFoundException notFound) {
                 classesNotLoaded.add(name);
+                if (listener != null) {
+                    listener.classLoaded(name, System.nanoTime() - start, false);
+                }
                 throw notFound;
             }
         }
@@ -1513,8 +2692,8 @@ public class AnnotationFinder implements IAnnotationFinder {
         private final ClassInfo declaringClass;
         private final String descriptor;
         private final String name;
-        private final List<List<AnnotationInfo>> parameterAnnotations = new LinkedList<List<AnnotationInfo>>();
-        private final List<ParameterInfo> parameters = new SingleLinkedList<ParameterInfo>();
+        private final List<List<AnnotationInfo>> parameterAnnotations = new ArrayList<List<AnnotationInfo>>(0);
+        private final List<ParameterInfo> parameters = new CompactList<ParameterInfo>();
         private Member method;
 
         public MethodInfo(ClassInfo info, Constructor constructor) {
@@ -1534,8 +2713,8 @@ public class AnnotationFinder implements IAnnotationFinder {
 
         public MethodInfo(ClassInfo declarignClass, String name, String descriptor) {
             this.declaringClass = declarignClass;
-            this.name = name;
-            this.descriptor = descriptor;
+            this.name = symbols.intern(name);
+            this.descriptor = symbols.intern(descriptor);
         }
 
         public String getDescriptor() {
@@ -1568,7 +2747,7 @@ public class AnnotationFinder implements IAnnotationFinder {
         public List<AnnotationInfo> getParameterAnnotations(int index) {
             if (index >= parameterAnnotations.size()) {
                 for (int i = parameterAnnotations.size(); i <= index; i++) {
-                    List<AnnotationInfo> annotationInfos = new LinkedList<AnnotationInfo>();
+                    List<AnnotationInfo> annotationInfos = new ArrayList<AnnotationInfo>(1);
                     parameterAnnotations.add(i, annotationInfos);
                 }
             }
@@ -1640,7 +2819,6 @@ public class AnnotationFinder implements IAnnotationFinder {
     public class ParameterInfo extends Annotatable implements Info {
         private final MethodInfo declaringMethod;
         private final int index;
-        private final List<AnnotationInfo> annotations = new LinkedList<AnnotationInfo>();
         private Parameter<?> parameter;
 
         public ParameterInfo(MethodInfo parent, int index) {
@@ -1660,6 +2838,10 @@ public class AnnotationFinder implements IAnnotationFinder {
             return Integer.toString(index);
         }
 
+        int getIndex() {
+            return index;
+        }
+
         public Parameter<?> get() throws ClassNotFoundException {
             if (parameter == null) {
                 Member member = declaringMethod.get();
@@ -1708,8 +2890,8 @@ public class AnnotationFinder implements IAnnotationFinder {
 
         public FieldInfo(ClassInfo declaringClass, String name, String type) {
             this.declaringClass = declaringClass;
-            this.name = name;
-            this.type = type;
+            this.name = symbols.intern(name);
+            this.type = symbols.intern(type);
         }
 
         public String getName() {
@@ -1720,6 +2902,11 @@ public class AnnotationFinder implements IAnnotationFinder {
             return declaringClass;
         }
 
+        // the raw type descriptor
+        String getDescriptor() {
+            return type;
+        }
+
         public String getType() { // if this method starts to be used internally move this to constructors and just return type
             final Type t = Type.getType(type);
             if (t.getClassName() == null) {
@@ -1770,6 +2957,7 @@ public class AnnotationFinder implements IAnnotationFinder {
 
     public class AnnotationInfo extends Annotatable implements Info {
         private final String name;
+        private Map<String, Object> values;
 
         public AnnotationInfo(Annotation annotation) {
             this(Type.getType(annotation.annotationType()).getDescriptor());
@@ -1785,13 +2973,47 @@ public class AnnotationFinder implements IAnnotationFinder {
             if (name == null) {
                 name = type.getDescriptor(); // name was already a class name
             }
-            this.name = name;
+            this.name = symbols.intern(name);
         }
 
         public String getName() {
             return name;
         }
 
+        /**
+         * The element values set where the annotation is used, as read from the bytecode,
+         * defaults of the annotation type are not included. Strings and primitives are
+         * boxed, classes and enum constants are given by their name, arrays are lists
+         * and nested annotations are AnnotationInfos.
+         */
+        public Map<String, Object> getValues() {
+            if (values == null) return Collections.emptyMap();
+            return Collections.unmodifiableMap(values);
+        }
+
+        /**
+         * @return the value of this element, see {@link #getValues()}, null if it was not set
+         */
+        public Object getValue(String element) {
+            return values == null ? null : values.get(element);
+        }
+
+        /**
+         * @return true if the element is set to this value or to an array containing it
+         */
+        public boolean hasValue(String element, Object value) {
+            final Object actual = getValue(element);
+            if (actual instanceof List) return ((List<?>) actual).contains(value);
+            return actual != null && actual.equals(value);
+        }
+
+        void putValue(String element, Object value) {
+            if (values == null) {
+                values = new HashMap<String, Object>(4);
+            }
+            values.put(symbols.intern(element), value);
+        }
+
         public String toString() {
             return name;
         }
@@ -1801,14 +3023,64 @@ public class AnnotationFinder implements IAnnotationFinder {
         initAnnotationInfos(annotationInfo.getName()).add(info);
     }
 
+    /**
+     * Result of a class parsed off the calling thread or read from a
+     * ScanIndexCache, the shared indexes are only updated when index() is called.
+     */
+    final class ScannedClass {
+        final List<AnnotationInfo> annotations = new ArrayList<AnnotationInfo>();
+        final List<Info> annotatedInfos = new ArrayList<Info>();
+        Info info;
+        ClassInfo classInfo;
+        String removed;
+        // bytecode bytes parsed, not written
+        private long bytesRead;
+        // skipped by the prefilter, counted once indexed
+        private boolean prefiltered;
+
+        String getName() {
+            return info.getName();
+        }
+
+        void index() {
+            if (classInfo != null) {
+                putClassInfo(classInfo);
+            }
+            for (int i = 0; i < annotations.size(); i++) {
+                AnnotationFinder.this.index(annotations.get(i), annotatedInfos.get(i));
+            }
+            if (removed != null) {
+                removeClassInfo(removed);
+            }
+            if (prefiltered) {
+                AnnotationFinder.this.prefiltered.incrementAndGet();
+            }
+        }
+    }
+
+    String intern(final String symbol) {
+        return symbols.intern(symbol);
+    }
+
+    AnnotationInfo newAnnotationInfo(final String className) {
+        return new AnnotationInfo("L" + className.replace('.', '/') + ";");
+    }
+
     public class InfoBuildingVisitor extends EmptyVisitor {
         private Info info;
+        private final ScannedClass scanned;
 
         public InfoBuildingVisitor() {
+            this.scanned = null;
         }
 
         public InfoBuildingVisitor(Info info) {
+            this(info, null);
+        }
+
+        private InfoBuildingVisitor(Info info, ScannedClass scanned) {
             this.info = info;
+            this.scanned = scanned;
         }
 
         public Info getInfo() {
@@ -1819,20 +3091,29 @@ public class AnnotationFinder implements IAnnotationFinder {
         public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
             if (name.endsWith("package-info")) {
                 info = new PackageInfo(javaName(name));
+                if (scanned != null) {
+                    scanned.info = info;
+                }
             } else {
 
                 ClassInfo classInfo = new ClassInfo(javaName(name), javaName(superName));
 
 //                if (signature == null) {
                 for (final String interfce : interfaces) {
-                    classInfo.interfaces.add(javaName(interfce));
+                    classInfo.interfaces.add(symbols.intern(javaName(interfce)));
                 }
 //                } else {
 //                    // the class uses generics
 //                    new SignatureReader(signature).accept(new GenericAwareInfoBuildingVisitor(GenericAwareInfoBuildingVisitor.TYPE.CLASS, classInfo));
 //                }
+                classInfo.access = access;
                 info = classInfo;
-                classInfos.put(classInfo.getName(), classInfo);
+                if (scanned != null) {
+                    scanned.info = classInfo;
+                    scanned.classInfo = classInfo;
+                } else {
+                    putClassInfo(classInfo);
+                }
             }
         }
 
@@ -1841,13 +3122,30 @@ public class AnnotationFinder implements IAnnotationFinder {
             super.visitEnd();
             if (cleanOnNaked()) {
                 if (ClassInfo.class.isInstance(info) && isNaked(ClassInfo.class.cast(info))) {
-                    classInfos.remove(info.getName());
+                    remove(info.getName());
                 } else if (PackageInfo.class.isInstance(info) && isNaked(PackageInfo.class.cast(info))) {
-                    classInfos.remove(info.getName());
+                    remove(info.getName());
                 }
             }
         }
 
+        private void remove(final String name) {
+            if (scanned != null) {
+                scanned.removed = name;
+            } else {
+                removeClassInfo(name);
+            }
+        }
+
+        private void index(final AnnotationInfo annotationInfo, final Info info) {
+            if (scanned != null) {
+                scanned.annotations.add(annotationInfo);
+                scanned.annotatedInfos.add(info);
+            } else {
+                AnnotationFinder.this.index(annotationInfo, info);
+            }
+        }
+
         private boolean isNaked(final PackageInfo info) {
             return info.getAnnotations().isEmpty();
         }
@@ -1889,7 +3187,7 @@ public class AnnotationFinder implements IAnnotationFinder {
                 AnnotationInfo annotationInfo = new AnnotationInfo(desc);
                 info.getAnnotations().add(annotationInfo);
                 index(annotationInfo, info);
-                return new InfoBuildingVisitor(annotationInfo).annotationVisitor();
+                return new AnnotationValuesVisitor(annotationInfo, null);
             }
             return super.visitAnnotation(desc, visible);
         }
@@ -1899,7 +3197,7 @@ public class AnnotationFinder implements IAnnotationFinder {
             ClassInfo classInfo = ((ClassInfo) info);
             FieldInfo fieldInfo = new FieldInfo(classInfo, name, desc);
             classInfo.getFields().add(fieldInfo);
-            return new InfoBuildingVisitor(fieldInfo).fieldVisitor();
+            return new InfoBuildingVisitor(fieldInfo, scanned).fieldVisitor();
         }
 
         @Override
@@ -1908,7 +3206,7 @@ public class AnnotationFinder implements IAnnotationFinder {
             MethodInfo methodInfo = new MethodInfo(classInfo, name, desc);
 
             classInfo.getMethods().add(methodInfo);
-            return new InfoBuildingVisitor(methodInfo).methodVisitor();
+            return new InfoBuildingVisitor(methodInfo, scanned).methodVisitor();
         }
 
 
@@ -1923,9 +3221,69 @@ public class AnnotationFinder implements IAnnotationFinder {
                 ParameterInfo parameterInfo = new ParameterInfo(methodInfo, param);
                 methodInfo.getParameters().add(parameterInfo);
                 index(annotationInfo, parameterInfo);
-                return new InfoBuildingVisitor(annotationInfo).annotationVisitor();
+                return new AnnotationValuesVisitor(annotationInfo, null);
             }
             return super.visitMethodParameterAnnotation(param, desc, visible);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Records the element values of an annotation, or the values of one of its array elements.
+     */
+    private class AnnotationValuesVisitor extends AnnotationVisitor {
+        private final AnnotationInfo annotation;
+        private final List<Object> array;
+
+        private AnnotationValuesVisitor(AnnotationInfo annotation, List<Object> array) {
+            super(AsmConstants.ASM_VERSION);
+            this.annotation = annotation;
+            this.array = array;
+        }
+
+        private void put(String name, Object value) {
+            if (array != null) {
+                array.add(value);
+            } else {
+                annotation.putValue(name, value);
+            }
+        }
+
+        @Override
+        public void visit(String name, Object value) {
+            if (value instanceof Type) {
+                put(name, symbols.intern(((Type) value).getClassName()));
+            } else if (value instanceof String) {
+                put(name, symbols.intern((String) value));
+            } else if (value != null && value.getClass().isArray()) {
+                // primitive arrays are given at once
+                final int length = Array.getLength(value);
+                final List<Object> values = new ArrayList<Object>(length);
+                for (int i = 0; i < length; i++) {
+                    values.add(Array.get(value, i));
+                }
+                put(name, values);
+            } else {
+                put(name, value);
+            }
+        }
+
+        @Override
+        public void visitEnum(String name, String desc, String value) {
+            put(name, symbols.intern(value));
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotation(String name, String desc) {
+            final AnnotationInfo nested = new AnnotationInfo(desc);
+            put(name, nested);
+            return new AnnotationValuesVisitor(nested, null);
+        }
+
+        @Override
+        public AnnotationVisitor visitArray(String name) {
+            final List<Object> values = new ArrayList<Object>();
+            put(name, values);
+            return new AnnotationValuesVisitor(null, values);
+        }
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.apache.xbean.finder.archive.Archive;
+import org.apache.xbean.finder.archive.ClassesArchive;
+import org.apache.xbean.finder.archive.FileArchive;
+import org.apache.xbean.finder.archive.JarArchive;
+import org.apache.xbean.finder.filter.PackageScope;
+import org.apache.xbean.finder.util.DirectoryWalker;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+
+/**
+ * Precomputed annotation index of an archive.
+ * <p/>
+ * The index is generated at build time (see the index goal of maven-xbean-plugin)
+ * and shipped as {@link #LOCATION} in the jar or directory it describes.
+ * {@link AnnotationFinder.Options#indexes(boolean)} makes AnnotationFinder read
+ * it instead of parsing the bytecode of the archive, archives without an index
+ * are scanned as usual.
+ * <p/>
+ * The index of a directory records the names, sizes and modification dates of its
+ * class files, it is ignored once they changed since a directory such as target/classes
+ * is usually compiled again without the index being written again.
+ * <p/>
+ * The index also records the names of the classes it describes. The index of a jar is
+ * ignored when the jar lists other classes, for instance a shaded jar merging several
+ * libraries which kept the index of one of them.
+ *
+ * @version $Rev$ $Date$
+ */
+public final class ArchiveIndex {
+    public static final String LOCATION = "META-INF/xbean-finder.idx";
+
+    private static final int MAGIC = 0x58424649; // XBFI
+    private static final int VERSION = 5;
+
+    /**
+     * Parses all the classes of the archive and writes their index to the stream.
+     */
+    public static void write(final Archive archive, final OutputStream stream) throws IOException {
+        final AnnotationFinder finder = new AnnotationFinder(new ClassesArchive());
+        final List<AnnotationFinder.ScannedClass> classes = new ArrayList<AnnotationFinder.ScannedClass>();
+        final ClassNames names = new ClassNames();
+        for (Archive.Entry entry : archive) {
+            names.add(entry.getName());
+            classes.add(finder.scanClassDef(entry.getName(), entry.getBytecode()));
+        }
+
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(stamp(archive));
+        out.writeInt(names.count);
+        out.writeLong(names.hash);
+        writeClasses(out, classes);
+        out.flush();
+    }
+
+    /**
+     * Writes the index of the archive to the given file.
+     */
+    public static void write(final Archive archive, final File file) throws IOException {
+        final File parent = file.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Can't create " + parent);
+        }
+        final OutputStream out = new FileOutputStream(file);
+        try {
+            write(archive, out);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * @return the index shipped with the archive or null if there is none
+     */
+    static List<AnnotationFinder.ScannedClass> read(final AnnotationFinder finder, final Archive archive) throws IOException {
+        final InputStream stream = open(archive);
+        if (stream == null) return null;
+
+        try {
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+            if (in.readInt() != MAGIC) throw new IOException("Not an xbean-finder index");
+            if (in.readInt() != VERSION) return null; // written by another version, scan instead
+            final long stamp = in.readLong();
+            final int count = in.readInt();
+            final long hash = in.readLong();
+            if (isDirectory(archive) && stamp != stamp(archive)) return null; // the classes changed since, scan instead
+            if (archive instanceof JarArchive) {
+                final ClassNames names = names(((JarArchive) archive).getJarFile());
+                if (names.count != count || names.hash != hash) return null; // not the index of these classes
+            }
+            return readClasses(finder, in);
+        } finally {
+            stream.close();
+        }
+    }
+
+    static void writeClasses(final DataOutput out, final List<AnnotationFinder.ScannedClass> classes) throws IOException {
+        out.writeInt(classes.size());
+        for (AnnotationFinder.ScannedClass scanned : classes) {
+            ScannedClassFormat.write(scanned, out);
+        }
+    }
+
+    static List<AnnotationFinder.ScannedClass> readClasses(final AnnotationFinder finder, final DataInput in) throws IOException {
+        final int size = in.readInt();
+        final List<AnnotationFinder.ScannedClass> classes = new ArrayList<AnnotationFinder.ScannedClass>(size);
+        for (int i = 0; i < size; i++) {
+            classes.add(ScannedClassFormat.read(finder, in));
+        }
+        return classes;
+    }
+
+    /**
+     * @return the packages the archive is restricted to, null if it lists all its classes
+     */
+    static PackageScope scope(final Archive archive) {
+        if (archive instanceof JarArchive) return ((JarArchive) archive).getScope();
+        if (archive instanceof FileArchive) return ((FileArchive) archive).getScope();
+        return null;
+    }
+
+    private static boolean isDirectory(final Archive archive) {
+        return archive instanceof FileArchive && ((FileArchive) archive).getBasePackage().length() == 0;
+    }
+
+    /**
+     * @return a digest of the class files of a directory, 0 for the other archives.
+     * The index of a directory packaged in a jar keeps the stamp of the directory, it is not checked in jars.
+     */
+    private static long stamp(final Archive archive) {
+        if (!isDirectory(archive)) return 0;
+
+        long stamp = 0;
+        for (DirectoryWalker.ClassFile file : DirectoryWalker.getDefault().walk(((FileArchive) archive).getDir(), "", null)) {
+            // order independent, the walk may be parallel
+            stamp += (file.getClassName().hashCode() * 31L + file.getLastModified()) * 31L + file.getSize();
+        }
+        return stamp;
+    }
+
+    /**
+     * @return the classes of the jar as JarArchive lists them, whatever its scope
+     */
+    private static ClassNames names(final JarFile jar) {
+        final ClassNames names = new ClassNames();
+        final Enumeration<JarEntry> entries = jar.entries();
+        while (entries.hasMoreElements()) {
+            final JarEntry entry = entries.nextElement();
+            final String name = entry.getName();
+            if (entry.isDirectory() || !name.endsWith(".class") || name.endsWith("module-info.class") || name.startsWith("META-INF/")) {
+                continue;
+            }
+
+            final String className = name.substring(0, name.length() - ".class".length());
+            if (className.indexOf('.') < 0) {
+                names.add(className.replace('/', '.'));
+            }
+        }
+        return names;
+    }
+
+    private static InputStream open(final Archive archive) throws IOException {
+        if (archive instanceof JarArchive) {
+            final JarArchive jarArchive = (JarArchive) archive;
+            final ZipEntry entry = jarArchive.getJarFile().getEntry(LOCATION);
+            return entry == null ? null : jarArchive.getJarFile().getInputStream(entry);
+        }
+        if (isDirectory(archive)) {
+            final File file = new File(((FileArchive) archive).getDir(), LOCATION);
+            return file.isFile() ? new FileInputStream(file) : null;
+        }
+        return null;
+    }
+
+    // number and order independent hash of class names
+    private static final class ClassNames {
+        private int count;
+        private long hash;
+
+        private void add(final String className) {
+            count++;
+            hash += className.hashCode() * 0x9E3779B97F4A7C15L + className.length();
+        }
+    }
+
+    private ArchiveIndex() {
+        // no-op
+    }
+}
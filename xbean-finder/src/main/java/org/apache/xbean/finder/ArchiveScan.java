@@ -0,0 +1,113 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.apache.xbean.finder.archive.Archive;
+
+/**
+ * Measures of the scan of one archive, see {@link ScanListener#archiveScanned(ArchiveScan)}.
+ *
+ * @version $Rev$ $Date$
+ */
+public final class ArchiveScan {
+    private final Archive archive;
+    private final long nanos;
+    private final long bytesRead;
+    private final int entries;
+    private final int parsed;
+    private final int skipped;
+    private final int failed;
+    private final int duplicates;
+
+    ArchiveScan(Archive archive, long nanos, long bytesRead, int entries, int parsed, int skipped, int failed, int duplicates) {
+        this.archive = archive;
+        this.nanos = nanos;
+        this.bytesRead = bytesRead;
+        this.entries = entries;
+        this.parsed = parsed;
+        this.skipped = skipped;
+        this.failed = failed;
+        this.duplicates = duplicates;
+    }
+
+    public Archive getArchive() {
+        return archive;
+    }
+
+    /**
+     * @return wall time spent reading and parsing the archive
+     */
+    public long getNanos() {
+        return nanos;
+    }
+
+    /**
+     * @return bytecode bytes handed to the finder
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * @return number of entries returned by the archive
+     */
+    public int getEntries() {
+        return entries;
+    }
+
+    /**
+     * @return number of classes fully parsed
+     */
+    public int getParsed() {
+        return parsed;
+    }
+
+    /**
+     * @return number of classes only recorded in the hierarchy, as they can't use the annotations given to the finder
+     */
+    public int getSkipped() {
+        return skipped;
+    }
+
+    /**
+     * @return number of entries which could not be read
+     */
+    public int getFailed() {
+        return failed;
+    }
+
+    /**
+     * @return number of classes not parsed as an identical copy was already read, see {@link AnnotationFinder#deduplicate()}
+     */
+    public int getDuplicates() {
+        return duplicates;
+    }
+
+    @Override
+    public String toString() {
+        return "ArchiveScan{" +
+                "archive=" + archive +
+                ", millis=" + nanos / 1000000 +
+                ", bytesRead=" + bytesRead +
+                ", entries=" + entries +
+                ", parsed=" + parsed +
+                ", skipped=" + skipped +
+                ", failed=" + failed +
+                ", duplicates=" + duplicates +
+                '}';
+    }
+}
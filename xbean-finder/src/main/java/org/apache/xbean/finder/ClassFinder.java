@@ -16,6 +16,8 @@
  */
 package org.apache.xbean.finder;
 
+import org.apache.xbean.finder.util.DirectoryWalker;
+
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -169,26 +171,11 @@ public class ClassFinder extends AbstractFinder {
             dir = dir.getParentFile(); // Scrape "META-INF" off
         }
         if (dir.isDirectory()) {
-            scanDir(dir, classNames, "");
-        }
-        return classNames;
-    }
-
-    private void scanDir(File dir, List<String> classNames, String packageName) {
-        File[] files = dir.listFiles();
-        if (files == null) {
-            return;
-        }
-        for (File file : files) {
-            if (file.isDirectory()) {
-                scanDir(file, classNames, packageName + file.getName() + ".");
-            } else if (file.getName().endsWith(".class")) {
-                String name = file.getName();
-                name = name.replaceFirst(".class$", "");
-                if (name.contains(".")) continue;
-                classNames.add(packageName + name);
+            for (DirectoryWalker.ClassFile file : DirectoryWalker.getDefault().walk(dir, "", null)) {
+                classNames.add(file.getClassName());
             }
         }
+        return classNames;
     }
 
     private List<String> jar(URL location) throws IOException {
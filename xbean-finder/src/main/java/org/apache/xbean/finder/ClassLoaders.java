@@ -18,14 +18,24 @@ package org.apache.xbean.finder;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.regex.Pattern;
 
 import org.apache.xbean.finder.util.Files;
@@ -37,17 +47,221 @@ public final class ClassLoaders {
     private static final boolean UNIX = !System.getProperty("os.name").toLowerCase().contains("win");
     private static final Pattern MJAR_PATTERN = Pattern.compile(".*/META-INF/versions/[0-9]+/$");
 
+    private static final Map<ClassLoader, Discovery> CACHE = new WeakHashMap<ClassLoader, Discovery>();
+
+    /**
+     * When the xbean.finder.classloaders.cache system property is true the urls are
+     * discovered once per class loader. The cached urls are discovered again when the
+     * urls of one of the URLClassLoaders of the chain change, the other loaders being
+     * found from their resources, see {@link #invalidate(ClassLoader)} when their
+     * content changes.
+     */
     public static Set<URL> findUrls(final ClassLoader classLoader) throws IOException {
-        if (classLoader == null || (SYSTEM.getParent() != null && classLoader == SYSTEM.getParent())) {
+        if (isBoot(classLoader)) {
             return Collections.emptySet();
         }
+        return cached(classLoader, null);
+    }
+
+    /**
+     * As {@link #findUrls(ClassLoader)}, the loaders of the chain which may need a
+     * resource based discovery run it concurrently in the executor.
+     *
+     * @param executor null to discover in the calling thread
+     */
+    public static Set<URL> findUrls(final ClassLoader classLoader, final ExecutorService executor) throws IOException {
+        if (executor == null || isBoot(classLoader)) {
+            return findUrls(classLoader);
+        }
+
+        final Map<ClassLoader, Future<Set<URL>>> resources = new IdentityHashMap<ClassLoader, Future<Set<URL>>>();
+        for (ClassLoader loader = classLoader; !isBoot(loader); loader = loader.getParent()) {
+            if (isCacheEnabled() && cachedUrls(loader) != null) {
+                break; // this loader and its parents are up to date
+            }
+
+            final boolean useUrls = URLClassLoader.class.isInstance(loader) && !DONT_USE_GET_URLS;
+            if (!useUrls || URLClassLoader.class.cast(loader).getURLs().length <= 1) { // can't know before the parents are done
+                final ClassLoader current = loader;
+                resources.put(loader, executor.submit(new Callable<Set<URL>>() {
+                    public Set<URL> call() throws IOException {
+                        return findUrlFromResources(current);
+                    }
+                }));
+            }
+            if (!useUrls || isSurefire(loader)) {
+                break; // the parents are not visited
+            }
+        }
+
+        try {
+            return cached(classLoader, resources);
+        } finally {
+            for (final Future<Set<URL>> future : resources.values()) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Forgets the urls of the loader, they are discovered again the next time they are requested.
+     */
+    public static void invalidate(final ClassLoader classLoader) {
+        synchronized (CACHE) {
+            CACHE.remove(classLoader);
+        }
+    }
+
+    public static void invalidateAll() {
+        synchronized (CACHE) {
+            CACHE.clear();
+        }
+    }
+
+    private static boolean isCacheEnabled() {
+        return Boolean.getBoolean("xbean.finder.classloaders.cache");
+    }
+
+    private static boolean isBoot(final ClassLoader classLoader) {
+        return classLoader == null || (SYSTEM.getParent() != null && classLoader == SYSTEM.getParent());
+    }
+
+    /**
+     * @return a copy of the cached urls of the loader, null if they are unknown or outdated
+     */
+    private static Set<URL> cachedUrls(final ClassLoader classLoader) {
+        final Discovery discovery;
+        synchronized (CACHE) {
+            discovery = CACHE.get(classLoader);
+        }
+        if (discovery == null) {
+            return null;
+        }
+
+        final Set<URL> urls = discovery.urls(classLoader);
+        if (urls == null) {
+            invalidate(classLoader);
+        }
+        return urls;
+    }
+
+    /**
+     * @return a set owned by the caller
+     */
+    private static Set<URL> cached(final ClassLoader classLoader, final Map<ClassLoader, Future<Set<URL>>> resources) throws IOException {
+        if (isBoot(classLoader)) {
+            return new HashSet<URL>();
+        }
+        if (!isCacheEnabled()) {
+            return discover(classLoader, resources);
+        }
+
+        final Set<URL> cached = cachedUrls(classLoader);
+        if (cached != null) {
+            return cached;
+        }
 
+        final List<String[]> snapshots = snapshots(classLoader);
+        final Set<URL> urls = discover(classLoader, resources);
+        final Discovery discovery = Discovery.of(urls, snapshots);
+        if (discovery != null) {
+            synchronized (CACHE) {
+                CACHE.put(classLoader, discovery);
+            }
+        }
+        return urls;
+    }
+
+    // the urls of the URLClassLoaders of the chain, as far as discover() walks it
+    private static List<String[]> snapshots(final ClassLoader classLoader) {
+        final List<String[]> snapshots = new ArrayList<String[]>();
+        for (ClassLoader loader = classLoader; !isBoot(loader); loader = loader.getParent()) {
+            if (!URLClassLoader.class.isInstance(loader) || DONT_USE_GET_URLS || isSurefire(loader)) {
+                break;
+            }
+            snapshots.add(externalForms(URLClassLoader.class.cast(loader).getURLs()));
+        }
+        return snapshots;
+    }
+
+    private static String[] externalForms(final URL[] urls) {
+        final String[] forms = new String[urls.length];
+        for (int i = 0; i < urls.length; i++) {
+            forms[i] = urls[i].toExternalForm();
+        }
+        return forms;
+    }
+
+    /**
+     * Urls of a loader. Only their external forms are kept, a url references its handler
+     * which can be loaded by the loader itself and would prevent it from being collected.
+     */
+    private static final class Discovery {
+        private final String[] urls;
+        private final List<String[]> snapshots;
+
+        private Discovery(final String[] urls, final List<String[]> snapshots) {
+            this.urls = urls;
+            this.snapshots = snapshots;
+        }
+
+        /**
+         * @return null if a url needs a handler the JDK doesn't provide, it can't be rebuilt from the cache
+         */
+        private static Discovery of(final Collection<URL> urls, final List<String[]> snapshots) {
+            final String[] forms = new String[urls.size()];
+            int i = 0;
+            for (final URL url : urls) {
+                if (!isJdkHandled(url)) {
+                    return null;
+                }
+                forms[i++] = url.toExternalForm();
+            }
+            return new Discovery(forms, snapshots);
+        }
+
+        /**
+         * @return the urls or null if the urls of a URLClassLoader of the chain changed
+         */
+        private Set<URL> urls(final ClassLoader classLoader) {
+            final List<String[]> current = snapshots(classLoader);
+            if (current.size() != snapshots.size()) {
+                return null;
+            }
+            for (int i = 0; i < current.size(); i++) {
+                if (!Arrays.equals(current.get(i), snapshots.get(i))) {
+                    return null;
+                }
+            }
+
+            final Set<URL> set = new HashSet<URL>();
+            for (final String url : urls) {
+                try {
+                    set.add(new URL(url));
+                } catch (final MalformedURLException e) {
+                    return null;
+                }
+            }
+            return set;
+        }
+    }
+
+    // the default handler of the protocol gives the same kind of connection
+    private static boolean isJdkHandled(final URL url) {
+        try {
+            return new URL(url.toExternalForm()).openConnection().getClass() == url.openConnection().getClass();
+        } catch (final IOException e) {
+            return false;
+        }
+    }
+
+    private static Set<URL> discover(final ClassLoader classLoader, final Map<ClassLoader, Future<Set<URL>>> resources) throws IOException {
         final Set<URL> urls =  new HashSet<URL>();
 
         if (URLClassLoader.class.isInstance(classLoader) && !DONT_USE_GET_URLS) {
             if (!isSurefire(classLoader)) {
                 for (final Collection<URL> item : Arrays.asList(
-                        Arrays.asList(URLClassLoader.class.cast(classLoader).getURLs()), findUrls(classLoader.getParent()))) {
+                        Arrays.asList(URLClassLoader.class.cast(classLoader).getURLs()), cached(classLoader.getParent(), resources))) {
                     for (final URL url : item) {
                         addIfNotSo(urls, url);
                     }
@@ -57,10 +271,10 @@ public final class ClassLoaders {
             }
         }
 
-        // DONT_USE_GET_URLS || java -jar xxx.jar and use MANIFEST.MF Class-Path?
+        // DONT_USE_GET_URLS || java -jar xxx.jar and use MANIFEST.MF Class-Path?
         // here perf is not an issue since we would either miss all the classpath or we have a single jar
         if (urls.size() <= 1) {
-            final Set<URL> urlFromResources = findUrlFromResources(classLoader);
+            final Set<URL> urlFromResources = resources(classLoader, resources);
             if (!urls.isEmpty()) {
                 final URL theUrl = urls.iterator().next();
                 if ("file".equals(theUrl.getProtocol())) {  // theUrl can be file:xxxx but it is the same entry actually
@@ -73,6 +287,25 @@ public final class ClassLoaders {
         return urls;
     }
 
+    private static Set<URL> resources(final ClassLoader classLoader, final Map<ClassLoader, Future<Set<URL>>> resources) throws IOException {
+        final Future<Set<URL>> future = resources == null ? null : resources.get(classLoader);
+        if (future == null) {
+            return findUrlFromResources(classLoader);
+        }
+
+        try {
+            return future.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while discovering the urls of " + classLoader);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
     private static void addIfNotSo(final Set<URL> urls, final URL url) {
         if (UNIX && isNative(url)) {
             return;
@@ -0,0 +1,214 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.apache.xbean.finder.archive.Archive;
+import org.apache.xbean.finder.util.ConcurrentSingleLinkedList;
+
+import java.util.AbstractList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * AnnotationFinder which can be queried by several threads at once.
+ * <p/>
+ * The indexes are concurrent maps and lock free lists, the queries don't lock
+ * the finder. Classes read lazily while querying (super types, interfaces,
+ * annotations) are fully parsed before being published in the indexes, a thread
+ * only waits for another one reading the same class. The linking methods and
+ * update() are serialized, they can run while other threads query the finder.
+ * <p/>
+ * {@link #getClassesNotLoaded()} returns the classes which could not be loaded
+ * by the last query of the calling thread.
+ */
+public class ConcurrentAnnotationFinder extends AnnotationFinder {
+
+    // the reads in progress by class name
+    private final ConcurrentMap<String, FutureTask<Void>> reading = new ConcurrentHashMap<String, FutureTask<Void>>();
+
+    public ConcurrentAnnotationFinder(Archive archive) {
+        super(archive);
+    }
+
+    /**
+     * @param archive
+     * @param checkRuntimeAnnotation Has no effect on findMetaAnnotated* methods
+     */
+    public ConcurrentAnnotationFinder(Archive archive, boolean checkRuntimeAnnotation) {
+        super(archive, checkRuntimeAnnotation);
+    }
+
+    /**
+     * @param archive
+     * @param options how the archive is scanned
+     */
+    public ConcurrentAnnotationFinder(Archive archive, Options options) {
+        super(archive, options);
+    }
+
+    @Override
+    protected Map<String, List<Info>> newAnnotatedMap() {
+        return new ConcurrentHashMap<String, List<Info>>();
+    }
+
+    @Override
+    protected Map<String, ClassInfo> newClassInfoMap() {
+        return new ConcurrentHashMap<String, ClassInfo>();
+    }
+
+    @Override
+    protected List<String> newClassesNotLoadedList() {
+        return new ThreadLocalList<String>();
+    }
+
+    @Override
+    protected <T> List<T> newInfoList() {
+        return new ConcurrentSingleLinkedList<T>();
+    }
+
+    @Override
+    protected List<Info> initAnnotationInfos(String name) {
+        List<Info> infos = annotated.get(name);
+        if (infos == null) {
+            infos = newInfoList();
+            final List<Info> existing = ((ConcurrentMap<String, List<Info>>) annotated).putIfAbsent(name, infos);
+            if (existing != null) return existing;
+        }
+        return infos;
+    }
+
+    @Override
+    protected void readClassDef(final String className) {
+        readOnce(className, new Runnable() {
+            public void run() {
+                ConcurrentAnnotationFinder.super.readClassDef(className);
+            }
+        });
+    }
+
+    @Override
+    protected void readClassDef(final Class clazz) {
+        readOnce(clazz.getName(), new Runnable() {
+            public void run() {
+                ConcurrentAnnotationFinder.super.readClassDef(clazz);
+            }
+        });
+    }
+
+    /**
+     * Runs the read unless another thread is reading the same class, then waits for it.
+     * The reads check the indexes first so a class is not read again once published.
+     */
+    private void readOnce(String className, Runnable read) {
+        if (reading == null) { // scanning in the constructor of the super class
+            read.run();
+            return;
+        }
+
+        final FutureTask<Void> task = new FutureTask<Void>(read, null);
+        final FutureTask<Void> running = reading.putIfAbsent(className, task);
+        if (running == null) {
+            try {
+                task.run();
+            } finally {
+                reading.remove(className, task);
+            }
+        }
+
+        try {
+            (running == null ? task : running).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while reading " + className, e);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    @Override
+    public synchronized AnnotationFinder link() {
+        return super.link();
+    }
+
+    @Override
+    public synchronized AnnotationFinder enableMetaAnnotations() {
+        return super.enableMetaAnnotations();
+    }
+
+    @Override
+    public synchronized AnnotationFinder enableFindImplementations() {
+        return super.enableFindImplementations();
+    }
+
+    @Override
+    public synchronized AnnotationFinder enableFindSubclasses() {
+        return super.enableFindSubclasses();
+    }
+
+    @Override
+    public synchronized List<String> update() {
+        return super.update();
+    }
+
+    /**
+     * List of the calling thread, the queries clear and fill the classes not loaded
+     * without seeing the ones of the other threads.
+     */
+    private static final class ThreadLocalList<T> extends AbstractList<T> {
+        private final ThreadLocal<List<T>> lists = new ThreadLocal<List<T>>() {
+            @Override
+            protected List<T> initialValue() {
+                return new LinkedList<T>();
+            }
+        };
+
+        @Override
+        public T get(int index) {
+            return lists.get().get(index);
+        }
+
+        @Override
+        public int size() {
+            return lists.get().size();
+        }
+
+        @Override
+        public void add(int index, T element) {
+            lists.get().add(index, element);
+        }
+
+        @Override
+        public T remove(int index) {
+            return lists.get().remove(index);
+        }
+
+        @Override
+        public void clear() {
+            lists.get().clear();
+        }
+    }
+}
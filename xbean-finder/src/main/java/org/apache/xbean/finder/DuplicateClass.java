@@ -0,0 +1,65 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.apache.xbean.finder.archive.Archive;
+
+/**
+ * A class found more than once while scanning, see {@link AnnotationFinder#getDuplicates()}.
+ *
+ * @version $Rev$ $Date$
+ */
+public final class DuplicateClass {
+    private final String className;
+    private final Archive previous;
+    private final Archive duplicate;
+    private final boolean identical;
+
+    DuplicateClass(String className, Archive previous, Archive duplicate, boolean identical) {
+        this.className = className;
+        this.previous = previous;
+        this.duplicate = duplicate;
+        this.identical = identical;
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    /**
+     * @return the archive of the copy read before this one
+     */
+    public Archive getPrevious() {
+        return previous;
+    }
+
+    public Archive getDuplicate() {
+        return duplicate;
+    }
+
+    /**
+     * @return true if both copies have the same CRC-32 and size, the duplicate was then not parsed
+     */
+    public boolean isIdentical() {
+        return identical;
+    }
+
+    @Override
+    public String toString() {
+        return className + (identical ? " (identical)" : " (different)") + " in " + previous + " and " + duplicate;
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.apache.xbean.finder.AnnotationFinder.ClassInfo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reverse hierarchy of an {@link AnnotationFinder} by super type and interface name,
+ * never changed once published.
+ */
+final class Hierarchy {
+    final Map<String, List<ClassInfo>> subclasses;
+    final Map<String, List<ClassInfo>> implementors;
+    final int modifications;
+    // lists created for this copy, the others are shared with the published index; null if all are
+    private final Set<List<ClassInfo>> owned;
+
+    Hierarchy(int modifications) {
+        this.subclasses = new HashMap<String, List<ClassInfo>>();
+        this.implementors = new HashMap<String, List<ClassInfo>>();
+        this.modifications = modifications;
+        this.owned = null;
+    }
+
+    /**
+     * Copy of a published index to patch while it is still queried,
+     * a list is copied the first time it is changed.
+     */
+    Hierarchy(Hierarchy published) {
+        this.subclasses = new HashMap<String, List<ClassInfo>>(published.subclasses);
+        this.implementors = new HashMap<String, List<ClassInfo>>(published.implementors);
+        this.modifications = published.modifications;
+        this.owned = Collections.newSetFromMap(new IdentityHashMap<List<ClassInfo>, Boolean>());
+    }
+
+    // the patched copy, to publish
+    Hierarchy(Hierarchy patched, int modifications) {
+        this.subclasses = patched.subclasses;
+        this.implementors = patched.implementors;
+        this.modifications = modifications;
+        this.owned = null;
+    }
+
+    void index(ClassInfo classInfo) {
+        if (classInfo.getSuperType() != null) {
+            entries(subclasses, classInfo.getSuperType()).add(classInfo);
+        }
+        for (String interfce : classInfo.getInterfaces()) {
+            entries(implementors, interfce).add(classInfo);
+        }
+    }
+
+    void unindex(ClassInfo classInfo) {
+        if (classInfo.getSuperType() != null && subclasses.containsKey(classInfo.getSuperType())) {
+            entries(subclasses, classInfo.getSuperType()).remove(classInfo);
+        }
+        for (String interfce : classInfo.getInterfaces()) {
+            if (implementors.containsKey(interfce)) {
+                entries(implementors, interfce).remove(classInfo);
+            }
+        }
+    }
+
+    private List<ClassInfo> entries(Map<String, List<ClassInfo>> index, String name) {
+        List<ClassInfo> infos = index.get(name);
+        if (infos == null || owned != null && !owned.contains(infos)) {
+            infos = infos == null ? new ArrayList<ClassInfo>(1) : new ArrayList<ClassInfo>(infos);
+            index.put(name, infos);
+            if (owned != null) owned.add(infos);
+        }
+        return infos;
+    }
+}
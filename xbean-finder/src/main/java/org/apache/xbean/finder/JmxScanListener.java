@@ -0,0 +1,207 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link ScanListener} aggregating the measures of all the finders it is given to
+ * and exposing them as an MBean, so slow archives can be spotted in a running server:
+ * <pre>
+ * final JmxScanListener listener = new JmxScanListener();
+ * listener.register(new ObjectName("org.apache.xbean:type=AnnotationFinder,name=app"));
+ * final AnnotationFinder finder = new AnnotationFinder(archive, new AnnotationFinder.Options().listener(listener)).link();
+ * </pre>
+ *
+ * @version $Rev$ $Date$
+ */
+public class JmxScanListener implements ScanListener, JmxScanListenerMBean {
+    public static final int DEFAULT_SLOWEST_ARCHIVES = 10;
+
+    private final AtomicLong archives = new AtomicLong();
+    private final AtomicLong scanNanos = new AtomicLong();
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong entries = new AtomicLong();
+    private final AtomicLong parsed = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong classLoads = new AtomicLong();
+    private final AtomicLong classLoadFailures = new AtomicLong();
+    private final AtomicLong classLoadNanos = new AtomicLong();
+    private final AtomicLong[] linkNanos = new AtomicLong[LinkPhase.values().length];
+
+    private final int maxSlowest;
+    // sorted by decreasing time
+    private final List<ArchiveScan> slowest = new ArrayList<ArchiveScan>();
+
+    private MBeanServer server;
+    private ObjectName name;
+
+    public JmxScanListener() {
+        this(DEFAULT_SLOWEST_ARCHIVES);
+    }
+
+    /**
+     * @param maxSlowest number of archives reported by getSlowestArchives()
+     */
+    public JmxScanListener(int maxSlowest) {
+        this.maxSlowest = maxSlowest;
+        for (int i = 0; i < linkNanos.length; i++) {
+            linkNanos[i] = new AtomicLong();
+        }
+    }
+
+    /**
+     * Registers this listener in the platform MBean server.
+     */
+    public void register(ObjectName name) throws JMException {
+        register(ManagementFactory.getPlatformMBeanServer(), name);
+    }
+
+    public synchronized void register(MBeanServer server, ObjectName name) throws JMException {
+        server.registerMBean(this, name);
+        this.server = server;
+        this.name = name;
+    }
+
+    public synchronized void unregister() throws JMException {
+        if (server == null) return;
+        server.unregisterMBean(name);
+        server = null;
+        name = null;
+    }
+
+    public void archiveScanned(ArchiveScan scan) {
+        archives.incrementAndGet();
+        scanNanos.addAndGet(scan.getNanos());
+        bytesRead.addAndGet(scan.getBytesRead());
+        entries.addAndGet(scan.getEntries());
+        parsed.addAndGet(scan.getParsed());
+        skipped.addAndGet(scan.getSkipped());
+        failed.addAndGet(scan.getFailed());
+
+        synchronized (slowest) {
+            int index = slowest.size();
+            while (index > 0 && slowest.get(index - 1).getNanos() < scan.getNanos()) {
+                index--;
+            }
+            if (index < maxSlowest) {
+                slowest.add(index, scan);
+                if (slowest.size() > maxSlowest) {
+                    slowest.remove(maxSlowest);
+                }
+            }
+        }
+    }
+
+    public void classLoaded(String className, long nanos, boolean found) {
+        classLoads.incrementAndGet();
+        classLoadNanos.addAndGet(nanos);
+        if (!found) {
+            classLoadFailures.incrementAndGet();
+        }
+    }
+
+    public void linked(LinkPhase phase, long nanos) {
+        linkNanos[phase.ordinal()].addAndGet(nanos);
+    }
+
+    public long getArchives() {
+        return archives.get();
+    }
+
+    public long getScanMillis() {
+        return millis(scanNanos);
+    }
+
+    public long getBytesRead() {
+        return bytesRead.get();
+    }
+
+    public long getEntries() {
+        return entries.get();
+    }
+
+    public long getParsed() {
+        return parsed.get();
+    }
+
+    public long getSkipped() {
+        return skipped.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    public long getClassLoads() {
+        return classLoads.get();
+    }
+
+    public long getClassLoadFailures() {
+        return classLoadFailures.get();
+    }
+
+    public long getClassLoadMillis() {
+        return millis(classLoadNanos);
+    }
+
+    public long getSubclassesLinkMillis() {
+        return millis(linkNanos[LinkPhase.SUBCLASSES.ordinal()]);
+    }
+
+    public long getImplementationsLinkMillis() {
+        return millis(linkNanos[LinkPhase.IMPLEMENTATIONS.ordinal()]);
+    }
+
+    public long getMetaAnnotationsLinkMillis() {
+        return millis(linkNanos[LinkPhase.META_ANNOTATIONS.ordinal()]);
+    }
+
+    public String[] getSlowestArchives() {
+        synchronized (slowest) {
+            final String[] archives = new String[slowest.size()];
+            for (int i = 0; i < archives.length; i++) {
+                archives[i] = slowest.get(i).toString();
+            }
+            return archives;
+        }
+    }
+
+    public void reset() {
+        for (AtomicLong counter : new AtomicLong[]{archives, scanNanos, bytesRead, entries, parsed, skipped,
+                failed, classLoads, classLoadFailures, classLoadNanos}) {
+            counter.set(0);
+        }
+        for (AtomicLong counter : linkNanos) {
+            counter.set(0);
+        }
+        synchronized (slowest) {
+            slowest.clear();
+        }
+    }
+
+    private static long millis(AtomicLong nanos) {
+        return nanos.get() / 1000000;
+    }
+}
@@ -0,0 +1,58 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder;
+
+/**
+ * Management interface of {@link JmxScanListener}.
+ *
+ * @version $Rev$ $Date$
+ */
+public interface JmxScanListenerMBean {
+
+    long getArchives();
+
+    long getScanMillis();
+
+    long getBytesRead();
+
+    long getEntries();
+
+    long getParsed();
+
+    long getSkipped();
+
+    long getFailed();
+
+    long getClassLoads();
+
+    long getClassLoadFailures();
+
+    long getClassLoadMillis();
+
+    long getSubclassesLinkMillis();
+
+    long getImplementationsLinkMillis();
+
+    long getMetaAnnotationsLinkMillis();
+
+    /**
+     * @return the slowest archives scanned so far, slowest first
+     */
+    String[] getSlowestArchives();
+
+    void reset();
+}
@@ -16,27 +16,47 @@
  */
 package org.apache.xbean.finder;
 
+import org.apache.xbean.finder.util.Files;
+import org.apache.xbean.finder.util.JarIndex;
+
 import java.io.BufferedInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.io.StringReader;
 import java.net.HttpURLConnection;
 import java.net.JarURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.net.URLClassLoader;
 import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.jar.JarEntry;
+import java.util.jar.Attributes;
 import java.util.jar.JarFile;
+import java.util.jar.Manifest;
 
 /**
  * @author David Blevins
@@ -47,6 +67,7 @@ public class ResourceFinder {
     private final String path;
     private final ClassLoader classLoader;
     private final List<String> resourcesNotLoaded = new ArrayList<String>();
+    private volatile boolean indexed;
 
     public ResourceFinder(URL... urls) {
         this(null, Thread.currentThread().getContextClassLoader(), urls);
@@ -78,24 +99,43 @@ public class ResourceFinder {
         this.classLoader = classLoader;
 
         for (int i = 0; urls != null && i < urls.length; i++) {
-            URL url = urls[i];
-            if (url == null || "jar".equals(url.getProtocol()) || isDirectory(url)) { // test directory last since it is the longer in time
-                continue;
-            }
-            try {
-                urls[i] = new URL("jar", "", -1, url.toString() + "!/");
-            } catch (MalformedURLException e) {
-                // no-op
-            }
+            urls[i] = searchUrl(urls[i]);
         }
         this.urls = (urls == null || urls.length == 0)? null : urls;
     }
 
+    // a jar file url is searched as a jar: url
+    private static URL searchUrl(URL url) {
+        if (url == null || "jar".equals(url.getProtocol()) || isDirectory(url)) { // test directory last since it is the longer in time
+            return url;
+        }
+        try {
+            return new URL("jar", "", -1, url.toString() + "!/");
+        } catch (MalformedURLException e) {
+            return url;
+        }
+    }
+
     private static boolean isDirectory(URL url) {
         String file = url.getFile();
         return (file.length() > 0 && file.charAt(file.length() - 1) == '/') || new File(file).isDirectory(); // with surefire first test can easily fail
     }
 
+    public boolean isIndexed() {
+        return indexed;
+    }
+
+    /**
+     * In indexed mode the entry names of each jar are read once in a {@link JarIndex}
+     * and the lookups in the explicit urls and {@link #getResourcesMap(String)} are
+     * answered from it, without opening the jars again. The index of a jar is read
+     * again when the jar changes.
+     */
+    public ResourceFinder setIndexed(boolean indexed) {
+        this.indexed = indexed;
+        return this;
+    }
+
     /**
      * Returns a list of resources that could not be loaded in the last invoked findAvailable* or
      * mapAvailable* methods.
@@ -204,14 +244,12 @@ public class ResourceFinder {
 
         List<String> strings = new ArrayList<String>();
 
-        Enumeration<URL> resources = getResources(fulluri);
-        while (resources.hasMoreElements()) {
-            URL url = resources.nextElement();
-            try {
-                String string = readContents(url);
-                strings.add(string);
-            } catch (IOException notAvailable) {
-                resourcesNotLoaded.add(url.toExternalForm());
+        List<URL> resources = Collections.list(getResources(fulluri));
+        Map<String, String> contents = readArchives(resources, null, resourcesNotLoaded);
+        for (URL url : resources) {
+            String string = contents.get(url.toExternalForm());
+            if (string != null) {
+                strings.add(string.trim());
             }
         }
         return strings;
@@ -283,20 +321,65 @@ public class ResourceFinder {
         resourcesNotLoaded.clear();
         Map<String, String> strings = new HashMap<String, String>();
         Map<String, URL> resourcesMap = getResourcesMap(uri);
-        for (Iterator iterator = resourcesMap.entrySet().iterator(); iterator.hasNext();) {
-            Map.Entry entry = (Map.Entry) iterator.next();
-            String name = (String) entry.getKey();
-            URL url = (URL) entry.getValue();
-            try {
-                String value = readContents(url);
-                strings.put(name, value);
-            } catch (IOException notAvailable) {
-                resourcesNotLoaded.add(url.toExternalForm());
+        Map<String, String> contents = readArchives(resourcesMap.values(), null, resourcesNotLoaded);
+        for (Map.Entry<String, URL> entry : resourcesMap.entrySet()) {
+            String value = contents.get(entry.getValue().toExternalForm());
+            if (value != null) {
+                strings.put(entry.getKey(), value.trim());
             }
         }
         return strings;
     }
 
+    /**
+     * Reads the contents of the resources found for each uri, as {@link #findAllStrings(String)}
+     * does, in one pass per archive. With explicit urls each jar is also opened, or looked up
+     * in its index, once for all the uris; the class loader is asked for each uri otherwise.
+     * <p/>
+     * Example classpath:
+     * <p/>
+     * META-INF/services/javax.xml.parsers.SAXParserFactory
+     * META-INF/services/javax.naming.spi.InitialContextFactory
+     * <p/>
+     * ResourceFinder finder = new ResourceFinder("META-INF/services/");
+     * Map map = finder.findAllStrings(Arrays.asList("javax.xml.parsers.SAXParserFactory", "javax.naming.spi.InitialContextFactory"));
+     * map.get("javax.xml.parsers.SAXParserFactory");  // the contents of each copy in classpath order
+     *
+     * @param uris
+     * @return the contents of each resource URL found by uri, in the order of the uris
+     * @throws IOException if any of the found URLs are unable to be read.
+     */
+    public Map<String, List<String>> findAllStrings(Collection<String> uris) throws IOException {
+        return findAllStrings(uris, null);
+    }
+
+    /**
+     * As {@link #findAllStrings(Collection)}, the archives being read concurrently by the executor.
+     *
+     * @param uris
+     * @param executor reads the archives, null to read them in the calling thread
+     * @return the contents of each resource URL found by uri, in the order of the uris
+     * @throws IOException if any of the found URLs are unable to be read.
+     */
+    public Map<String, List<String>> findAllStrings(Collection<String> uris, ExecutorService executor) throws IOException {
+        final Map<String, List<URL>> resources = getResources(uris);
+        final List<URL> found = new ArrayList<URL>();
+        for (List<URL> urls : resources.values()) {
+            found.addAll(urls);
+        }
+        final Map<String, String> contents = readArchives(found, executor, null);
+
+        final Map<String, List<String>> strings = new LinkedHashMap<String, List<String>>();
+        for (Map.Entry<String, List<URL>> entry : resources.entrySet()) {
+            final List<String> list = new ArrayList<String>(entry.getValue().size());
+            for (URL url : entry.getValue()) {
+                list.add(contents.get(url.toExternalForm()).trim());
+            }
+            strings.put(entry.getKey(), list);
+        }
+        return strings;
+    }
+
     // * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
     //
     //   Find Class
@@ -758,12 +841,12 @@ public class ResourceFinder {
     public Map<String, Properties> mapAllProperties(String uri) throws IOException {
         Map<String, Properties> propertiesMap = new HashMap<String, Properties>();
         Map<String, URL> map = getResourcesMap(uri);
-        for (Iterator iterator = map.entrySet().iterator(); iterator.hasNext();) {
-            Map.Entry entry = (Map.Entry) iterator.next();
-            String string = (String) entry.getKey();
-            URL url = (URL) entry.getValue();
-            Properties properties = loadProperties(url);
-            propertiesMap.put(string, properties);
+        Map<String, String> contents = readArchives(map.values(), null, null);
+        for (Map.Entry<String, URL> entry : map.entrySet()) {
+            // properties files are ISO-8859-1, as the contents are read
+            Properties properties = new Properties();
+            properties.load(new StringReader(contents.get(entry.getValue().toExternalForm())));
+            propertiesMap.put(entry.getKey(), properties);
         }
         return propertiesMap;
     }
@@ -829,7 +912,12 @@ public class ResourceFinder {
             try {
                 if (location.getProtocol().equals("jar")) {
 
-                    readJarEntries(location, basePath, resources);
+                    final File jar = indexedJar(location);
+                    if (jar != null && jar.isFile()) {
+                        readIndexedEntries(location, JarIndex.of(jar), basePath, resources);
+                    } else {
+                        readJarEntries(location, basePath, resources);
+                    }
 
                 } else if (location.getProtocol().equals("file")) {
 
@@ -885,6 +973,12 @@ public class ResourceFinder {
         }
     }
 
+    private static void readIndexedEntries(URL location, JarIndex index, String basePath, Map<String, URL> resources) throws IOException {
+        for (String name : index.list(basePath)) {
+            resources.put(name, new URL(location, name));
+        }
+    }
+
     private Properties loadProperties(URL resource) throws IOException {
         InputStream in = resource.openStream();
 
@@ -905,29 +999,161 @@ public class ResourceFinder {
     }
 
     private String readContents(URL resource) throws IOException {
-        InputStream in = resource.openStream();
-        BufferedInputStream reader = null;
-        StringBuffer sb = new StringBuffer();
+        return readContents(resource.openStream());
+    }
 
-        try {
-            reader = new BufferedInputStream(in);
+    private static String readContents(InputStream in) throws IOException {
+        return readRaw(in).trim();
+    }
 
-            int b = reader.read();
-            while (b != -1) {
-                sb.append((char) b);
-                b = reader.read();
+    private static String readRaw(InputStream in) throws IOException {
+        try {
+            final Reader reader = new InputStreamReader(in, StandardCharsets.ISO_8859_1);
+            final StringBuilder sb = new StringBuilder();
+            final char[] buffer = new char[1024];
+            for (int length = reader.read(buffer); length != -1; length = reader.read(buffer)) {
+                sb.append(buffer, 0, length);
             }
-
-            return sb.toString().trim();
+            return sb.toString();
         } finally {
             try {
                 in.close();
-                reader.close();
             } catch (Exception e) {
             }
         }
     }
 
+    /**
+     * Reads the resources archive by archive, concurrently if an executor is given.
+     *
+     * @param notLoaded the resources which can't be read are added to it, null to fail instead
+     * @return the contents by url, not trimmed
+     */
+    private Map<String, String> readArchives(Collection<URL> resources, ExecutorService executor, final List<String> notLoaded) throws IOException {
+        final Map<String, List<URL>> archives = new LinkedHashMap<String, List<URL>>();
+        for (URL url : resources) {
+            final String archive = archiveOf(url);
+            List<URL> list = archives.get(archive);
+            if (list == null) {
+                list = new ArrayList<URL>();
+                archives.put(archive, list);
+            }
+            list.add(url);
+        }
+
+        final Map<String, String> contents = new HashMap<String, String>();
+        if (executor == null) {
+            for (List<URL> urls : archives.values()) {
+                contents.putAll(readArchive(urls, notLoaded));
+            }
+            return contents;
+        }
+
+        final List<Future<Map<String, String>>> futures = new ArrayList<Future<Map<String, String>>>(archives.size());
+        for (final List<URL> urls : archives.values()) {
+            futures.add(executor.submit(new Callable<Map<String, String>>() {
+                public Map<String, String> call() throws IOException {
+                    return readArchive(urls, notLoaded);
+                }
+            }));
+        }
+        for (Future<Map<String, String>> future : futures) {
+            try {
+                contents.putAll(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while reading " + resources);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+        return contents;
+    }
+
+    /**
+     * Reads the resources found in one archive, a jar is opened once for all of them.
+     *
+     * @return the contents by url
+     */
+    private Map<String, String> readArchive(List<URL> resources, List<String> notLoaded) throws IOException {
+        final Map<String, String> contents = new HashMap<String, String>();
+        final URL first = resources.get(0);
+        final File file = "jar".equals(first.getProtocol()) && !isNested(first) ? Files.toFile(first) : null;
+        if (file == null || !file.isFile()) {
+            for (URL url : resources) {
+                try {
+                    contents.put(url.toExternalForm(), readRaw(url.openStream()));
+                } catch (IOException e) {
+                    if (notLoaded == null) throw e;
+                    notLoaded.add(url.toExternalForm());
+                }
+            }
+            return contents;
+        }
+
+        final JarFile jar;
+        try {
+            jar = new JarFile(file);
+        } catch (IOException e) {
+            if (notLoaded == null) throw e;
+            for (URL url : resources) {
+                notLoaded.add(url.toExternalForm());
+            }
+            return contents;
+        }
+        try {
+            final boolean multiRelease = isMultiRelease(jar);
+            for (URL url : resources) {
+                try {
+                    if (multiRelease) { // the jar: handler picks the entries of the running version
+                        contents.put(url.toExternalForm(), readRaw(url.openStream()));
+                        continue;
+                    }
+                    final String spec = url.getFile();
+                    final JarEntry entry = jar.getJarEntry(decode(spec.substring(spec.indexOf("!/") + 2)));
+                    if (entry == null) {
+                        throw new FileNotFoundException(url.toExternalForm());
+                    }
+                    contents.put(url.toExternalForm(), readRaw(jar.getInputStream(entry)));
+                } catch (IOException e) {
+                    if (notLoaded == null) throw e;
+                    notLoaded.add(url.toExternalForm());
+                }
+            }
+        } finally {
+            jar.close();
+        }
+        return contents;
+    }
+
+    private static boolean isMultiRelease(JarFile jar) throws IOException {
+        final Manifest manifest = jar.getManifest();
+        return manifest != null && Boolean.parseBoolean(manifest.getMainAttributes().getValue("Multi-Release"));
+    }
+
+    private static String archiveOf(URL url) {
+        if (!"jar".equals(url.getProtocol()) || isNested(url)) return url.toExternalForm();
+
+        final String spec = url.getFile();
+        final int separator = spec.indexOf("!/");
+        return separator < 0 ? url.toExternalForm() : spec.substring(0, separator);
+    }
+
+    /**
+     * @return the jar file to look up in its index, null if not indexed or if the url is
+     * a jar in a jar whose entries are not those of the outer jar file
+     */
+    private File indexedJar(URL url) {
+        return indexed && !isNested(url) ? Files.toFile(url) : null;
+    }
+
+    private static boolean isNested(URL url) {
+        final String spec = url.getFile();
+        final int separator = spec.indexOf("!/");
+        return separator >= 0 && spec.indexOf("!/", separator + 2) >= 0;
+    }
+
     public URL getResource(String fullUri) {
         if (urls == null){
             return classLoader.getResource(fullUri);
@@ -949,6 +1175,122 @@ public class ResourceFinder {
         return resources.elements();
     }
 
+    /**
+     * The resources of each uri, each archive being searched once for all of them.
+     */
+    private Map<String, List<URL>> getResources(Collection<String> uris) throws IOException {
+        final Map<String, List<URL>> resources = new LinkedHashMap<String, List<URL>>();
+        for (String uri : uris) {
+            resources.put(uri, new ArrayList<URL>());
+        }
+        final List<URL> archives = urls != null ? Arrays.asList(urls) : loaderArchives(resources);
+        for (URL url : archives) {
+            if (url == null) continue;
+            for (Map.Entry<String, URL> found : findResources(url, resources.keySet()).entrySet()) {
+                resources.get(found.getKey()).add(found.getValue());
+            }
+        }
+        return resources;
+    }
+
+    /**
+     * The archives of the class loader and of its parents, in delegation order. Only a
+     * URLClassLoader whose jars have no Class-Path lists all its archives, the first other
+     * parent is asked for each uri and its resources are added first since it is delegated to first.
+     */
+    private List<URL> loaderArchives(Map<String, List<URL>> resources) throws IOException {
+        final LinkedList<URLClassLoader> listed = new LinkedList<URLClassLoader>();
+        ClassLoader loader = classLoader;
+        while (loader != null && listsArchives(loader)) {
+            listed.addFirst((URLClassLoader) loader);
+            loader = loader.getParent();
+        }
+        if (loader == null && !listed.isEmpty()) {
+            loader = listed.removeFirst(); // the bootstrap resources are only found through a child
+        }
+        if (loader != null) {
+            for (Map.Entry<String, List<URL>> entry : resources.entrySet()) {
+                entry.getValue().addAll(Collections.list(loader.getResources(path + entry.getKey())));
+            }
+        }
+
+        final List<URL> archives = new ArrayList<URL>();
+        for (URLClassLoader urlClassLoader : listed) {
+            for (URL url : urlClassLoader.getURLs()) {
+                archives.add(searchUrl(url));
+            }
+        }
+        return archives;
+    }
+
+    // a subclass can search its urls differently and a Class-Path adds jars to search
+    private static boolean listsArchives(ClassLoader loader) {
+        if (loader.getClass() != URLClassLoader.class) return false;
+
+        for (URL url : ((URLClassLoader) loader).getURLs()) {
+            final URL search = searchUrl(url);
+            if (!"jar".equals(search.getProtocol())) continue;
+            try {
+                final Manifest manifest = ((JarURLConnection) search.openConnection()).getManifest();
+                if (manifest != null && manifest.getMainAttributes().getValue(Attributes.Name.CLASS_PATH) != null) return false;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Searches the uris in one url, a jar is looked up in its index or opened once.
+     *
+     * @return the resource found by uri
+     */
+    private Map<String, URL> findResources(URL url, Collection<String> uris) throws IOException {
+        final Map<String, URL> found = new HashMap<String, URL>();
+        final String file = url.getFile();
+        final int sepIdx = file.lastIndexOf("!/");
+        if (!"jar".equals(url.getProtocol()) || sepIdx < 0) {
+            for (String uri : uris) {
+                final URL resource = findResource(path + uri, url);
+                if (resource != null) {
+                    found.put(uri, resource);
+                }
+            }
+            return found;
+        }
+
+        final String base = file.substring(sepIdx + 2);
+        final File indexedJar = indexedJar(url);
+        if (indexedJar != null && indexedJar.isFile()) {
+            final JarIndex index = JarIndex.of(indexedJar);
+            for (String uri : uris) {
+                if (index.contains(base + path + uri)) {
+                    found.put(uri, targetURL(url, path + uri));
+                }
+            }
+            return found;
+        }
+
+        final URL jarURL = ((JarURLConnection) url.openConnection()).getJarFileURL();
+        final JarURLConnection juc = (JarURLConnection) new URL("jar", "", jarURL.toExternalForm() + "!/").openConnection();
+        final JarFile jarFile = juc.getJarFile();
+        try {
+            for (String uri : uris) {
+                if (jarFile.getEntry(base + path + uri) != null) {
+                    found.put(uri, targetURL(url, path + uri));
+                }
+            }
+        } finally {
+            if (!juc.getUseCaches()) {
+                try {
+                    jarFile.close();
+                } catch (Exception e) {
+                }
+            }
+        }
+        return found;
+    }
+
     private URL findResource(String resourceName, URL... search) {
         for (int i = 0; i < search.length; i++) {
             URL currentUrl = search[i];
@@ -959,6 +1301,39 @@ public class ResourceFinder {
             try {
                 String protocol = currentUrl.getProtocol();
                 if (protocol.equals("jar")) {
+                    String entryName;
+                    if (currentUrl.getFile().endsWith("!/")) {
+                        entryName = resourceName;
+                    } else {
+                        String file = currentUrl.getFile();
+                        int sepIdx = file.lastIndexOf("!/");
+                        if (sepIdx == -1) {
+                            // Invalid URL, don't look here again
+                            search[i] = null;
+                            continue;
+                        }
+                        entryName = file.substring(sepIdx + 2) + resourceName;
+                    }
+
+                    final File indexedJar = indexedJar(currentUrl);
+                    if (indexedJar != null && indexedJar.isFile()) {
+                        final JarIndex index;
+                        try {
+                            index = JarIndex.of(indexedJar);
+                        } catch (IOException e) {
+                            // Don't look for this jar file again
+                            search[i] = null;
+                            throw e;
+                        }
+                        if (entryName.equals("META-INF/") && index.contains("META-INF/MANIFEST.MF")) {
+                            return targetURL(currentUrl, "META-INF/MANIFEST.MF");
+                        }
+                        if (index.contains(entryName)) {
+                            return targetURL(currentUrl, resourceName);
+                        }
+                        continue;
+                    }
+
                     /*
                     * If the connection for currentUrl or resURL is
                     * used, getJarFile() will throw an exception if the
@@ -977,25 +1352,6 @@ public class ResourceFinder {
                     }
 
                     try {
-                        juc = (JarURLConnection) new URL("jar", "", jarURL.toExternalForm() + "!/").openConnection();                        
-                        jarFile = juc.getJarFile();
-                        String entryName;
-                        if (currentUrl.getFile().endsWith("!/")) {
-                            entryName = resourceName;
-                        } else {
-                            String file = currentUrl.getFile();
-                            int sepIdx = file.lastIndexOf("!/");
-                            if (sepIdx == -1) {
-                                // Invalid URL, don't look here again
-                                search[i] = null;
-                                continue;
-                            }
-                            sepIdx += 2;
-                            StringBuffer sb = new StringBuffer(file.length() - sepIdx + resourceName.length());
-                            sb.append(file.substring(sepIdx));
-                            sb.append(resourceName);
-                            entryName = sb.toString();
-                        }
                         if (entryName.equals("META-INF/") && jarFile.getEntry("META-INF/MANIFEST.MF") != null) {
                             return targetURL(currentUrl, "META-INF/MANIFEST.MF");
                         }
@@ -1018,7 +1374,7 @@ public class ResourceFinder {
                     if (host != null) {
                         hostLength = host.length();
                     }
-                    StringBuffer buf = new StringBuffer(2 + hostLength + baseFile.length() + resourceName.length());
+                    StringBuilder buf = new StringBuilder(2 + hostLength + baseFile.length() + resourceName.length());
 
                     if (hostLength > 0) {
                         buf.append("//").append(host);
@@ -1073,7 +1429,7 @@ public class ResourceFinder {
 
     private URL targetURL(URL base, String name) throws MalformedURLException {
         final String baseFile = base.getFile();
-        final StringBuffer sb = new StringBuffer(baseFile.length() + name.length());
+        final StringBuilder sb = new StringBuilder(baseFile.length() + name.length());
         sb.append(baseFile);
         if (!baseFile.endsWith("/")) {
             sb.append("/");
@@ -0,0 +1,258 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.apache.xbean.finder.archive.Archive;
+import org.apache.xbean.finder.archive.FileArchive;
+import org.apache.xbean.finder.archive.JarArchive;
+import org.apache.xbean.finder.filter.PackageScope;
+import org.apache.xbean.finder.util.Files;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Persists the class infos read from JarArchive and FileArchive instances
+ * in a local directory so they can be reloaded without parsing the bytecode
+ * again as long as the archive did not change.
+ * <p/>
+ * An archive is identified by its path and fingerprinted with its size,
+ * last modification date and a content hash. For jars the content hash is
+ * computed from the name, crc and size of each entry of the central directory,
+ * for directories from the path, size and last modification date of each file.
+ * <p/>
+ * Other archive types are always scanned.
+ * <p/>
+ * The class infos also depend on the finder: the annotation types it is restricted to
+ * are part of the key, and the finders overriding AnnotationFinder.isTracked(String) or
+ * AnnotationFinder.cleanOnNaked() don't use the cache at all.
+ * <p/>
+ * See {@link SharedScanIndexCache} to share the class infos between the finders of a JVM.
+ *
+ * @version $Rev$ $Date$
+ */
+public class ScanIndexCache {
+    private static final int MAGIC = 0x58424958; // XBIX
+    private static final int VERSION = 3;
+
+    private final File directory;
+
+    /**
+     * @param directory where the indexes are written, null to not persist them
+     */
+    public ScanIndexCache(final File directory) {
+        this.directory = directory;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return the fingerprint of the archive or null if it can't be cached
+     */
+    String fingerprint(final AnnotationFinder finder, final Archive archive) {
+        try {
+            if (archive instanceof JarArchive) {
+                final File file = Files.toFile(((JarArchive) archive).getUrl());
+                if (file == null || !file.isFile()) return null;
+                return file.length() + ":" + file.lastModified() + ":" + jarHash(file) + ":" + runtime();
+            }
+            if (archive instanceof FileArchive) {
+                final File dir = ((FileArchive) archive).getDir();
+                if (!dir.isDirectory()) return null;
+                final MessageDigest digest = digest();
+                dirHash(dir, "", digest);
+                return dir.lastModified() + ":" + hex(digest.digest()) + ":" + runtime();
+            }
+        } catch (final IOException e) {
+            // no-op: not cacheable
+        }
+        return null;
+    }
+
+    List<AnnotationFinder.ScannedClass> load(final AnnotationFinder finder, final Archive archive, final String fingerprint) {
+        final File file = file(finder, archive);
+        if (file == null || !file.isFile()) return null;
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) return null;
+            if (!in.readUTF().equals(key(finder, archive)) || !in.readUTF().equals(fingerprint)) return null;
+
+            return ArchiveIndex.readClasses(finder, in);
+        } catch (final IOException e) {
+            return null; // corrupted, will be overwritten by the next store()
+        } finally {
+            close(in);
+        }
+    }
+
+    void store(final AnnotationFinder finder, final Archive archive, final String fingerprint, final List<AnnotationFinder.ScannedClass> classes) {
+        final File file = file(finder, archive);
+        if (file == null) return;
+        if (!directory.isDirectory() && !directory.mkdirs()) return;
+
+        DataOutputStream out = null;
+        File tmp = null;
+        try {
+            // write aside and rename so concurrent JVMs never read a partial index
+            tmp = File.createTempFile(file.getName(), ".tmp", directory);
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(key(finder, archive));
+            out.writeUTF(fingerprint);
+            ArchiveIndex.writeClasses(out, classes);
+            out.close();
+            out = null;
+
+            if (!tmp.renameTo(file)) {
+                file.delete();
+                if (!tmp.renameTo(file)) {
+                    tmp.delete();
+                }
+            }
+        } catch (final IOException e) {
+            if (tmp != null) {
+                tmp.delete();
+            }
+        } finally {
+            close(out);
+        }
+    }
+
+    private File file(final AnnotationFinder finder, final Archive archive) {
+        if (directory == null) return null;
+        final String key = key(finder, archive);
+        if (key == null) return null;
+        try {
+            return new File(directory, hex(digest().digest(key.getBytes(StandardCharsets.UTF_8))) + ".idx");
+        } catch (final IOException e) {
+            return null;
+        }
+    }
+
+    // one file per archive and finder configuration
+    private static String key(final AnnotationFinder finder, final Archive archive) {
+        try {
+            if (archive instanceof JarArchive) {
+                final File file = Files.toFile(((JarArchive) archive).getUrl());
+                return file == null ? null : "jar:" + file.getCanonicalPath() + scope(archive) + "#" + finder.getScanConfiguration();
+            }
+            if (archive instanceof FileArchive) {
+                final FileArchive fileArchive = (FileArchive) archive;
+                return "dir:" + fileArchive.getDir().getCanonicalPath() + "!" + fileArchive.getBasePackage() + scope(archive)
+                        + "#" + finder.getScanConfiguration();
+            }
+        } catch (final IOException e) {
+            // no-op
+        }
+        return null;
+    }
+
+    // an archive restricted to some packages only holds part of the classes
+    static String scope(final Archive archive) {
+        final PackageScope scope = ArchiveIndex.scope(archive);
+        return scope == null ? "" : "!" + scope.getPackages();
+    }
+
+    // multi-release archives resolve different classes depending on the runtime
+    static String runtime() {
+        return System.getProperty("java.specification.version") + "/" + System.getProperty("jdk.util.jar.version", "");
+    }
+
+    static String jarHash(final File file) throws IOException {
+        final MessageDigest digest = digest();
+        final ZipFile zip = new ZipFile(file);
+        try {
+            final Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                final ZipEntry entry = entries.nextElement();
+                digest.update(entry.getName().getBytes(StandardCharsets.UTF_8));
+                update(digest, entry.getCrc());
+                update(digest, entry.getSize());
+            }
+        } finally {
+            zip.close();
+        }
+        return hex(digest.digest());
+    }
+
+    private static void dirHash(final File dir, final String path, final MessageDigest digest) {
+        final File[] files = dir.listFiles();
+        if (files == null) return;
+        for (File file : files) {
+            final String name = path + file.getName();
+            if (file.isDirectory()) {
+                dirHash(file, name + "/", digest);
+            } else {
+                digest.update(name.getBytes(StandardCharsets.UTF_8));
+                update(digest, file.length());
+                update(digest, file.lastModified());
+            }
+        }
+    }
+
+    private static void update(final MessageDigest digest, final long value) {
+        for (int i = 0; i < 8; i++) {
+            digest.update((byte) (value >>> (i * 8)));
+        }
+    }
+
+    private static MessageDigest digest() throws IOException {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static String hex(final byte[] bytes) {
+        final StringBuilder builder = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return builder.toString();
+    }
+
+    private static void close(final Closeable closeable) {
+        if (closeable == null) return;
+        try {
+            closeable.close();
+        } catch (final IOException e) {
+            // no-op
+        }
+    }
+}
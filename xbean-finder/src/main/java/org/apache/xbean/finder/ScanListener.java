@@ -0,0 +1,46 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder;
+
+/**
+ * Receives the measures of an {@link AnnotationFinder}: the scan of each archive
+ * while the finder is created, then the link phases and the classes loaded lazily
+ * by the find* methods.
+ * <p/>
+ * Callbacks are invoked on the scanning or querying thread and should be cheap.
+ *
+ * @see JmxScanListener
+ * @version $Rev$ $Date$
+ */
+public interface ScanListener {
+
+    enum LinkPhase {
+        SUBCLASSES, IMPLEMENTATIONS, META_ANNOTATIONS
+    }
+
+    /**
+     * Called once for each archive, the archives of a CompositeArchive are reported separately.
+     */
+    void archiveScanned(ArchiveScan scan);
+
+    /**
+     * @param found false if the class could not be loaded, it is then part of getClassesNotLoaded()
+     */
+    void classLoaded(String className, long nanos, boolean found);
+
+    void linked(LinkPhase phase, long nanos);
+}
@@ -0,0 +1,291 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.apache.xbean.finder.AnnotationFinder.AnnotationInfo;
+import org.apache.xbean.finder.AnnotationFinder.ClassInfo;
+import org.apache.xbean.finder.AnnotationFinder.FieldInfo;
+import org.apache.xbean.finder.AnnotationFinder.Info;
+import org.apache.xbean.finder.AnnotationFinder.MethodInfo;
+import org.apache.xbean.finder.AnnotationFinder.PackageInfo;
+import org.apache.xbean.finder.AnnotationFinder.ParameterInfo;
+import org.apache.xbean.finder.util.CompactList;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary form of the classes an {@link AnnotationFinder} scanned, as stored by an {@link ArchiveIndex}.
+ */
+final class ScannedClassFormat {
+
+    private ScannedClassFormat() {
+        // no-op
+    }
+
+    static void write(final AnnotationFinder.ScannedClass scanned, final DataOutput out) throws IOException {
+        // infos are referenced by their position so the index can be replayed as it was visited
+        final Map<Info, Integer> ids = new IdentityHashMap<Info, Integer>();
+        ids.put(scanned.info, ids.size());
+
+        out.writeBoolean(scanned.classInfo != null);
+        out.writeUTF(scanned.info.getName());
+        writeNullable(out, scanned.removed);
+        if (scanned.classInfo != null) {
+            writeNullable(out, scanned.classInfo.getSuperType());
+            out.writeInt(scanned.classInfo.getAccess());
+            writeStrings(out, visitOrder(scanned.classInfo.getInterfaces()));
+            writeAnnotations(out, scanned.classInfo.getAnnotations());
+
+            final List<FieldInfo> fields = visitOrder(scanned.classInfo.getFields());
+            out.writeInt(fields.size());
+            for (FieldInfo field : fields) {
+                ids.put(field, ids.size());
+                out.writeUTF(field.getName());
+                out.writeUTF(field.getDescriptor());
+                writeAnnotations(out, field.getAnnotations());
+            }
+
+            final List<MethodInfo> methods = visitOrder(scanned.classInfo.getMethods());
+            out.writeInt(methods.size());
+            for (MethodInfo method : methods) {
+                ids.put(method, ids.size());
+                out.writeUTF(method.getName());
+                out.writeUTF(method.getDescriptor());
+                writeAnnotations(out, method.getAnnotations());
+                out.writeInt(method.getParameterAnnotations().size());
+                for (List<AnnotationInfo> parameterAnnotations : method.getParameterAnnotations()) {
+                    writeAnnotations(out, parameterAnnotations);
+                }
+                final List<ParameterInfo> parameters = visitOrder(method.getParameters());
+                out.writeInt(parameters.size());
+                for (ParameterInfo parameter : parameters) {
+                    ids.put(parameter, ids.size());
+                    out.writeInt(parameter.getIndex());
+                }
+            }
+        } else {
+            writeAnnotations(out, scanned.info.getAnnotations());
+        }
+
+        out.writeInt(scanned.annotations.size());
+        for (int i = 0; i < scanned.annotations.size(); i++) {
+            out.writeUTF(scanned.annotations.get(i).getName());
+            out.writeInt(ids.get(scanned.annotatedInfos.get(i)));
+        }
+    }
+
+    static AnnotationFinder.ScannedClass read(final AnnotationFinder finder, final DataInput in) throws IOException {
+        final AnnotationFinder.ScannedClass scanned = finder.new ScannedClass();
+        final List<Info> ids = new ArrayList<Info>();
+
+        final boolean isClass = in.readBoolean();
+        final String name = in.readUTF();
+        scanned.removed = readNullable(in);
+        if (isClass) {
+            final ClassInfo classInfo = finder.new ClassInfo(name, readNullable(in));
+            classInfo.setAccess(in.readInt());
+            scanned.classInfo = classInfo;
+            scanned.info = classInfo;
+            ids.add(classInfo);
+            for (String interfce : readStrings(in)) {
+                classInfo.getInterfaces().add(finder.intern(interfce));
+            }
+            readAnnotations(finder, in, classInfo.getAnnotations());
+
+            for (int i = in.readInt(); i > 0; i--) {
+                final FieldInfo field = finder.new FieldInfo(classInfo, in.readUTF(), in.readUTF());
+                ids.add(field);
+                readAnnotations(finder, in, field.getAnnotations());
+                classInfo.getFields().add(field);
+            }
+
+            for (int i = in.readInt(); i > 0; i--) {
+                final MethodInfo method = finder.new MethodInfo(classInfo, in.readUTF(), in.readUTF());
+                ids.add(method);
+                readAnnotations(finder, in, method.getAnnotations());
+                for (int p = in.readInt(); p > 0; p--) {
+                    final List<AnnotationInfo> parameterAnnotations = new ArrayList<AnnotationInfo>(1);
+                    readAnnotations(finder, in, parameterAnnotations);
+                    method.getParameterAnnotations().add(parameterAnnotations);
+                }
+                for (int p = in.readInt(); p > 0; p--) {
+                    final ParameterInfo parameter = finder.new ParameterInfo(method, in.readInt());
+                    ids.add(parameter);
+                    method.getParameters().add(parameter);
+                }
+                classInfo.getMethods().add(method);
+            }
+        } else {
+            final PackageInfo packageInfo = finder.new PackageInfo(name);
+            scanned.info = packageInfo;
+            ids.add(packageInfo);
+            readAnnotations(finder, in, packageInfo.getAnnotations());
+        }
+
+        for (int i = in.readInt(); i > 0; i--) {
+            scanned.annotations.add(finder.newAnnotationInfo(in.readUTF()));
+            scanned.annotatedInfos.add(ids.get(in.readInt()));
+        }
+        return scanned;
+    }
+
+    // CompactList iterates from the last added element
+    private static <T> List<T> visitOrder(final List<T> list) {
+        final List<T> ordered = new ArrayList<T>(list);
+        if (list instanceof CompactList) {
+            Collections.reverse(ordered);
+        }
+        return ordered;
+    }
+
+    private static void writeNullable(final DataOutput out, final String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullable(final DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeStrings(final DataOutput out, final List<String> values) throws IOException {
+        out.writeInt(values.size());
+        for (String value : values) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static List<String> readStrings(final DataInput in) throws IOException {
+        final int size = in.readInt();
+        final List<String> values = new ArrayList<String>(size);
+        for (int i = 0; i < size; i++) {
+            values.add(in.readUTF());
+        }
+        return values;
+    }
+
+    private static void writeAnnotations(final DataOutput out, final List<AnnotationInfo> annotations) throws IOException {
+        out.writeInt(annotations.size());
+        for (AnnotationInfo annotation : annotations) {
+            writeAnnotation(out, annotation);
+        }
+    }
+
+    private static void writeAnnotation(final DataOutput out, final AnnotationInfo annotation) throws IOException {
+        out.writeUTF(annotation.getName());
+        final Map<String, Object> values = annotation.getValues();
+        out.writeInt(values.size());
+        for (Map.Entry<String, Object> value : values.entrySet()) {
+            out.writeUTF(value.getKey());
+            writeValue(out, value.getValue());
+        }
+    }
+
+    // one tag byte per value, the descriptor of its type
+    private static void writeValue(final DataOutput out, final Object value) throws IOException {
+        if (value instanceof String) {
+            out.writeByte('s');
+            out.writeUTF((String) value);
+        } else if (value instanceof Integer) {
+            out.writeByte('I');
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte('J');
+            out.writeLong((Long) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte('Z');
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof Byte) {
+            out.writeByte('B');
+            out.writeByte((Byte) value);
+        } else if (value instanceof Character) {
+            out.writeByte('C');
+            out.writeChar((Character) value);
+        } else if (value instanceof Short) {
+            out.writeByte('S');
+            out.writeShort((Short) value);
+        } else if (value instanceof Float) {
+            out.writeByte('F');
+            out.writeFloat((Float) value);
+        } else if (value instanceof Double) {
+            out.writeByte('D');
+            out.writeDouble((Double) value);
+        } else if (value instanceof AnnotationInfo) {
+            out.writeByte('@');
+            writeAnnotation(out, (AnnotationInfo) value);
+        } else if (value instanceof List) {
+            final List<?> values = (List<?>) value;
+            out.writeByte('[');
+            out.writeInt(values.size());
+            for (Object v : values) {
+                writeValue(out, v);
+            }
+        } else {
+            throw new IOException("Unsupported annotation value " + value);
+        }
+    }
+
+    private static void readAnnotations(final AnnotationFinder finder, final DataInput in, final List<AnnotationInfo> annotations) throws IOException {
+        for (int i = in.readInt(); i > 0; i--) {
+            annotations.add(readAnnotation(finder, in));
+        }
+    }
+
+    private static AnnotationInfo readAnnotation(final AnnotationFinder finder, final DataInput in) throws IOException {
+        final AnnotationInfo annotation = finder.newAnnotationInfo(in.readUTF());
+        for (int i = in.readInt(); i > 0; i--) {
+            final String element = in.readUTF();
+            annotation.putValue(element, readValue(finder, in));
+        }
+        return annotation;
+    }
+
+    private static Object readValue(final AnnotationFinder finder, final DataInput in) throws IOException {
+        final byte tag = in.readByte();
+        switch (tag) {
+            case 's': return finder.intern(in.readUTF());
+            case 'I': return in.readInt();
+            case 'J': return in.readLong();
+            case 'Z': return in.readBoolean();
+            case 'B': return in.readByte();
+            case 'C': return in.readChar();
+            case 'S': return in.readShort();
+            case 'F': return in.readFloat();
+            case 'D': return in.readDouble();
+            case '@': return readAnnotation(finder, in);
+            case '[':
+                final int size = in.readInt();
+                final List<Object> values = new ArrayList<Object>(size);
+                for (int i = 0; i < size; i++) {
+                    values.add(readValue(finder, in));
+                }
+                return values;
+            default:
+                throw new IOException("Unknown annotation value tag " + tag);
+        }
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.apache.xbean.finder.archive.Archive;
+import org.apache.xbean.finder.archive.JarArchive;
+import org.apache.xbean.finder.util.Files;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In memory {@link ScanIndexCache} shared by the finders of a JVM, for instance
+ * the ones created for each application of a server deploying the same libraries.
+ * <p/>
+ * Jars are identified by their content hash only, so two copies of a library
+ * in different applications are parsed once. The class infos belong to the
+ * finder which created them, so the cache keeps the compact serialized form
+ * of the parsed archive and each finder materializes its own infos from it
+ * and builds its own indexes, which is much cheaper than reading the bytecode.
+ * <p/>
+ * The serialized archives are softly referenced and the least recently used
+ * ones are evicted once maxArchives is reached. An optional directory persists
+ * them across restarts as {@link ScanIndexCache} does.
+ *
+ * @version $Rev$ $Date$
+ */
+public class SharedScanIndexCache extends ScanIndexCache {
+    public static final int DEFAULT_MAX_ARCHIVES = 512;
+
+    private static final SharedScanIndexCache INSTANCE = new SharedScanIndexCache(null, DEFAULT_MAX_ARCHIVES);
+
+    private final Map<String, SoftReference<byte[]>> archives;
+    // content hashes of the jars already seen, by path, size and last modification date
+    private final Map<String, String> hashes;
+
+    private int hits;
+    private int misses;
+
+    /**
+     * @param directory where the indexes are also persisted, null to only keep them in memory
+     * @param maxArchives maximum number of archives kept in memory
+     */
+    public SharedScanIndexCache(final File directory, final int maxArchives) {
+        super(directory);
+        if (maxArchives < 1) throw new IllegalArgumentException("maxArchives must be positive: " + maxArchives);
+        this.archives = new Lru<SoftReference<byte[]>>(maxArchives);
+        this.hashes = new Lru<String>(maxArchives);
+    }
+
+    /**
+     * @return the cache shared by the whole JVM, in memory only
+     */
+    public static SharedScanIndexCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * The fingerprint is the key of the archive in memory, it holds the scan
+     * configuration of the finder so finders restricted to other annotations,
+     * possibly from other applications, never get these class infos.
+     */
+    @Override
+    String fingerprint(final AnnotationFinder finder, final Archive archive) {
+        final String fingerprint = contentFingerprint(finder, archive);
+        return fingerprint == null ? null : fingerprint + "#" + finder.getScanConfiguration();
+    }
+
+    private String contentFingerprint(final AnnotationFinder finder, final Archive archive) {
+        if (!(archive instanceof JarArchive)) return super.fingerprint(finder, archive);
+
+        try {
+            final File file = Files.toFile(((JarArchive) archive).getUrl());
+            if (file == null || !file.isFile()) return null;
+
+            final String key = file.getCanonicalPath() + ":" + file.length() + ":" + file.lastModified();
+            String hash;
+            synchronized (this) {
+                hash = hashes.get(key);
+            }
+            if (hash == null) {
+                hash = jarHash(file);
+                synchronized (this) {
+                    hashes.put(key, hash);
+                }
+            }
+            return "jar:" + file.length() + ":" + hash + ":" + runtime() + scope(archive);
+        } catch (final IOException e) {
+            return null;
+        }
+    }
+
+    @Override
+    List<AnnotationFinder.ScannedClass> load(final AnnotationFinder finder, final Archive archive, final String fingerprint) {
+        final byte[] bytes = get(fingerprint);
+        if (bytes != null) {
+            try {
+                return ArchiveIndex.readClasses(finder, new DataInputStream(new ByteArrayInputStream(bytes)));
+            } catch (final IOException e) {
+                remove(fingerprint);
+            }
+        }
+
+        final List<AnnotationFinder.ScannedClass> classes = super.load(finder, archive, fingerprint);
+        if (classes != null) {
+            put(fingerprint, classes);
+        }
+        return classes;
+    }
+
+    @Override
+    void store(final AnnotationFinder finder, final Archive archive, final String fingerprint, final List<AnnotationFinder.ScannedClass> classes) {
+        put(fingerprint, classes);
+        super.store(finder, archive, fingerprint, classes);
+    }
+
+    public synchronized int size() {
+        return archives.size();
+    }
+
+    /**
+     * @return number of archives read from memory instead of being parsed or loaded from the directory
+     */
+    public synchronized int getHits() {
+        return hits;
+    }
+
+    public synchronized int getMisses() {
+        return misses;
+    }
+
+    public synchronized void clear() {
+        archives.clear();
+        hashes.clear();
+        hits = 0;
+        misses = 0;
+    }
+
+    private synchronized byte[] get(final String fingerprint) {
+        final SoftReference<byte[]> reference = archives.get(fingerprint);
+        final byte[] bytes = reference == null ? null : reference.get();
+        if (bytes == null) {
+            archives.remove(fingerprint);
+            misses++;
+        } else {
+            hits++;
+        }
+        return bytes;
+    }
+
+    private synchronized void remove(final String fingerprint) {
+        archives.remove(fingerprint);
+    }
+
+    private void put(final String fingerprint, final List<AnnotationFinder.ScannedClass> classes) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            final DataOutputStream out = new DataOutputStream(bytes);
+            ArchiveIndex.writeClasses(out, classes);
+            out.flush();
+        } catch (final IOException e) {
+            return; // can't happen in memory
+        }
+
+        synchronized (this) {
+            archives.put(fingerprint, new SoftReference<byte[]>(bytes.toByteArray()));
+        }
+    }
+
+    private static final class Lru<V> extends LinkedHashMap<String, V> {
+        private static final long serialVersionUID = 1L;
+
+        private final int max;
+
+        private Lru(final int max) {
+            super(16, 0.75f, true);
+            this.max = max;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, V> eldest) {
+            return size() > max;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.archive;
+
+import java.io.IOException;
+import java.net.URL;
+
+/**
+ * Creates the archive of a classpath entry, see {@link ClasspathArchive#archive(ClassLoader, URL, Iterable)}.
+ *
+ * @version $Rev$ $Date$
+ */
+public interface ArchiveFactory {
+
+    /**
+     * @return the archive of the url or null if the factory doesn't support it
+     */
+    Archive create(ClassLoader loader, URL url) throws IOException;
+}
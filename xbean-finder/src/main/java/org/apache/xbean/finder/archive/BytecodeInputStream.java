@@ -0,0 +1,54 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.archive;
+
+import java.io.ByteArrayInputStream;
+
+/**
+ * Bytecode already read in memory by the archive. Readers can use the
+ * buffer directly, for instance with ClassReader(byte[], int, int),
+ * instead of copying the stream. The archive may reuse the buffer once
+ * the stream is closed.
+ */
+public class BytecodeInputStream extends ByteArrayInputStream {
+
+    public BytecodeInputStream(byte[] buffer) {
+        super(buffer);
+    }
+
+    public BytecodeInputStream(byte[] buffer, int offset, int length) {
+        super(buffer, offset, length);
+    }
+
+    public byte[] getBuffer() {
+        return buf;
+    }
+
+    /**
+     * @return offset of the bytes not read yet
+     */
+    public int getOffset() {
+        return pos;
+    }
+
+    /**
+     * @return number of bytes not read yet
+     */
+    public int getLength() {
+        return count - pos;
+    }
+}
@@ -16,16 +16,28 @@
  */
 package org.apache.xbean.finder.archive;
 
+import org.apache.xbean.finder.util.Files;
+
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.JarURLConnection;
+import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
- * Supports JarArchive and FileArchive URLs
+ * Supports JarArchive, NestedJarArchive and FileArchive URLs
+ * <p/>
+ * A file: url is a jar if the file starts with the zip magic bytes, it is not
+ * opened as a JarFile to find it out. Other archive types are created by the
+ * {@link ArchiveFactory factories} given to the constructor, they are consulted
+ * in order before the built-in types.
  *
  * @version $Rev$ $Date$
  */
@@ -39,54 +51,122 @@ public class ClasspathArchive extends CompositeArchive {
     }
 
     public ClasspathArchive(ClassLoader loader, Iterable<URL> urls) {
-        super(archives(loader, urls));
+        this(loader, urls, Collections.<ArchiveFactory>emptyList());
+    }
+
+    public ClasspathArchive(ClassLoader loader, Iterable<URL> urls, Iterable<ArchiveFactory> factories) {
+        super(archives(loader, urls, factories));
         this.loader = loader;
 
     }
 
     public static List<Archive> archives(ClassLoader loader, Iterable<URL> urls) {
+        return archives(loader, urls, Collections.<ArchiveFactory>emptyList());
+    }
+
+    public static List<Archive> archives(ClassLoader loader, Iterable<URL> urls, Iterable<ArchiveFactory> factories) {
         List<Archive> archives = new ArrayList<Archive>();
+        // the jars of a fat jar share its mapping and central directory
+        final Map<String, MappedJarArchive> outers = new HashMap<String, MappedJarArchive>();
 
         for (URL location : urls) {
             try {
-                archives.add(archive(loader, location));
+                archives.add(archive(loader, location, factories, outers));
             } catch (Exception e) {
                 // TODO This is what we did before, so not too urgent to change, but not ideal
                 e.printStackTrace();
             }
         }
+        close(outers);
 
         return archives;
     }
 
     public static Archive archive(ClassLoader loader, URL location) {
+        return archive(loader, location, Collections.<ArchiveFactory>emptyList());
+    }
 
-        if (location.getProtocol().equals("jar")) {
+    /**
+     * @param factories consulted in order before the built-in archive types
+     */
+    public static Archive archive(ClassLoader loader, URL location, Iterable<ArchiveFactory> factories) {
+        final Map<String, MappedJarArchive> outers = new HashMap<String, MappedJarArchive>();
+        try {
+            return archive(loader, location, factories, outers);
+        } finally {
+            close(outers);
+        }
+    }
 
-            return new JarArchive(loader, location);
+    // the nested archives keep their outer jar mapped until they are closed
+    private static void close(Map<String, MappedJarArchive> outers) {
+        for (MappedJarArchive outer : outers.values()) {
+            outer.close();
+        }
+    }
 
-        } else if (location.getProtocol().equals("file")) {
+    private static Archive archive(ClassLoader loader, URL location, Iterable<ArchiveFactory> factories, Map<String, MappedJarArchive> outers) {
 
+        for (ArchiveFactory factory : factories) {
             try {
+                final Archive archive = factory.create(loader, location);
+                if (archive != null) return archive;
+            } catch (IOException e) {
+                throw new IllegalStateException("can't create the archive of " + location, e);
+            }
+        }
 
-                // See if it's actually a jar
+        if (location.getProtocol().equals("jar")) {
 
-                URL jarUrl = new URL("jar", "", location.toExternalForm() + "!/");
-                JarURLConnection juc = (JarURLConnection) jarUrl.openConnection();
-                juc.getJarFile();
+            if (NestedJarArchive.isNested(location)) {
+                return NestedJarArchive.nested(loader, location, outers);
+            }
 
-                return new JarArchive(loader, jarUrl);
+            return new JarArchive(loader, location);
 
-            } catch (IOException e) {
+        } else if (location.getProtocol().equals("file")) {
 
-                return new FileArchive(loader, location);
+            // See if it's actually a jar, without opening it as one
 
+            final File file = Files.toFile(location);
+            if (file != null && !file.isDirectory() && isZip(file)) {
+                try {
+                    return new JarArchive(loader, new URL("jar", "", location.toExternalForm() + "!/"));
+                } catch (MalformedURLException e) {
+                    throw new IllegalStateException(e);
+                }
             }
+
+            return new FileArchive(loader, location);
         }
 
         throw new UnsupportedOperationException("unsupported archive type: " + location);
     }
 
+    /**
+     * @return true if the file starts with a zip header, an empty zip only has its end of central directory
+     */
+    static boolean isZip(File file) {
+        final byte[] magic = new byte[4];
+        try {
+            final InputStream in = new FileInputStream(file);
+            try {
+                int read = 0;
+                while (read < magic.length) {
+                    final int length = in.read(magic, read, magic.length - read);
+                    if (length < 0) return false;
+                    read += length;
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            return false;
+        }
+        return magic[0] == 'P' && magic[1] == 'K'
+                && ((magic[2] == 3 && magic[3] == 4) || (magic[2] == 5 && magic[3] == 6));
+    }
+
     public static List<Archive> archives(ClassLoader loader, URL... urls) {
         return archives(loader, Arrays.asList(urls));
     }
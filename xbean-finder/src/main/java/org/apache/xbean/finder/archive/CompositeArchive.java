@@ -16,6 +16,7 @@
  */
 package org.apache.xbean.finder.archive;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
@@ -27,7 +28,7 @@ import java.util.NoSuchElementException;
 /**
  * @version $Rev$ $Date$
  */
-public class CompositeArchive implements Archive {
+public class CompositeArchive implements Archive, Closeable {
 
     private final List<Archive> archives = new ArrayList<Archive>();
 
@@ -41,6 +42,10 @@ public class CompositeArchive implements Archive {
         }
     }
 
+    public List<Archive> getArchives() {
+        return archives;
+    }
+
     public InputStream getBytecode(String className) throws IOException, ClassNotFoundException {
         for (Archive archive : archives) {
             try {
@@ -63,6 +68,23 @@ public class CompositeArchive implements Archive {
         throw new ClassNotFoundException(className);
     }
 
+    /**
+     * Closes the archives which hold a file open, all of them even if one fails.
+     */
+    public void close() throws IOException {
+        IOException failure = null;
+        for (Archive archive : archives) {
+            if (archive instanceof Closeable) {
+                try {
+                    ((Closeable) archive).close();
+                } catch (IOException e) {
+                    if (failure == null) failure = e;
+                }
+            }
+        }
+        if (failure != null) throw failure;
+    }
+
     public Iterator<Entry> iterator() {
         if (archives.size() == 1) return archives.get(0).iterator();
         return new CompositeIterator(archives);
@@ -16,6 +16,9 @@
  */
 package org.apache.xbean.finder.archive;
 
+import org.apache.xbean.finder.filter.PackageScope;
+import org.apache.xbean.finder.util.DirectoryWalker;
+
 import java.io.BufferedInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
@@ -24,8 +27,13 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * @version $Rev$ $Date$
@@ -35,37 +43,79 @@ public class FileArchive implements Archive {
     private final ClassLoader loader;
     private final String basePackage;
     private final File dir;
+    private final PackageScope scope;
     private List<String> list;
-    private final MJarSupport mjar = new MJarSupport();
+    private Map<String, long[]> stamps;
+    private MJarSupport mjar = new MJarSupport();
+    private DirectoryWalker walker = DirectoryWalker.getDefault();
 
     public FileArchive(ClassLoader loader, URL url) {
-        this.loader = loader;
-        this.basePackage = "";
-        this.dir = toFile(url);
+        this(loader, toFile(url), "", null);
     }
 
     public FileArchive(ClassLoader loader, File dir) {
-        this.loader = loader;
-        this.basePackage = "";
-        this.dir = dir;
+        this(loader, dir, "", null);
     }
 
     public FileArchive(ClassLoader loader, URL url, String basePackage) {
-        this.loader = loader;
-        this.basePackage = basePackage;
-        this.dir = toFile(url);
+        this(loader, toFile(url), basePackage, null);
     }
 
     public FileArchive(ClassLoader loader, File dir, String basePackage) {
+        this(loader, dir, basePackage, null);
+    }
+
+    /**
+     * @param scope packages listed by the archive, the directories outside of it are not walked
+     */
+    public FileArchive(ClassLoader loader, URL url, PackageScope scope) {
+        this(loader, toFile(url), "", scope);
+    }
+
+    /**
+     * @param scope packages listed by the archive, the directories outside of it are not walked
+     */
+    public FileArchive(ClassLoader loader, File dir, PackageScope scope) {
+        this(loader, dir, "", scope);
+    }
+
+    /**
+     * @param scope packages listed by the archive, the directories outside of it are not walked, null for all
+     */
+    public FileArchive(ClassLoader loader, File dir, String basePackage, PackageScope scope) {
         this.loader = loader;
         this.basePackage = basePackage;
         this.dir = dir;
+        this.scope = scope;
     }
 
     public File getDir() {
         return dir;
     }
 
+    public String getBasePackage() {
+        return basePackage;
+    }
+
+    public DirectoryWalker getWalker() {
+        return walker;
+    }
+
+    /**
+     * @param walker lists the directory, a parallel one helps with deep trees on slow file systems
+     */
+    public FileArchive setWalker(DirectoryWalker walker) {
+        this.walker = walker;
+        return this;
+    }
+
+    /**
+     * @return the packages listed by the archive, null if it lists all the classes
+     */
+    public PackageScope getScope() {
+        return scope;
+    }
+
     public InputStream getBytecode(String className) throws IOException, ClassNotFoundException {
         int pos = className.indexOf("<");
         if (pos > -1) {
@@ -79,11 +129,9 @@ public class FileArchive implements Archive {
             className = className.replace('.', '/') + ".class";
         }
 
-        if (mjar.isMjar()) {
-            final MJarSupport.Clazz resource = mjar.getClasses().get(className);
-            if (resource != null) {
-                className = resource.getPath() + ".class";
-            }
+        final String versioned = mjar.resolve(className);
+        if (versioned != null) {
+            className = versioned;
         }
 
         URL resource = loader.getResource(className);
@@ -125,39 +173,112 @@ public class FileArchive implements Archive {
             }
         }
 
+        stamps = new HashMap<String, long[]>();
         list = file(dir);
         return list.iterator();
     }
 
+    /**
+     * Lists the directory again and compares the size and last modification
+     * date of the class files with the previous listing.
+     * <p/>
+     * If the archive was never listed before all the classes are reported as added.
+     *
+     * @return the classes added, modified and removed since the previous listing
+     */
+    public Changes refresh() {
+        final List<String> previousList = list;
+        final Map<String, long[]> previousStamps = stamps;
+
+        list = null;
+        mjar = new MJarSupport();
+        _iterator();
+
+        final Changes changes = new Changes();
+        if (previousList == null) {
+            changes.added.addAll(list);
+            return changes;
+        }
+
+        final Set<String> before = new HashSet<String>(previousList);
+        final Set<String> after = new HashSet<String>(list);
+        for (String className : list) {
+            if (!before.contains(className)) {
+                changes.added.add(className);
+            }
+        }
+        for (String className : previousList) {
+            if (!after.contains(className)) {
+                changes.removed.add(className);
+            }
+        }
+
+        final Set<String> files = new HashSet<String>(previousStamps.keySet());
+        files.addAll(stamps.keySet());
+        for (String file : files) {
+            final long[] previous = previousStamps.get(file);
+            final long[] current = stamps.get(file);
+            if (previous != null && current != null && previous[0] == current[0] && previous[1] == current[1]) {
+                continue;
+            }
+
+            final String className = versionedClassName(file);
+            if (before.contains(className) && after.contains(className)) {
+                changes.modified.add(className);
+            }
+        }
+        return changes;
+    }
+
+    private static String versionedClassName(String file) {
+        if (!file.startsWith("META-INF.versions.")) return file;
+
+        final int start = file.indexOf('.', "META-INF.versions.".length());
+        return start < 0 ? file : file.substring(start + 1);
+    }
+
     private List<String> file(File dir) {
         List<String> classNames = new ArrayList<String>();
-        if (dir.isDirectory()) {
-            scanDir(dir, classNames, (basePackage.length() > 0) ? (basePackage + ".") : basePackage);
+        if (!dir.isDirectory()) {
+            return classNames;
+        }
+        for (DirectoryWalker.ClassFile file : walker.walk(dir, basePackage, scope)) {
+            final String className = file.getClassName();
+            if (className.equals("module-info") || className.endsWith(".module-info") /*todo?*/) continue;
+            stamps.put(className, new long[]{file.getLastModified(), file.getSize()});
+            if (className.startsWith("META-INF.versions")) {
+                if (mjar.isMjar()) {
+                    mjar.visit(className);
+                    continue;
+                }
+            }
+            classNames.add(className);
         }
         return classNames;
     }
 
-    private void scanDir(File dir, List<String> classNames, String packageName) {
-        File[] files = dir.listFiles();
-        // using /tmp/. as dir we can get null
-        if (files == null) {
-            return;
-        }
-        for (File file : files) {
-            if (file.isDirectory()) {
-                scanDir(file, classNames, packageName + file.getName() + ".");
-            } else if (file.getName().endsWith(".class")) {
-                String name = file.getName();
-                name = name.substring(0, name.length() - 6);
-                if (name.contains(".") || name.equals("module-info") /*todo?*/) continue;
-                if (packageName.startsWith("META-INF.versions")) {
-                    if (mjar.isMjar()) {
-                        mjar.visit(packageName + name);
-                        continue;
-                    }
-                }
-                classNames.add(packageName + name);
-            }
+    /**
+     * Difference between two listings of the archive, see {@link FileArchive#refresh()}.
+     */
+    public static class Changes {
+        private final Set<String> added = new HashSet<String>();
+        private final Set<String> modified = new HashSet<String>();
+        private final Set<String> removed = new HashSet<String>();
+
+        public Set<String> getAdded() {
+            return Collections.unmodifiableSet(added);
+        }
+
+        public Set<String> getModified() {
+            return Collections.unmodifiableSet(modified);
+        }
+
+        public Set<String> getRemoved() {
+            return Collections.unmodifiableSet(removed);
+        }
+
+        public boolean isEmpty() {
+            return added.isEmpty() && modified.isEmpty() && removed.isEmpty();
         }
     }
 
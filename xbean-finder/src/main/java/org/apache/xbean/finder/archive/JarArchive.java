@@ -16,12 +16,12 @@
  */
 package org.apache.xbean.finder.archive;
 
+import org.apache.xbean.finder.filter.PackageScope;
+
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.Enumeration;
 import java.util.Iterator;
 import java.util.List;
@@ -39,14 +39,23 @@ public class JarArchive implements Archive {
     private final ClassLoader loader;
     private final URL url;
     private final JarFile jar;
+    private final PackageScope scope;
     private final MJarSupport mjar = new MJarSupport();
 
     public JarArchive(ClassLoader loader, URL url) {
+        this(loader, url, null);
+    }
+
+    /**
+     * @param scope packages listed by the archive, the other entries are dropped from their name, null for all
+     */
+    public JarArchive(ClassLoader loader, URL url, PackageScope scope) {
 //        if (!"jar".equals(url.getProtocol())) throw new IllegalArgumentException("not a jar url: " + url);
 
         try {
             this.loader = loader;
             this.url = url;
+            this.scope = scope;
             URL u = url;
 
             String jarPath = url.getFile();
@@ -64,6 +73,17 @@ public class JarArchive implements Archive {
         return url;
     }
 
+    public JarFile getJarFile() {
+        return jar;
+    }
+
+    /**
+     * @return the packages listed by the archive, null if it lists all the classes
+     */
+    public PackageScope getScope() {
+        return scope;
+    }
+
     public InputStream getBytecode(String className) throws IOException, ClassNotFoundException {
         int pos = className.indexOf("<");
         if (pos > -1) {
@@ -77,7 +97,8 @@ public class JarArchive implements Archive {
             className = className.replace('.', '/') + ".class";
         }
 
-        ZipEntry entry = jar.getEntry(className);
+        final String versioned = mjar.resolve(className);
+        ZipEntry entry = jar.getEntry(versioned != null ? versioned : className);
         if (entry == null) throw new ClassNotFoundException(className);
 
         return jar.getInputStream(entry);
@@ -95,11 +116,13 @@ public class JarArchive implements Archive {
 
     private class JarIterator implements Iterator<Entry> {
 
-        private final Iterator<JarEntry> stream;
+        private final Enumeration<JarEntry> entries;
+        // the non versioned entries of a multi-release jar, its versions being bucketed first
+        private final Iterator<JarEntry> listed;
         private Entry next;
 
         private JarIterator() {
-            final Enumeration<JarEntry> entries = jar.entries();
+            entries = jar.entries();
             try {
                 final Manifest manifest = jar.getManifest();
                 if (manifest != null) {
@@ -108,42 +131,46 @@ public class JarArchive implements Archive {
             } catch (IOException e) {
                 // no-op
             }
-            if (mjar.isMjar()) { // sort it to ensure we browse META-INF/versions first
-                final List<JarEntry> list = new ArrayList<JarEntry>(Collections.list(entries));
-                Collections.sort(list, new Comparator<JarEntry>() {
-                    public int compare(JarEntry o1, JarEntry o2) {
-                        final String n2 = o2.getName();
-                        final String n1 = o1.getName();
-                        final boolean n1v = n1.startsWith("META-INF/versions/");
-                        final boolean n2v = n2.startsWith("META-INF/versions/");
-                        if (n1v && n2v) {
-                            return n1.compareTo(n2);
-                        }
-                        if (n1v) {
-                            return -1;
-                        }
-                        if (n2v) {
-                            return 1;
-                        }
-                        try {
-                            return Integer.parseInt(n2) - Integer.parseInt(n1);
-                        } catch (final NumberFormatException nfe) {
-                            return n2.compareTo(n1);
-                        }
-                    }
-                });
-                stream = list.iterator();
-            } else {
-                stream = Collections.list(entries).iterator();
+
+            if (!mjar.isMjar()) { // stream the entries
+                listed = null;
+                return;
             }
+
+            final List<JarEntry> list = new ArrayList<JarEntry>();
+            while (entries.hasMoreElements()) {
+                final JarEntry entry = entries.nextElement();
+                final String name = entry.getName();
+                if (scope != null && !scope.acceptEntry(name)) {
+                    continue;
+                }
+                if (name.startsWith("META-INF/versions/")) {
+                    mjar.visit(name);
+                } else {
+                    list.add(entry);
+                }
+            }
+            listed = list.iterator();
+        }
+
+        private JarEntry nextEntry() {
+            if (listed != null) {
+                return listed.hasNext() ? listed.next() : null;
+            }
+            while (entries.hasMoreElements()) {
+                final JarEntry entry = entries.nextElement();
+                if (scope == null || scope.acceptEntry(entry.getName())) {
+                    return entry;
+                }
+            }
+            return null;
         }
 
         private boolean advance() {
             if (next != null) {
                 return true;
             }
-            while (stream.hasNext()) {
-                final JarEntry entry = stream.next();
+            for (JarEntry entry = nextEntry(); entry != null; entry = nextEntry()) {
                 final String entryName = entry.getName();
                 if (entry.isDirectory() || !entryName.endsWith(".class") || entryName.endsWith("module-info.class")) {
                     continue;
@@ -182,7 +209,7 @@ public class JarArchive implements Archive {
             throw new UnsupportedOperationException("remove");
         }
 
-        private class ClassEntry implements Entry {
+        private class ClassEntry implements ChecksumEntry {
             private final String name;
             private final JarEntry entry;
 
@@ -197,14 +224,29 @@ public class JarArchive implements Archive {
 
             public InputStream getBytecode() throws IOException {
                 if (mjar.isMjar()) {
-                    // JarFile handles it for us :)
-                    final ZipEntry entry = jar.getJarEntry(this.entry.getName());
+                    final String versioned = mjar.resolve(this.entry.getName());
+                    // else JarFile handles it for us :)
+                    final ZipEntry entry = jar.getJarEntry(versioned != null ? versioned : this.entry.getName());
                     if (entry != null) {
                         return jar.getInputStream(entry);
                     }
                 }
                 return jar.getInputStream(entry);
             }
+
+            public long getCrc() {
+                return versionedEntry().getCrc();
+            }
+
+            public long getSize() {
+                return versionedEntry().getSize();
+            }
+
+            private JarEntry versionedEntry() {
+                final String versioned = mjar.resolve(entry.getName());
+                final JarEntry entry = versioned != null ? jar.getJarEntry(versioned) : null;
+                return entry != null ? entry : this.entry;
+            }
         }
     }
 }
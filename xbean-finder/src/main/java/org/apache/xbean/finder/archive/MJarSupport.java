@@ -61,6 +61,7 @@ public class MJarSupport {
     }
 
     private boolean mjar;
+    // best version by resource path, as org/acme/Foo.class
     private final Map<String, Clazz> classes = new HashMap<String, Clazz>();
 
     public boolean isMjar() {
@@ -88,35 +89,57 @@ public class MJarSupport {
         }
     }
 
-    // for exploded dirs since jars are handled by the JVM
+    /**
+     * Buckets a META-INF/versions/N/ entry by version in a single pass, only the highest
+     * version usable by the running JVM is kept for each class. The name is either a
+     * jar entry (META-INF/versions/11/org/acme/Foo.class) or a class name of an exploded
+     * directory (META-INF.versions.11.org.acme.Foo).
+     */
     public void visit(final String name) {
-        String normalized = name.replace('/', '.');
-        if (normalized.startsWith("/")) {
-            normalized = normalized.substring(1);
-        }
-        if (normalized.startsWith("META-INF.versions.")) {
-            final String version = normalized.substring("META-INF.versions.".length());
-            final int nextSep = version.indexOf('.');
-            if (nextSep < 0) {
-                return;
-            }
-            final String vStr = version.substring(0, nextSep);
-            final int major;
-            try {
-                if ((major = Integer.parseInt(vStr)) > MJAR_VERSION) {
-                    return;
-                }
-            } catch (final NumberFormatException nfe) {
+        String path = name;
+        if (path.startsWith("/")) {
+            path = path.substring(1);
+        }
+        if (path.startsWith("META-INF.versions.")) {
+            path = path.replace('.', '/') + ".class";
+        } else if (!path.startsWith("META-INF/versions/")) {
+            return;
+        }
+
+        final int start = "META-INF/versions/".length();
+        final int end = path.indexOf('/', start);
+        if (end <= start || end == path.length() - 1) {
+            return;
+        }
+        int major = 0;
+        for (int i = start; i < end; i++) {
+            final char c = path.charAt(i);
+            if (c < '0' || c > '9' || major > MJAR_VERSION) {
                 return;
             }
-            if (nextSep < version.length()) {
-                final String cname = version.substring(nextSep + 1);
-                final Clazz existing = classes.get(cname);
-                if (existing == null || existing.version < major) {
-                    classes.put(cname, new Clazz(name + (!version.endsWith(".class") ? ".class" : ""), major));
-                }
-            }
+            major = major * 10 + (c - '0');
+        }
+        if (major > MJAR_VERSION) {
+            return;
+        }
+
+        final String resource = path.substring(end + 1);
+        final Clazz existing = classes.get(resource);
+        if (existing == null || existing.version < major) {
+            classes.put(resource, new Clazz(path, major));
+        }
+    }
+
+    /**
+     * @param resource path of a class, as org/acme/Foo.class
+     * @return path of the version of the class to read, null to read the resource itself
+     */
+    public String resolve(final String resource) {
+        if (!mjar) {
+            return null;
         }
+        final Clazz clazz = classes.get(resource);
+        return clazz != null ? clazz.getPath() : null;
     }
 
     public static class Clazz {
@@ -0,0 +1,611 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.archive;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.Manifest;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Jar archive reading the zip central directory of a memory mapped file
+ * instead of going through java.util.jar.JarFile.
+ * <p/>
+ * The entries are located once from the central directory. DEFLATED entries are
+ * inflated, and STORED entries copied from the mapping, into an output buffer taken
+ * with an Inflater from a small pool shared by the archives. A mapped file has no
+ * backing array so a STORED entry can't be read in place, except for a jar nested
+ * in a DEFLATED entry which is inflated in memory. Entries are returned as
+ * {@link BytecodeInputStream} so the finder parses the buffer without copying it
+ * again, the buffer goes back to the pool when the stream is closed.
+ * <p/>
+ * The jar must be smaller than 2GB. The buffer of a jar nested in another one can
+ * be given directly, see {@link NestedJarArchive}. The mapping is released once the
+ * archive and the nested archives reading it are closed, the file stays mapped,
+ * and locked on Windows, until then.
+ *
+ * @version $Rev$ $Date$
+ */
+public class MappedJarArchive implements Archive, Closeable {
+
+    private static final int LOCAL_HEADER = 0x04034b50;
+    private static final int CENTRAL_HEADER = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+    private static final int ZIP64_LOCATOR = 0x07064b50;
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY = 0x06064b50;
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // bounded so the native memory of the inflaters is released when more threads read at once
+    private static final BlockingQueue<Inflating> INFLATING = new ArrayBlockingQueue<Inflating>(Runtime.getRuntime().availableProcessors());
+
+    private final ClassLoader loader;
+    private final URL url;
+    private final File file;
+    // null once closed
+    private volatile ByteBuffer mapping;
+    // the file mapped by this archive, null for a nested one
+    private final ByteBuffer mapped;
+    // the archive this one is nested in, sharing its mapping
+    private final MappedJarArchive outer;
+    // this archive and the nested ones still reading its mapping
+    private final AtomicInteger references = new AtomicInteger(1);
+    private final Map<String, ZipRecord> records = new HashMap<String, ZipRecord>();
+    private final List<String> names = new ArrayList<String>();
+    private final List<String> jars = new ArrayList<String>();
+    private final MJarSupport mjar = new MJarSupport();
+    private String root = "";
+
+    public MappedJarArchive(ClassLoader loader, URL url) {
+        try {
+            this.loader = loader;
+            this.url = url;
+            URL u = url;
+
+            String jarPath = url.getFile();
+            if (jarPath.contains("!")) {
+                jarPath = jarPath.substring(0, jarPath.indexOf("!"));
+                u = new URL(jarPath);
+            }
+            this.file = new File(FileArchive.decode(u.getFile()));
+            this.outer = null;
+            this.mapped = map(file);
+            this.mapping = mapped;
+            readCentralDirectory();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param outer the jar this one is stored in, kept mapped until this archive is closed
+     * @param content the bytes of the jar
+     */
+    protected MappedJarArchive(ClassLoader loader, URL url, MappedJarArchive outer, ByteBuffer content) {
+        this.loader = loader;
+        this.url = url;
+        this.file = outer.getFile();
+        this.outer = outer;
+        this.mapped = null;
+        this.mapping = content.order(ByteOrder.LITTLE_ENDIAN);
+        outer.retain();
+        try {
+            readCentralDirectory();
+        } catch (IOException e) {
+            outer.release();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public URL getUrl() {
+        return url;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return the paths of the jars stored in this one
+     */
+    public List<String> getNestedJars() {
+        return jars;
+    }
+
+    /**
+     * Only the classes under this directory are part of the archive and their names
+     * are relative to it, as with the BOOT-INF/classes/ directory of a fat jar.
+     */
+    MappedJarArchive root(String directory) {
+        this.root = directory;
+        return this;
+    }
+
+    boolean hasClasses(String directory) {
+        for (String name : names) {
+            if (name.startsWith(directory)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Releases the mapping, or the reference to the outer jar of a nested one.
+     * The file is unmapped once the nested archives reading it are closed too.
+     * The archive must not be read anymore, nor while it is closed.
+     */
+    public synchronized void close() {
+        if (mapping == null) return;
+        mapping = null;
+        release();
+    }
+
+    /**
+     * @return the content of the entry, a view of the mapping if it is STORED
+     */
+    ByteBuffer getContent(String path) throws IOException {
+        final ZipRecord record = records.get(path);
+        if (record == null) throw new ZipException("No entry " + path + " in " + url);
+
+        if (record.method == STORED) {
+            final int data = data(record);
+            final ByteBuffer content = mapping().duplicate();
+            content.position(data);
+            content.limit(data + record.size);
+            return content.slice();
+        }
+
+        // kept by the nested archive, not a pooled buffer
+        final byte[] content = new byte[record.size];
+        final Inflating inflating = inflating();
+        try {
+            read(record, inflating, content);
+        } finally {
+            pool(inflating);
+        }
+        return ByteBuffer.wrap(content);
+    }
+
+    public InputStream getBytecode(String className) throws IOException, ClassNotFoundException {
+        int pos = className.indexOf("<");
+        if (pos > -1) {
+            className = className.substring(0, pos);
+        }
+        pos = className.indexOf(">");
+        if (pos > -1) {
+            className = className.substring(0, pos);
+        }
+        if (!className.endsWith(".class")) {
+            className = className.replace('.', '/') + ".class";
+        }
+
+        final ZipRecord record = records.get(versioned(root + className));
+        if (record == null) throw new ClassNotFoundException(className);
+
+        return read(record);
+    }
+
+    public Class<?> loadClass(String className) throws ClassNotFoundException {
+        // assume the loader knows how to handle mjar release if activated
+        return loader.loadClass(className);
+    }
+
+    public Iterator<Entry> iterator() {
+        return new MappedJarIterator();
+    }
+
+    private String versioned(String path) {
+        if (!mjar.isMjar()) return path;
+
+        final String versioned = mjar.resolve(path);
+        return versioned != null ? versioned : path;
+    }
+
+    private ByteBuffer mapping() throws IOException {
+        final ByteBuffer current = mapping;
+        if (current == null) throw new IOException(url + " is closed");
+        return current;
+    }
+
+    private void retain() {
+        for (int count = references.get(); ; count = references.get()) {
+            if (count == 0) throw new IllegalStateException(url + " is closed");
+            if (references.compareAndSet(count, count + 1)) return;
+        }
+    }
+
+    private void release() {
+        if (references.decrementAndGet() != 0) return;
+        if (outer != null) {
+            outer.release();
+        } else {
+            unmap(mapped);
+        }
+    }
+
+    // best effort, else the file is unmapped when the buffer is garbage collected
+    private static void unmap(ByteBuffer buffer) {
+        if (!(buffer instanceof MappedByteBuffer)) return;
+        try {
+            final Class<?> unsafe = Class.forName("sun.misc.Unsafe");
+            try {
+                final Method invokeCleaner = unsafe.getMethod("invokeCleaner", ByteBuffer.class);
+                final Field instance = unsafe.getDeclaredField("theUnsafe");
+                instance.setAccessible(true);
+                invokeCleaner.invoke(instance.get(null), buffer);
+            } catch (NoSuchMethodException java8) {
+                final Method cleaner = buffer.getClass().getMethod("cleaner");
+                cleaner.setAccessible(true);
+                final Object clean = cleaner.invoke(buffer);
+                if (clean != null) {
+                    clean.getClass().getMethod("clean").invoke(clean);
+                }
+            }
+        } catch (Exception e) {
+            // not supported by this jvm
+        }
+    }
+
+    private static ByteBuffer map(File file) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = raf.getChannel();
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(file + " is too big to be mapped, use a JarArchive");
+            }
+            // the mapping stays valid once the channel is closed
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+        } finally {
+            raf.close();
+        }
+    }
+
+    private void readCentralDirectory() throws IOException {
+        final int end = findEndOfCentralDirectory();
+        long count = mapping.getShort(end + 10) & 0xFFFF;
+        long offset = mapping.getInt(end + 16) & 0xFFFFFFFFL;
+
+        if ((count == 0xFFFF || offset == 0xFFFFFFFFL) && end >= 20 && mapping.getInt(end - 20) == ZIP64_LOCATOR) {
+            final int zip64End = checkedOffset(mapping.getLong(end - 20 + 8));
+            if (mapping.getInt(zip64End) != ZIP64_END_OF_CENTRAL_DIRECTORY) throw new ZipException("Invalid zip64 end of central directory in " + url);
+            count = mapping.getLong(zip64End + 32);
+            offset = mapping.getLong(zip64End + 48);
+        }
+
+        int position = checkedOffset(offset);
+        String manifest = null;
+        for (long i = 0; i < count; i++) {
+            if (mapping.getInt(position) != CENTRAL_HEADER) throw new ZipException("Invalid central directory entry in " + url);
+
+            final int method = mapping.getShort(position + 10) & 0xFFFF;
+            final int crc = mapping.getInt(position + 16);
+            long compressedSize = mapping.getInt(position + 20) & 0xFFFFFFFFL;
+            long size = mapping.getInt(position + 24) & 0xFFFFFFFFL;
+            final int nameLength = mapping.getShort(position + 28) & 0xFFFF;
+            final int extraLength = mapping.getShort(position + 30) & 0xFFFF;
+            final int commentLength = mapping.getShort(position + 32) & 0xFFFF;
+            long localHeader = mapping.getInt(position + 42) & 0xFFFFFFFFL;
+
+            final String name = string(position + 46, nameLength);
+
+            if (size == 0xFFFFFFFFL || compressedSize == 0xFFFFFFFFL || localHeader == 0xFFFFFFFFL) {
+                // the zip64 extra field only holds the values which didn't fit, in this order
+                int extra = position + 46 + nameLength;
+                final int extraEnd = extra + extraLength;
+                while (extra + 4 <= extraEnd) {
+                    final int id = mapping.getShort(extra) & 0xFFFF;
+                    final int length = mapping.getShort(extra + 2) & 0xFFFF;
+                    if (id == 0x0001) {
+                        int field = extra + 4;
+                        if (size == 0xFFFFFFFFL) {
+                            size = mapping.getLong(field);
+                            field += 8;
+                        }
+                        if (compressedSize == 0xFFFFFFFFL) {
+                            compressedSize = mapping.getLong(field);
+                            field += 8;
+                        }
+                        if (localHeader == 0xFFFFFFFFL) {
+                            localHeader = mapping.getLong(field);
+                        }
+                        break;
+                    }
+                    extra += 4 + length;
+                }
+            }
+
+            position += 46 + nameLength + extraLength + commentLength;
+
+            if (name.endsWith(".class")) {
+                records.put(name, new ZipRecord(name, method, crc, checkedOffset(localHeader), checkedSize(compressedSize), checkedSize(size)));
+                names.add(name);
+            } else if (name.endsWith(".jar")) {
+                records.put(name, new ZipRecord(name, method, crc, checkedOffset(localHeader), checkedSize(compressedSize), checkedSize(size)));
+                jars.add(name);
+            } else if ("META-INF/MANIFEST.MF".equalsIgnoreCase(name)) {
+                manifest = name;
+                records.put(name, new ZipRecord(name, method, crc, checkedOffset(localHeader), checkedSize(compressedSize), checkedSize(size)));
+            }
+        }
+
+        if (manifest != null) {
+            final InputStream in = read(records.remove(manifest));
+            try {
+                mjar.load(new Manifest(in));
+            } finally {
+                in.close();
+            }
+            if (mjar.isMjar()) {
+                for (String name : names) {
+                    if (name.startsWith("META-INF/versions/")) {
+                        mjar.visit(name);
+                    }
+                }
+            }
+        }
+    }
+
+    private int findEndOfCentralDirectory() throws ZipException {
+        // the record is 22 bytes followed by a comment of up to 64k
+        final int last = mapping.capacity() - 22;
+        for (int position = last; position >= 0 && position >= last - 0xFFFF; position--) {
+            if (mapping.getInt(position) == END_OF_CENTRAL_DIRECTORY) return position;
+        }
+        throw new ZipException("No zip central directory in " + url);
+    }
+
+    private String string(int offset, int length) {
+        final byte[] bytes = new byte[length];
+        final ByteBuffer buffer = mapping.duplicate();
+        buffer.position(offset);
+        buffer.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private int data(ZipRecord record) throws IOException {
+        final ByteBuffer mapping = mapping();
+        if (mapping.getInt(record.localHeader) != LOCAL_HEADER) throw new ZipException("Invalid local header for " + record.name + " in " + url);
+
+        // the local extra field can differ from the central one
+        final int nameLength = mapping.getShort(record.localHeader + 26) & 0xFFFF;
+        final int extraLength = mapping.getShort(record.localHeader + 28) & 0xFFFF;
+        return record.localHeader + 30 + nameLength + extraLength;
+    }
+
+    /**
+     * @return the entry in the array of a jar inflated in memory, else in a pooled
+     * buffer which can't be used anymore once the stream is closed
+     */
+    private BytecodeInputStream read(ZipRecord record) throws IOException {
+        final ByteBuffer mapping = mapping();
+        if (record.method == STORED && mapping.hasArray()) {
+            return new BytecodeInputStream(mapping.array(), mapping.arrayOffset() + data(record), record.size);
+        }
+
+        Inflating inflating = inflating();
+        try {
+            final byte[] output = inflating.output(record.size);
+            read(record, inflating, output);
+            final BytecodeInputStream bytecode = new PooledBytecode(inflating, output, record.size);
+            inflating = null;
+            return bytecode;
+        } finally {
+            if (inflating != null) {
+                pool(inflating);
+            }
+        }
+    }
+
+    // copies or inflates the entry at the start of the output
+    private void read(ZipRecord record, Inflating inflating, byte[] output) throws IOException {
+        final ByteBuffer buffer = mapping().duplicate();
+        buffer.position(data(record));
+
+        if (record.method == STORED) {
+            buffer.get(output, 0, record.size);
+            return;
+        }
+        if (record.method != DEFLATED) throw new ZipException("Unsupported compression method " + record.method + " for " + record.name + " in " + url);
+
+        try {
+            final byte[] input = inflating.input(record.compressedSize + 1);
+            buffer.get(input, 0, record.compressedSize);
+            input[record.compressedSize] = 0; // nowrap inflaters may need an extra byte
+
+            final Inflater inflater = inflating.inflater;
+            inflater.reset();
+            inflater.setInput(input, 0, record.compressedSize + 1);
+            int length = 0;
+            while (length < record.size) {
+                final int inflated = inflater.inflate(output, length, record.size - length);
+                if (inflated == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) break;
+                length += inflated;
+            }
+            if (length != record.size) throw new ZipException("Invalid size for " + record.name + " in " + url);
+        } catch (DataFormatException e) {
+            throw new ZipException("Invalid deflated data for " + record.name + " in " + url + ": " + e.getMessage());
+        }
+    }
+
+    private static Inflating inflating() {
+        final Inflating inflating = INFLATING.poll();
+        return inflating != null ? inflating : new Inflating();
+    }
+
+    private static void pool(Inflating inflating) {
+        if (!INFLATING.offer(inflating)) {
+            inflating.inflater.end();
+        }
+    }
+
+    private int checkedOffset(long offset) throws ZipException {
+        if (offset < 0 || offset >= mapping.capacity()) throw new ZipException("Invalid offset " + offset + " in " + url);
+        return (int) offset;
+    }
+
+    private int checkedSize(long size) throws ZipException {
+        if (size < 0 || size > Integer.MAX_VALUE) throw new ZipException("Invalid entry size " + size + " in " + url);
+        return (int) size;
+    }
+
+    private static final class ZipRecord {
+        private final String name;
+        private final int method;
+        private final int crc;
+        private final int localHeader;
+        private final int compressedSize;
+        private final int size;
+
+        private ZipRecord(String name, int method, int crc, int localHeader, int compressedSize, int size) {
+            this.name = name;
+            this.method = method;
+            this.crc = crc;
+            this.localHeader = localHeader;
+            this.compressedSize = compressedSize;
+            this.size = size;
+        }
+    }
+
+    // inflater, compressed data and entry buffers, used by one read at a time
+    private static final class Inflating {
+        private final Inflater inflater = new Inflater(true);
+        private byte[] input = new byte[8192];
+        private byte[] output = new byte[8192];
+
+        private byte[] input(int length) {
+            if (input.length < length) {
+                input = new byte[Math.max(length, input.length * 2)];
+            }
+            return input;
+        }
+
+        private byte[] output(int length) {
+            if (output.length < length) {
+                output = new byte[Math.max(length, output.length * 2)];
+            }
+            return output;
+        }
+    }
+
+    // the output buffer of an Inflating, pooled again when closed
+    private static final class PooledBytecode extends BytecodeInputStream {
+        private Inflating inflating;
+
+        private PooledBytecode(Inflating inflating, byte[] buffer, int length) {
+            super(buffer, 0, length);
+            this.inflating = inflating;
+        }
+
+        @Override
+        public void close() {
+            if (inflating != null) {
+                pool(inflating);
+                inflating = null;
+            }
+        }
+    }
+
+    private class MappedJarIterator implements Iterator<Entry> {
+
+        private final Iterator<String> paths = names.iterator();
+        private Entry next;
+
+        private boolean advance() {
+            if (next != null) {
+                return true;
+            }
+            while (paths.hasNext()) {
+                final String path = paths.next();
+                if (path.endsWith("module-info.class") || path.startsWith("META-INF/versions/") || !path.startsWith(root)) {
+                    continue;
+                }
+
+                final String className = path.substring(root.length(), path.length() - 6);
+                if (className.contains(".")) {
+                    continue;
+                }
+
+                next = new ClassEntry(path, className.replace('/', '.'));
+                return true;
+            }
+            return false;
+        }
+
+        public boolean hasNext() {
+            return advance();
+        }
+
+        public Entry next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            Entry entry = next;
+            next = null;
+            return entry;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException("remove");
+        }
+
+        private class ClassEntry implements ChecksumEntry {
+            private final String path;
+            private final String name;
+
+            private ClassEntry(String path, String name) {
+                this.path = path;
+                this.name = name;
+            }
+
+            public String getName() {
+                return name;
+            }
+
+            public InputStream getBytecode() throws IOException {
+                return read(records.get(versioned(path)));
+            }
+
+            public long getCrc() {
+                return records.get(versioned(path)).crc & 0xFFFFFFFFL;
+            }
+
+            public long getSize() {
+                return records.get(versioned(path)).size;
+            }
+        }
+    }
+}
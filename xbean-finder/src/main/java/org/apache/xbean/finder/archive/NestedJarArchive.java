@@ -0,0 +1,156 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.archive;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Jar stored in another jar, as the libraries of a fat jar (BOOT-INF/lib/)
+ * or of a war (WEB-INF/lib/).
+ * <p/>
+ * Nothing is extracted to disk: a STORED nested jar is read from the mapping
+ * of the outer jar and a DEFLATED one is inflated once in memory.
+ *
+ * @version $Rev$ $Date$
+ */
+public class NestedJarArchive extends MappedJarArchive {
+
+    public static final List<String> CLASSES_DIRECTORIES = Arrays.asList("BOOT-INF/classes/", "WEB-INF/classes/");
+    public static final List<String> LIB_DIRECTORIES = Arrays.asList("BOOT-INF/lib/", "WEB-INF/lib/");
+
+    private final String path;
+
+    /**
+     * @param url jar:file:/app.jar!/BOOT-INF/lib/lib.jar!/ as used by the fat jar class loaders
+     */
+    public NestedJarArchive(ClassLoader loader, URL url) {
+        this(loader, new MappedJarArchive(loader, outerUrl(url)), nestedPath(url), true);
+    }
+
+    /**
+     * @param outer the jar containing the nested one, stays mapped until this archive is closed too
+     * @param path path of the nested jar in the outer jar
+     */
+    public NestedJarArchive(ClassLoader loader, MappedJarArchive outer, String path) {
+        this(loader, outer, path, false);
+    }
+
+    private NestedJarArchive(ClassLoader loader, MappedJarArchive outer, String path, boolean owned) {
+        super(loader, nestedUrl(outer, path), outer, content(outer, path));
+        this.path = path;
+        if (owned) {
+            outer.close(); // only read through this archive
+        }
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Archive of a fat jar or war with its classes directory and libraries. A jar
+     * without them gives a composite of the jar itself.
+     *
+     * @param url the jar file or a jar: url
+     */
+    public static CompositeArchive expand(ClassLoader loader, URL url) {
+        final MappedJarArchive jar = new MappedJarArchive(loader, url);
+
+        final List<Archive> archives = new ArrayList<Archive>();
+        archives.add(jar.root(classesDirectory(jar)));
+        for (String nested : jar.getNestedJars()) {
+            for (String directory : LIB_DIRECTORIES) {
+                if (nested.startsWith(directory) && nested.indexOf('/', directory.length()) < 0) {
+                    archives.add(new NestedJarArchive(loader, jar, nested));
+                    break;
+                }
+            }
+        }
+        return new CompositeArchive(archives);
+    }
+
+    /**
+     * @return true if the url points to a jar in a jar, see {@link #NestedJarArchive(ClassLoader, URL)}
+     */
+    public static boolean isNested(URL url) {
+        final String file = url.getFile();
+        final int separator = file.indexOf("!/");
+        return separator > 0 && file.indexOf("!/", separator + 2) > 0;
+    }
+
+    /**
+     * Same as {@link #NestedJarArchive(ClassLoader, URL)} but an outer jar is mapped
+     * and its central directory read once for all the nested jars of the classpath.
+     *
+     * @param outers the outer jars already read, by url, to close once the nested archives are created
+     */
+    static NestedJarArchive nested(ClassLoader loader, URL url, Map<String, MappedJarArchive> outers) {
+        final URL outerUrl = outerUrl(url);
+        MappedJarArchive outer = outers.get(outerUrl.toExternalForm());
+        if (outer == null) {
+            outer = new MappedJarArchive(loader, outerUrl);
+            outers.put(outerUrl.toExternalForm(), outer);
+        }
+        return new NestedJarArchive(loader, outer, nestedPath(url));
+    }
+
+    private static String classesDirectory(MappedJarArchive jar) {
+        for (String directory : CLASSES_DIRECTORIES) {
+            if (jar.hasClasses(directory)) return directory;
+        }
+        return "";
+    }
+
+    private static ByteBuffer content(MappedJarArchive outer, String path) {
+        try {
+            return outer.getContent(path);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static URL nestedUrl(MappedJarArchive outer, String path) {
+        try {
+            return new URL("jar:" + outer.getFile().toURI().toURL() + "!/" + path + "!/");
+        } catch (MalformedURLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static URL outerUrl(URL url) {
+        final String file = url.getFile();
+        try {
+            return new URL(file.substring(0, file.indexOf("!/")));
+        } catch (MalformedURLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String nestedPath(URL url) {
+        final String file = url.getFile();
+        final int start = file.indexOf("!/") + 2;
+        final int end = file.indexOf("!/", start);
+        return end < 0 ? file.substring(start) : file.substring(start, end);
+    }
+}
@@ -22,6 +22,7 @@ import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.regex.Pattern;
 
 /**
  * @version $Rev$ $Date$
@@ -33,6 +34,8 @@ public class Filters {
         }
     };
 
+    private static final Pattern NOT_MERGEABLE = Pattern.compile("\\\\[1-9k]|\\(\\?<[a-zA-Z]");
+
     public static Filter packages(String... packages) {
         List<Filter> filters = new ArrayList<Filter>();
         for (String s : packages) {
@@ -109,7 +112,51 @@ public class Filters {
 
         if (unwrapped.size() == 0) return NONE;
         if (unwrapped.size() == 1) return unwrapped.iterator().next();
-        return new FilterList(unwrapped);
+        return new FilterList(compile(unwrapped));
+    }
+
+    /**
+     * Merges the filters which can be checked together: the package, prefix, class
+     * and suffix filters into one {@link TrieFilter} and the patterns into a single
+     * alternation so a name is matched once instead of once per filter.
+     */
+    private static List<Filter> compile(Set<Filter> filters) {
+        final List<Filter> trie = new ArrayList<Filter>();
+        final List<PatternFilter> patterns = new ArrayList<PatternFilter>();
+        final List<Filter> others = new ArrayList<Filter>();
+        for (Filter filter : filters) {
+            if (TrieFilter.supports(filter)) {
+                trie.add(filter);
+            } else if (filter instanceof PatternFilter && isMergeable(((PatternFilter) filter).getPattern())) {
+                patterns.add((PatternFilter) filter);
+            } else {
+                others.add(filter);
+            }
+        }
+
+        final List<Filter> compiled = new ArrayList<Filter>();
+        if (trie.size() > 1) {
+            compiled.add(new TrieFilter(trie));
+        } else {
+            compiled.addAll(trie);
+        }
+        if (patterns.size() > 1) {
+            final StringBuilder alternation = new StringBuilder();
+            for (PatternFilter pattern : patterns) {
+                if (alternation.length() > 0) alternation.append('|');
+                alternation.append("(?:").append(pattern.getPattern().pattern()).append(')');
+            }
+            compiled.add(new PatternFilter(alternation.toString()));
+        } else {
+            compiled.addAll(patterns);
+        }
+        compiled.addAll(others);
+        return compiled;
+    }
+
+    // flags, back references and named groups don't survive being joined to other patterns
+    private static boolean isMergeable(Pattern pattern) {
+        return pattern.flags() == 0 && !NOT_MERGEABLE.matcher(pattern.pattern()).find();
     }
 
     /**
@@ -137,6 +184,9 @@ public class Filters {
             if (filter instanceof FilterList) {
                 FilterList filterList = (FilterList) filter;
                 unwrap(filterList.getFilters(), unwrapped);
+            } else if (filter instanceof TrieFilter) {
+                TrieFilter trieFilter = (TrieFilter) filter;
+                unwrap(trieFilter.getFilters(), unwrapped);
             } else {
                 unwrapped.add(filter);
             }
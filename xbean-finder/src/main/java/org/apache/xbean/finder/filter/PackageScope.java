@@ -0,0 +1,177 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.filter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Packages, with their sub-packages, an archive is restricted to.
+ * <p/>
+ * Unlike a FilteredArchive, which filters the class names listed by the archive,
+ * JarArchive and FileArchive check the scope before reading anything: directories
+ * outside of it are not listed and jar entries are dropped from their raw name,
+ * before any class name is built. The versioned entries of multi-release archives
+ * (META-INF/versions/N/) are checked against the same packages.
+ *
+ * @version $Rev$ $Date$
+ */
+public class PackageScope implements Filter {
+    private static final String VERSIONS = "META-INF/versions/";
+    private static final String VERSIONS_PACKAGE = "META-INF.versions.";
+
+    private final String[] packages;
+    private final String[] paths;
+
+    public PackageScope(String... packages) {
+        this(Arrays.asList(packages));
+    }
+
+    public PackageScope(Collection<String> packages) {
+        this.packages = new String[packages.size()];
+        this.paths = new String[packages.size()];
+        int i = 0;
+        for (String packageName : packages) {
+            if (!packageName.endsWith(".")) packageName += ".";
+            this.packages[i] = packageName;
+            this.paths[i] = packageName.replace('.', '/');
+            i++;
+        }
+    }
+
+    /**
+     * @return the scope of a PackageFilter or of a list of them, as built by Filters.packages(),
+     * null if the filter accepts something else
+     */
+    public static PackageScope of(Filter filter) {
+        final List<String> packages = new ArrayList<String>();
+        return collect(filter, packages) ? new PackageScope(packages) : null;
+    }
+
+    private static boolean collect(Filter filter, List<String> packages) {
+        if (filter instanceof PackageFilter) {
+            packages.add(((PackageFilter) filter).getPackageName());
+            return true;
+        }
+        if (filter instanceof PackageScope) {
+            packages.addAll(((PackageScope) filter).getPackages());
+            return true;
+        }
+
+        final List<Filter> filters;
+        if (filter instanceof FilterList) {
+            filters = ((FilterList) filter).getFilters();
+        } else if (filter instanceof TrieFilter) {
+            filters = ((TrieFilter) filter).getFilters();
+        } else {
+            return false;
+        }
+        for (Filter nested : filters) {
+            if (!collect(nested, packages)) return false;
+        }
+        return true;
+    }
+
+    public List<String> getPackages() {
+        return Arrays.asList(packages);
+    }
+
+    /**
+     * @param name a class name
+     */
+    public boolean accept(String name) {
+        for (String packageName : packages) {
+            if (name.startsWith(packageName)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param packageName a package ending with a dot, "" for the default package
+     * @return true if the package or one of its sub-packages can hold classes of the scope
+     */
+    public boolean enterPackage(String packageName) {
+        int start = 0;
+        if (packageName.startsWith(VERSIONS_PACKAGE)) {
+            start = packageName.indexOf('.', VERSIONS_PACKAGE.length()) + 1;
+            if (start == 0) return true;
+        } else if (VERSIONS_PACKAGE.startsWith(packageName)) {
+            return true;
+        }
+
+        final int length = packageName.length() - start;
+        for (String scope : packages) {
+            if (scope.regionMatches(0, packageName, start, length) || packageName.startsWith(scope, start)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param packageName a package ending with a dot, "" for the default package
+     * @return true if the classes of the package are in the scope
+     */
+    public boolean acceptPackage(String packageName) {
+        int start = 0;
+        if (packageName.startsWith(VERSIONS_PACKAGE)) {
+            start = packageName.indexOf('.', VERSIONS_PACKAGE.length()) + 1;
+            if (start == 0) return false;
+        }
+
+        for (String scope : packages) {
+            if (packageName.startsWith(scope, start)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param entryName the path of a jar entry, as com/acme/Foo.class
+     */
+    public boolean acceptEntry(String entryName) {
+        int start = 0;
+        if (entryName.startsWith(VERSIONS)) {
+            start = entryName.indexOf('/', VERSIONS.length()) + 1;
+            if (start == 0) return false;
+        }
+
+        for (String path : paths) {
+            if (entryName.startsWith(path, start)) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        return Arrays.equals(packages, ((PackageScope) o).packages);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(packages);
+    }
+
+    @Override
+    public String toString() {
+        return "PackageScope{" +
+                "packages=" + Arrays.toString(packages) +
+                '}';
+    }
+}
@@ -0,0 +1,134 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.filter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Union of PackageFilter, PrefixFilter, ClassFilter and SuffixFilter compiled
+ * into character tries, see {@link Filters#optimize(java.util.List[])}.
+ * <p/>
+ * Prefixes, packages and class names share one trie walked from the start of the
+ * name, suffixes another one walked from its end, so a name is checked in at most
+ * two passes whatever the number of filters.
+ *
+ * @version $Rev$ $Date$
+ */
+public class TrieFilter implements Filter {
+
+    private final List<Filter> filters = new ArrayList<Filter>();
+    private final Node prefixes = new Node();
+    private final Node suffixes = new Node();
+    private boolean hasSuffixes;
+
+    public TrieFilter(Iterable<Filter> filters) {
+        for (Filter filter : filters) {
+            if (filter instanceof PackageFilter) {
+                prefixes.add(((PackageFilter) filter).getPackageName(), false).prefix = true;
+            } else if (filter instanceof PrefixFilter) {
+                prefixes.add(((PrefixFilter) filter).getPrefix(), false).prefix = true;
+            } else if (filter instanceof ClassFilter) {
+                prefixes.add(((ClassFilter) filter).getName(), false).exact = true;
+            } else if (filter instanceof SuffixFilter) {
+                suffixes.add(((SuffixFilter) filter).getSuffix(), true).prefix = true;
+                hasSuffixes = true;
+            } else {
+                throw new IllegalArgumentException("Not a package, prefix, class or suffix filter: " + filter);
+            }
+            this.filters.add(filter);
+        }
+    }
+
+    public static boolean supports(Filter filter) {
+        return filter instanceof PackageFilter || filter instanceof PrefixFilter
+                || filter instanceof ClassFilter || filter instanceof SuffixFilter;
+    }
+
+    public boolean accept(String name) {
+        Node node = prefixes;
+        for (int i = 0; node != null; i++) {
+            if (node.prefix) return true;
+            if (i == name.length()) {
+                if (node.exact) return true;
+                break;
+            }
+            node = node.child(name.charAt(i));
+        }
+
+        if (!hasSuffixes) return false;
+
+        node = suffixes;
+        for (int i = name.length() - 1; node != null; i--) {
+            if (node.prefix) return true;
+            if (i < 0) break;
+            node = node.child(name.charAt(i));
+        }
+        return false;
+    }
+
+    public List<Filter> getFilters() {
+        return filters;
+    }
+
+    @Override
+    public String toString() {
+        return "TrieFilter{" +
+                "filters=" + filters +
+                '}';
+    }
+
+    private static final class Node {
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+        private boolean prefix;
+        private boolean exact;
+
+        private Node add(String value, boolean reverse) {
+            Node node = this;
+            for (int i = 0; i < value.length(); i++) {
+                node = node.getOrCreate(value.charAt(reverse ? value.length() - 1 - i : i));
+            }
+            return node;
+        }
+
+        private Node child(char c) {
+            final int index = Arrays.binarySearch(keys, c);
+            return index < 0 ? null : children[index];
+        }
+
+        private Node getOrCreate(char c) {
+            int index = Arrays.binarySearch(keys, c);
+            if (index >= 0) return children[index];
+
+            // keep the keys sorted for the binary search
+            index = -index - 1;
+            final char[] newKeys = new char[keys.length + 1];
+            final Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, index);
+            System.arraycopy(children, 0, newChildren, 0, index);
+            System.arraycopy(keys, index, newKeys, index + 1, keys.length - index);
+            System.arraycopy(children, index, newChildren, index + 1, children.length - index);
+            newKeys[index] = c;
+            newChildren[index] = new Node();
+            keys = newKeys;
+            children = newChildren;
+            return newChildren[index];
+        }
+    }
+}
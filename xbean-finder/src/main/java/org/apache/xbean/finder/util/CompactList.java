@@ -0,0 +1,201 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.util;
+
+import java.lang.reflect.Array;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Array backed equivalent of {@link SingleLinkedList}: iteration returns the
+ * last added element first and get(index) uses the insertion order.
+ * <p/>
+ * An empty list doesn't allocate any array and each element costs one array
+ * slot instead of an entry object.
+ */
+public class CompactList<E> implements List<E> {
+
+    private static final Object[] EMPTY = new Object[0];
+
+    private Object[] elements = EMPTY;
+    private int size = 0;
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public boolean contains(Object o) {
+        return lastIndex(o) != -1;
+    }
+
+    public Iterator<E> iterator() {
+        return new Values(elements, size);
+    }
+
+    public Object[] toArray() {
+        final Object[] array = new Object[size];
+        return toArray(array);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T[] toArray(T[] a) {
+        if (a.length < size) a = (T[]) Array.newInstance(a.getClass().getComponentType(), size);
+
+        final Object[] array = a;
+        for (int i = 0; i < size; i++) {
+            array[i] = elements[size - 1 - i];
+        }
+        if (array.length > size) array[size] = null;
+
+        return a;
+    }
+
+    public boolean add(E e) {
+        if (size == elements.length) {
+            final Object[] grown = new Object[size < 2 ? size + 2 : size + (size >> 1)];
+            System.arraycopy(elements, 0, grown, 0, size);
+            elements = grown;
+        }
+        elements[size++] = e;
+        return true;
+    }
+
+    public boolean remove(Object o) {
+        final int index = lastIndex(o);
+        if (index == -1) return false;
+
+        System.arraycopy(elements, index + 1, elements, index, size - index - 1);
+        elements[--size] = null;
+        return true;
+    }
+
+    public boolean containsAll(Collection<?> c) {
+        throw new UnsupportedOperationException("containsAll");
+    }
+
+    public boolean addAll(Collection<? extends E> c) {
+        throw new UnsupportedOperationException("addAll");
+    }
+
+    public boolean addAll(int index, Collection<? extends E> c) {
+        throw new UnsupportedOperationException("addAll");
+    }
+
+    public boolean removeAll(Collection<?> c) {
+        throw new UnsupportedOperationException("removeAll");
+    }
+
+    public boolean retainAll(Collection<?> c) {
+        throw new UnsupportedOperationException("retainAll");
+    }
+
+    public void clear() {
+        this.elements = EMPTY;
+        this.size = 0;
+    }
+
+    public E get(int index) {
+        bounds(index);
+        return element(elements, index);
+    }
+
+    public E set(int index, E element) {
+        bounds(index);
+        final E old = element(elements, index);
+        elements[index] = element;
+        return old;
+    }
+
+    public void add(int index, E element) {
+        throw new UnsupportedOperationException("add");
+    }
+
+    public E remove(int index) {
+        throw new UnsupportedOperationException("remove");
+    }
+
+    public int indexOf(Object o) {
+        throw new UnsupportedOperationException("indexOf");
+    }
+
+    public int lastIndexOf(Object o) {
+        throw new UnsupportedOperationException("lastIndexOf");
+    }
+
+    public ListIterator<E> listIterator() {
+        throw new UnsupportedOperationException("listIterator");
+    }
+
+    public ListIterator<E> listIterator(int index) {
+        throw new UnsupportedOperationException("listIterator");
+    }
+
+    public List<E> subList(int fromIndex, int toIndex) {
+        throw new UnsupportedOperationException("subList");
+    }
+
+    private void bounds(int index) {
+        if (index >= size) throw new IndexOutOfBoundsException(index + " [size " + size + "]");
+        if (index < 0) throw new IndexOutOfBoundsException(index + " [size " + size + "]");
+    }
+
+    // only elements added as E are stored
+    @SuppressWarnings("unchecked")
+    private static <E> E element(Object[] elements, int index) {
+        return (E) elements[index];
+    }
+
+    // search in iteration order, i.e. from the last added element
+    private int lastIndex(Object o) {
+        for (int i = size - 1; i >= 0; i--) {
+            if (o == null ? elements[i] == null : o.equals(elements[i])) return i;
+        }
+        return -1;
+    }
+
+    private class Values implements Iterator<E> {
+
+        private final Object[] elements;
+        private int next;
+
+        private Values(Object[] elements, int size) {
+            this.elements = elements;
+            this.next = size - 1;
+        }
+
+        public boolean hasNext() {
+            return next >= 0;
+        }
+
+        public E next() {
+            if (next < 0) throw new NoSuchElementException();
+
+            return element(elements, next--);
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException("remove");
+        }
+    }
+}
@@ -0,0 +1,219 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Thread safe {@link SingleLinkedList}: same ordering, the last added
+ * element is iterated first and get(index) uses the insertion order.
+ * <p/>
+ * add() is lock free, iterators never fail and see the elements added
+ * before they were created. remove() is rare and serialized.
+ */
+public class ConcurrentSingleLinkedList<E> implements List<E> {
+
+    private final AtomicReference<Entry<E>> head = new AtomicReference<Entry<E>>();
+    private final AtomicInteger size = new AtomicInteger();
+
+    private static final class Entry<E> {
+        private volatile E value;
+        private volatile Entry<E> next;
+
+        private Entry(E value, Entry<E> next) {
+            this.value = value;
+            this.next = next;
+        }
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    public boolean isEmpty() {
+        return head.get() == null;
+    }
+
+    public boolean contains(Object o) {
+        for (E e : this) {
+            if (o == null ? e == null : o.equals(e)) return true;
+        }
+        return false;
+    }
+
+    public Iterator<E> iterator() {
+        return new Values<E>(head.get());
+    }
+
+    public Object[] toArray() {
+        return snapshot().toArray();
+    }
+
+    public <T> T[] toArray(T[] a) {
+        return snapshot().toArray(a);
+    }
+
+    public boolean add(E e) {
+        final Entry<E> entry = new Entry<E>(e, null);
+        Entry<E> current;
+        do {
+            current = head.get();
+            entry.next = current;
+        } while (!head.compareAndSet(current, entry));
+        size.incrementAndGet();
+        return true;
+    }
+
+    public synchronized boolean remove(Object o) {
+        retry:
+        while (true) {
+            Entry<E> previous = null;
+            for (Entry<E> current = head.get(); current != null; current = current.next) {
+                if (o == null ? current.value == null : o.equals(current.value)) {
+                    if (previous == null) {
+                        // an element was added meanwhile, current is no longer the head
+                        if (!head.compareAndSet(current, current.next)) continue retry;
+                    } else {
+                        previous.next = current.next;
+                    }
+                    size.decrementAndGet();
+                    return true;
+                }
+                previous = current;
+            }
+            return false;
+        }
+    }
+
+    public boolean containsAll(Collection<?> c) {
+        throw new UnsupportedOperationException("containsAll");
+    }
+
+    public boolean addAll(Collection<? extends E> c) {
+        throw new UnsupportedOperationException("addAll");
+    }
+
+    public boolean addAll(int index, Collection<? extends E> c) {
+        throw new UnsupportedOperationException("addAll");
+    }
+
+    public boolean removeAll(Collection<?> c) {
+        throw new UnsupportedOperationException("removeAll");
+    }
+
+    public boolean retainAll(Collection<?> c) {
+        throw new UnsupportedOperationException("retainAll");
+    }
+
+    public synchronized void clear() {
+        head.set(null);
+        size.set(0);
+    }
+
+    public E get(int index) {
+        return entry(index).value;
+    }
+
+    public E set(int index, E element) {
+        final Entry<E> entry = entry(index);
+        final E old = entry.value;
+        entry.value = element;
+        return old;
+    }
+
+    public void add(int index, E element) {
+        throw new UnsupportedOperationException("add");
+    }
+
+    public E remove(int index) {
+        throw new UnsupportedOperationException("remove");
+    }
+
+    public int indexOf(Object o) {
+        throw new UnsupportedOperationException("indexOf");
+    }
+
+    public int lastIndexOf(Object o) {
+        throw new UnsupportedOperationException("lastIndexOf");
+    }
+
+    public ListIterator<E> listIterator() {
+        throw new UnsupportedOperationException("listIterator");
+    }
+
+    public ListIterator<E> listIterator(int index) {
+        throw new UnsupportedOperationException("listIterator");
+    }
+
+    public List<E> subList(int fromIndex, int toIndex) {
+        throw new UnsupportedOperationException("subList");
+    }
+
+    private Entry<E> entry(int index) {
+        if (index < 0) throw new IndexOutOfBoundsException(index + " [size " + size() + "]");
+
+        // entries are stored from the last added one, count the elements we walk through
+        final List<Entry<E>> entries = new ArrayList<Entry<E>>();
+        for (Entry<E> current = head.get(); current != null; current = current.next) {
+            entries.add(current);
+        }
+        if (index >= entries.size()) throw new IndexOutOfBoundsException(index + " [size " + entries.size() + "]");
+        return entries.get(entries.size() - 1 - index);
+    }
+
+    private List<E> snapshot() {
+        final List<E> values = new ArrayList<E>();
+        for (E e : this) {
+            values.add(e);
+        }
+        return values;
+    }
+
+    private static class Values<E> implements Iterator<E> {
+
+        private Entry<E> current;
+
+        private Values(Entry<E> current) {
+            this.current = current;
+        }
+
+        public boolean hasNext() {
+            return current != null;
+        }
+
+        public E next() {
+            if (current == null) throw new NoSuchElementException();
+
+            final E v = current.value;
+
+            this.current = current.next;
+
+            return v;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException("remove");
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Looks up UTF8 entries in the constant pool of a class file without parsing the rest of it.
+ * <p/>
+ * Annotation descriptors used by a class, its fields, methods and parameters are all
+ * stored as UTF8 constants so a class which doesn't contain the descriptor can't
+ * carry the annotation.
+ */
+public final class ConstantPool {
+
+    private static final int UTF8 = 1;
+    private static final int INTEGER = 3;
+    private static final int FLOAT = 4;
+    private static final int LONG = 5;
+    private static final int DOUBLE = 6;
+    private static final int CLASS = 7;
+    private static final int STRING = 8;
+    private static final int FIELD_REF = 9;
+    private static final int METHOD_REF = 10;
+    private static final int INTERFACE_METHOD_REF = 11;
+    private static final int NAME_AND_TYPE = 12;
+    private static final int METHOD_HANDLE = 15;
+    private static final int METHOD_TYPE = 16;
+    private static final int DYNAMIC = 17;
+    private static final int INVOKE_DYNAMIC = 18;
+    private static final int MODULE = 19;
+    private static final int PACKAGE = 20;
+
+    private ConstantPool() {
+        // no-op
+    }
+
+    /**
+     * @return the modified UTF-8 encoding of the value, as stored in class files
+     */
+    public static byte[] utf8(String value) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(value.length() + 2);
+        try {
+            new DataOutputStream(bytes).writeUTF(value);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(value, e);
+        }
+        final byte[] encoded = bytes.toByteArray();
+        final byte[] utf8 = new byte[encoded.length - 2]; // drop the length prefix
+        System.arraycopy(encoded, 2, utf8, 0, utf8.length);
+        return utf8;
+    }
+
+    /**
+     * @param classFile bytecode of the class
+     * @param values modified UTF-8 encoded values, see {@link #utf8(String)}
+     * @return true if one of the values is a UTF8 constant of the class or if the constant pool can't be parsed
+     */
+    public static boolean containsUtf8(byte[] classFile, byte[][] values) {
+        return containsUtf8(classFile, 0, classFile.length, values);
+    }
+
+    /**
+     * Same as {@link #containsUtf8(byte[], byte[][])} for a class file stored in a part of the array.
+     */
+    public static boolean containsUtf8(byte[] buffer, int start, int length, byte[][] values) {
+        if (length < 10) return true;
+
+        final int end = start + length;
+        final int count = readUnsignedShort(buffer, start + 8);
+        int offset = start + 10;
+        for (int i = 1; i < count; i++) {
+            if (offset >= end) return true;
+
+            switch (buffer[offset]) {
+                case UTF8:
+                    if (offset + 3 > end) return true;
+                    final int utf8Length = readUnsignedShort(buffer, offset + 1);
+                    if (matches(buffer, offset + 3, utf8Length, end, values)) return true;
+                    offset += 3 + utf8Length;
+                    break;
+                case CLASS:
+                case STRING:
+                case METHOD_TYPE:
+                case MODULE:
+                case PACKAGE:
+                    offset += 3;
+                    break;
+                case METHOD_HANDLE:
+                    offset += 4;
+                    break;
+                case INTEGER:
+                case FLOAT:
+                case FIELD_REF:
+                case METHOD_REF:
+                case INTERFACE_METHOD_REF:
+                case NAME_AND_TYPE:
+                case DYNAMIC:
+                case INVOKE_DYNAMIC:
+                    offset += 5;
+                    break;
+                case LONG:
+                case DOUBLE:
+                    offset += 9;
+                    i++; // takes two entries
+                    break;
+                default:
+                    return true; // unknown constant, let the full parser decide
+            }
+        }
+        return false;
+    }
+
+    private static boolean matches(byte[] classFile, int offset, int length, int end, byte[][] values) {
+        if (offset + length > end) return true;
+
+        for (byte[] value : values) {
+            if (value.length != length) continue;
+
+            int i = 0;
+            while (i < length && classFile[offset + i] == value[i]) {
+                i++;
+            }
+            if (i == length) return true;
+        }
+        return false;
+    }
+
+    private static int readUnsignedShort(byte[] bytes, int offset) {
+        return ((bytes[offset] & 0xFF) << 8) | (bytes[offset + 1] & 0xFF);
+    }
+}
@@ -0,0 +1,216 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.util;
+
+import org.apache.xbean.finder.filter.PackageScope;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Lists the class files of a directory tree with a DirectoryStream per directory.
+ * <p/>
+ * The type, size and last modification date of each entry come from a single
+ * attributes read instead of one call per property. Directories only keep their
+ * own name and a link to their parent, the class name is built once per class file.
+ * <p/>
+ * With a pool, each sub-directory is listed by its own fork/join task, which pays off
+ * on deep trees and slow, network backed, file systems. The classes are returned in
+ * the same order whatever the pool: the class files of a directory, then those of
+ * its sub-directories.
+ * <p/>
+ * {@link #getDefault()} is sequential unless the xbean.finder.directory-walker.parallelism
+ * system property is greater than 1.
+ */
+public class DirectoryWalker {
+    private static final DirectoryWalker DEFAULT = newDefault();
+
+    private final ForkJoinPool pool;
+
+    /**
+     * Lists the directories in the calling thread.
+     */
+    public DirectoryWalker() {
+        this(null);
+    }
+
+    /**
+     * @param pool pool listing the sub-directories concurrently, null to list them in the calling thread
+     */
+    public DirectoryWalker(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    public static DirectoryWalker getDefault() {
+        return DEFAULT;
+    }
+
+    private static DirectoryWalker newDefault() {
+        final int parallelism = Integer.getInteger("xbean.finder.directory-walker.parallelism", 1);
+        return parallelism > 1 ? new DirectoryWalker(new ForkJoinPool(parallelism)) : new DirectoryWalker();
+    }
+
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /**
+     * @param dir root of the tree
+     * @param basePackage package of the root, "" for the default package
+     * @param scope packages to list, null for all
+     * @return the class files, META-INF/versions/N/ and inner (Outer$Inner) ones included,
+     * files with another dot in their name excluded
+     */
+    public List<ClassFile> walk(File dir, String basePackage, PackageScope scope) {
+        final Node root = new Node(null, basePackage.length() > 0 ? basePackage + "." : "");
+        final Walk walk = new Walk(dir.toPath(), root, scope, pool != null);
+        return pool != null ? pool.invoke(walk) : walk.compute();
+    }
+
+    /**
+     * A class file found in the tree.
+     */
+    public static final class ClassFile {
+        private final String className;
+        private final long lastModified;
+        private final long size;
+
+        private ClassFile(String className, long lastModified, long size) {
+            this.className = className;
+            this.lastModified = lastModified;
+            this.size = size;
+        }
+
+        public String getClassName() {
+            return className;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        @Override
+        public String toString() {
+            return className;
+        }
+    }
+
+    // a directory, its package name is only materialized when a class name is built
+    private static final class Node {
+        private final Node parent;
+        private final String name;
+        // length of the package name with its trailing dot
+        private final int length;
+
+        private Node(Node parent, String name) {
+            this.parent = parent;
+            this.name = name;
+            this.length = parent == null ? name.length() : parent.length + name.length() + 1;
+        }
+
+        private String name(String simpleName, int simpleLength) {
+            final char[] chars = new char[length + simpleLength];
+            simpleName.getChars(0, simpleLength, chars, length);
+            for (Node node = this; node != null; node = node.parent) {
+                if (node.parent == null) {
+                    node.name.getChars(0, node.name.length(), chars, 0);
+                } else {
+                    final int start = node.parent.length;
+                    node.name.getChars(0, node.name.length(), chars, start);
+                    chars[start + node.name.length()] = '.';
+                }
+            }
+            return new String(chars);
+        }
+    }
+
+    private static final class Walk extends RecursiveTask<List<ClassFile>> {
+        private static final long serialVersionUID = 1L;
+
+        private final Path dir;
+        private final Node node;
+        private final PackageScope scope;
+        private final boolean fork;
+
+        private Walk(Path dir, Node node, PackageScope scope, boolean fork) {
+            this.dir = dir;
+            this.node = node;
+            this.scope = scope;
+            this.fork = fork;
+        }
+
+        @Override
+        protected List<ClassFile> compute() {
+            boolean inScope = true;
+            if (scope != null) {
+                final String packageName = node.name("", 0);
+                if (!scope.enterPackage(packageName)) return Collections.emptyList();
+                inScope = scope.acceptPackage(packageName);
+            }
+
+            final List<ClassFile> classes = new ArrayList<ClassFile>();
+            final List<Walk> directories = new ArrayList<Walk>();
+            try {
+                final DirectoryStream<Path> stream = java.nio.file.Files.newDirectoryStream(dir);
+                try {
+                    for (Path path : stream) {
+                        final BasicFileAttributes attributes;
+                        try {
+                            attributes = java.nio.file.Files.readAttributes(path, BasicFileAttributes.class);
+                        } catch (IOException e) {
+                            continue; // deleted meanwhile or broken link
+                        }
+
+                        final String name = path.getFileName().toString();
+                        if (attributes.isDirectory()) {
+                            final Walk walk = new Walk(path, new Node(node, name), scope, fork);
+                            if (fork) {
+                                walk.fork();
+                            }
+                            directories.add(walk);
+                        } else if (inScope && name.endsWith(".class")) {
+                            final int length = name.length() - ".class".length();
+                            if (name.lastIndexOf('.', length - 1) >= 0) continue;
+                            classes.add(new ClassFile(node.name(name, length), attributes.lastModifiedTime().toMillis(), attributes.size()));
+                        }
+                    }
+                } finally {
+                    stream.close();
+                }
+            } catch (IOException e) {
+                // not listable, as File.listFiles() returning null
+            }
+
+            for (Walk walk : directories) {
+                classes.addAll(fork ? walk.join() : walk.compute());
+            }
+            return classes;
+        }
+    }
+}
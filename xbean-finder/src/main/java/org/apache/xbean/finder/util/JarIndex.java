@@ -0,0 +1,134 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Sorted entry names of a jar, read once from its central directory.
+ * <p/>
+ * Lookups and prefix listings are binary searches in memory instead of opening
+ * the jar again. The indexes are shared by the JVM and softly referenced, one is
+ * read again when the size or last modification date of its jar changes.
+ */
+public final class JarIndex {
+
+    private static final ConcurrentMap<File, SoftReference<JarIndex>> INDEXES = new ConcurrentHashMap<File, SoftReference<JarIndex>>();
+
+    private final long lastModified;
+    private final long length;
+    private final String[] names;
+
+    private JarIndex(long lastModified, long length, String[] names) {
+        this.lastModified = lastModified;
+        this.length = length;
+        this.names = names;
+    }
+
+    /**
+     * @return the up to date index of the jar
+     * @throws IOException if the file is not a readable jar
+     */
+    public static JarIndex of(File jar) throws IOException {
+        final long lastModified = jar.lastModified();
+        final long length = jar.length();
+
+        final SoftReference<JarIndex> reference = INDEXES.get(jar);
+        final JarIndex cached = reference == null ? null : reference.get();
+        if (cached != null && cached.lastModified == lastModified && cached.length == length) {
+            return cached;
+        }
+
+        final JarIndex index = read(jar, lastModified, length);
+        INDEXES.put(jar, new SoftReference<JarIndex>(index));
+        return index;
+    }
+
+    public static void invalidate(File jar) {
+        INDEXES.remove(jar);
+    }
+
+    public static void clear() {
+        INDEXES.clear();
+    }
+
+    private static JarIndex read(File jar, long lastModified, long length) throws IOException {
+        final ZipFile zip = new ZipFile(jar);
+        try {
+            final List<String> names = new ArrayList<String>(zip.size());
+            final Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                names.add(entries.nextElement().getName());
+            }
+            final String[] sorted = names.toArray(new String[names.size()]);
+            Arrays.sort(sorted);
+            return new JarIndex(lastModified, length, sorted);
+        } finally {
+            zip.close();
+        }
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    /**
+     * As {@link java.util.jar.JarFile#getEntry(String)} only the entries of the jar match,
+     * a name without a trailing / matching its directory entry too. A directory only
+     * implied by its content doesn't match.
+     */
+    public boolean contains(String name) {
+        if (Arrays.binarySearch(names, name) >= 0) return true;
+        return !name.endsWith("/") && Arrays.binarySearch(names, name + "/") >= 0;
+    }
+
+    /**
+     * @return the files directly in the directory, without the directory prefix
+     */
+    public List<String> list(String directory) {
+        if (directory.length() > 0 && !directory.endsWith("/")) {
+            directory += "/";
+        }
+
+        List<String> list = null;
+        for (int i = lowerBound(directory); i < names.length && names[i].startsWith(directory); i++) {
+            final String name = names[i];
+            if (name.length() == directory.length() || name.indexOf('/', directory.length()) >= 0) continue;
+            if (list == null) {
+                list = new ArrayList<String>();
+            }
+            list.add(name.substring(directory.length()));
+        }
+        return list == null ? Collections.<String>emptyList() : list;
+    }
+
+    private int lowerBound(String prefix) {
+        final int i = Arrays.binarySearch(names, prefix);
+        return i >= 0 ? i : -i - 1;
+    }
+}
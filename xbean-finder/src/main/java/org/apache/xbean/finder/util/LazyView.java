@@ -0,0 +1,64 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.util;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterable converting the elements of another one while it is iterated,
+ * nothing is computed or copied up front.
+ */
+public abstract class LazyView<F, T> implements Iterable<T> {
+
+    private final Iterable<? extends F> source;
+
+    protected LazyView(Iterable<? extends F> source) {
+        this.source = source;
+    }
+
+    /**
+     * @return the element to return for this source element or null to skip it
+     */
+    protected abstract T map(F element);
+
+    public Iterator<T> iterator() {
+        final Iterator<? extends F> iterator = source.iterator();
+        return new Iterator<T>() {
+            private T next;
+
+            public boolean hasNext() {
+                while (next == null && iterator.hasNext()) {
+                    next = map(iterator.next());
+                }
+                return next != null;
+            }
+
+            public T next() {
+                if (!hasNext()) throw new NoSuchElementException();
+
+                final T value = next;
+                next = null;
+                return value;
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException("remove");
+            }
+        };
+    }
+}
@@ -28,12 +28,12 @@ public class SingleLinkedList<E> implements List<E> {
     private Entry<E> entry;
     private int size = 0;
 
-    private class Entry<E> {
+    private static class Entry<E> {
 
         private E value;
-        private Entry next;
+        private Entry<E> next;
 
-        private Entry(E value, Entry next) {
+        private Entry(E value, Entry<E> next) {
             this.value = value;
             this.next = next;
         }
@@ -85,13 +85,27 @@ public class SingleLinkedList<E> implements List<E> {
     }
 
     public boolean add(E e) {
-        this.entry = new Entry(e, this.entry); 
+        this.entry = new Entry<E>(e, this.entry);
         size++;
         return true;
     }
 
     public boolean remove(Object o) {
-        throw new UnsupportedOperationException("remove");
+        Entry<E> previous = null;
+        for (Entry<E> current = this.entry; current != null; current = current.next) {
+            if (o == null ? current.value == null : o.equals(current.value)) {
+                if (previous == null) {
+                    this.entry = current.next;
+                } else {
+                    previous.next = current.next;
+                }
+                size--;
+                return true;
+            }
+            previous = current;
+        }
+
+        return false;
     }
 
     public boolean containsAll(Collection<?> c) {
@@ -0,0 +1,43 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Canonical instances of the names and descriptors read from the bytecode.
+ * <p/>
+ * The same class names, super types, annotation types and descriptors show up
+ * in many class files, interning them keeps one String per distinct value.
+ * Unlike {@link String#intern()} the values are released with the table.
+ */
+public class SymbolTable {
+
+    private final ConcurrentMap<String, String> symbols = new ConcurrentHashMap<String, String>();
+
+    public String intern(String value) {
+        if (value == null) return null;
+
+        final String symbol = symbols.putIfAbsent(value, value);
+        return symbol != null ? symbol : value;
+    }
+
+    public int size() {
+        return symbols.size();
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.acme.bar.FullyAnnotated;
+import org.acme.bar.ParamB;
+import org.acme.foo.Blue;
+import org.acme.foo.Color;
+import org.acme.foo.FamilyHalloween;
+import org.acme.foo.Green;
+import org.acme.foo.Halloween;
+import org.acme.foo.Holiday;
+import org.acme.foo.Red;
+import org.apache.xbean.finder.archive.Archives;
+import org.apache.xbean.finder.archive.ClassesArchive;
+import org.apache.xbean.finder.archive.FileArchive;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AnnotationFinderUpdateTest {
+
+    private File classes;
+    private AnnotationFinder finder;
+
+    @Before
+    public void setUp() throws Exception {
+        classes = Archives.fileArchive(new Class[]{Blue.class, Green.class, Red.class, Halloween.class, FamilyHalloween.class});
+        final ClassLoader loader = new URLClassLoader(new URL[]{classes.toURI().toURL()});
+        finder = new AnnotationFinder(new FileArchive(loader, classes)).link();
+    }
+
+    @Test
+    public void noChange() {
+        assertEquals(Collections.<String>emptyList(), finder.update());
+        assertEquals(3, finder.findAnnotatedClasses(Color.class).size());
+    }
+
+    @Test
+    public void removed() {
+        assertTrue(file(Green.class).delete());
+
+        assertEquals(Arrays.asList(Green.class.getName()), finder.update());
+
+        final List<Class<?>> colors = finder.findAnnotatedClasses(Color.class);
+        assertEquals(2, colors.size());
+        assertTrue(colors.contains(Blue.class));
+        assertTrue(colors.contains(Red.class));
+        assertTrue(!finder.getAnnotatedClassNames().contains(Green.class.getName()));
+    }
+
+    @Test
+    public void added() throws Exception {
+        final File source = new File(Archives.fileArchive(new Class[]{Red.Pink.class}), path(Red.Pink.class));
+        assertTrue(source.renameTo(file(Red.Pink.class)));
+
+        assertEquals(Arrays.asList(Red.Pink.class.getName()), finder.update());
+
+        final List<Class<?>> colors = finder.findAnnotatedClasses(Color.class);
+        assertEquals(4, colors.size());
+        assertTrue(colors.contains(Red.Pink.class));
+        assertTrue(finder.getAnnotatedClassNames().contains(Red.Pink.class.getName()));
+    }
+
+    @Test
+    public void modified() {
+        final File halloween = file(Halloween.class);
+        assertTrue(halloween.setLastModified(halloween.lastModified() - 10000));
+
+        assertEquals(Arrays.asList(Halloween.class.getName()), finder.update());
+
+        assertEquals(1, finder.findAnnotatedClasses(Holiday.class).size());
+        assertEquals(3, finder.findAnnotatedClasses(Color.class).size());
+        // FamilyHalloween is linked to the new Halloween info
+        assertEquals(Arrays.asList(FamilyHalloween.class), finder.findSubclasses(Halloween.class));
+    }
+
+    @Test
+    public void subclassRemovedThenAdded() throws Exception {
+        final File family = file(FamilyHalloween.class);
+        final File moved = new File(classes.getParentFile(), family.getName());
+        assertTrue(family.renameTo(moved));
+
+        assertEquals(Arrays.asList(FamilyHalloween.class.getName()), finder.update());
+        assertTrue(finder.findSubclasses(Halloween.class).isEmpty());
+
+        assertTrue(moved.renameTo(family));
+
+        assertEquals(Arrays.asList(FamilyHalloween.class.getName()), finder.update());
+        assertEquals(Arrays.asList(FamilyHalloween.class), finder.findSubclasses(Halloween.class));
+    }
+
+    @Test
+    public void parameterAnnotations() throws Exception {
+        final File parameters = Archives.fileArchive(new Class[]{FullyAnnotated.class});
+        final ClassLoader loader = new URLClassLoader(new URL[]{parameters.toURI().toURL()});
+        final AnnotationFinder finder = new AnnotationFinder(new FileArchive(loader, parameters),
+            new AnnotationFinder.Options().checkRuntimeAnnotation(false));
+        assertEquals(1, finder.findAnnotatedMethodParameters(ParamB.class).size());
+
+        final File fullyAnnotated = new File(parameters, path(FullyAnnotated.class));
+        assertTrue(fullyAnnotated.setLastModified(fullyAnnotated.lastModified() - 10000));
+
+        assertEquals(Arrays.asList(FullyAnnotated.class.getName()), finder.update());
+        assertEquals(1, finder.findAnnotatedMethodParameters(ParamB.class).size());
+
+        assertTrue(fullyAnnotated.delete());
+
+        assertEquals(Arrays.asList(FullyAnnotated.class.getName()), finder.update());
+        assertTrue(finder.findAnnotatedMethodParameters(ParamB.class).isEmpty());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void notAFileArchive() {
+        new AnnotationFinder(new ClassesArchive(Red.class)).update();
+    }
+
+    private File file(final Class<?> clazz) {
+        return new File(classes, path(clazz));
+    }
+
+    private static String path(final Class<?> clazz) {
+        return clazz.getName().replace('.', '/') + ".class";
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.apache.xbean.finder.archive.Archives;
+import org.apache.xbean.finder.archive.JarArchive;
+import org.junit.Test;
+
+import java.io.File;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class AnnotationValuesTest {
+
+    private static final Class<?>[] CLASSES = {Route.class, Header.class, Users.class, Orders.class};
+
+    @Test
+    public void values() throws Exception {
+        final AnnotationFinder finder = finder(null);
+
+        final AnnotationFinder.ClassInfo users = finder.classInfos.get(Users.class.getName());
+        final AnnotationFinder.AnnotationInfo route = finder.getAnnotationInfo(users, Route.class.getName());
+        assertEquals("/users", route.getValue("value"));
+        assertEquals(Arrays.asList("GET", "POST"), route.getValue("methods"));
+        assertEquals(ElementType.TYPE.name(), route.getValue("target"));
+        assertEquals(String.class.getName(), route.getValue("produces"));
+        assertEquals(Arrays.<Object>asList(1, 2), route.getValue("versions"));
+        assertEquals(10L, route.getValue("timeout"));
+        assertEquals(true, route.getValue("secured"));
+        assertNull(route.getValue("priority")); // defaults are not in the bytecode
+
+        final AnnotationFinder.AnnotationInfo header = (AnnotationFinder.AnnotationInfo) route.getValue("header");
+        assertEquals(Header.class.getName(), header.getName());
+        assertEquals("X-Users", header.getValue("value"));
+    }
+
+    @Test
+    public void filterWithoutLoading() throws Exception {
+        final AnnotationFinder finder = finder(null);
+        assertFilters(finder);
+    }
+
+    @Test
+    public void cachedValues() throws Exception {
+        final File directory = File.createTempFile("values", "cache");
+        assertTrue(directory.delete());
+        final ScanIndexCache cache = new ScanIndexCache(directory);
+
+        finder(cache);
+        assertFilters(finder(cache));
+    }
+
+    private static void assertFilters(final AnnotationFinder finder) {
+        assertEquals(Arrays.asList(Users.class.getName()), classNames(finder.findAnnotatedClassInfos(Route.class.getName(), "value", "/users")));
+        assertEquals(Arrays.asList(Users.class.getName()), classNames(finder.findAnnotatedClassInfos(Route.class.getName(), "methods", "POST")));
+        assertEquals(2, classNames(finder.findAnnotatedClassInfos(Route.class.getName(), "methods", "GET")).size());
+        assertFalse(finder.findAnnotatedClassInfos(Route.class.getName(), "value", "/unknown").iterator().hasNext());
+
+        final List<String> methods = new ArrayList<String>();
+        for (AnnotationFinder.MethodInfo method : finder.findAnnotatedMethodInfos(Route.class.getName(), "value", "/orders/{id}")) {
+            methods.add(method.getName());
+        }
+        assertEquals(Arrays.asList("order"), methods);
+
+        final List<String> fields = new ArrayList<String>();
+        for (AnnotationFinder.FieldInfo field : finder.findAnnotatedFieldInfos(Header.class.getName(), "value", "X-Trace")) {
+            fields.add(field.getName());
+        }
+        assertEquals(Arrays.asList("trace"), fields);
+
+        int parameters = 0;
+        for (AnnotationFinder.Info info : finder.findAnnotatedInfos(Header.class.getName(), "value", "X-Tenant")) {
+            assertTrue(info instanceof AnnotationFinder.ParameterInfo);
+            parameters++;
+        }
+        assertEquals(1, parameters);
+    }
+
+    private static List<String> classNames(final Iterable<AnnotationFinder.ClassInfo> infos) {
+        final List<String> names = new ArrayList<String>();
+        for (AnnotationFinder.ClassInfo info : infos) {
+            names.add(info.getName());
+        }
+        return names;
+    }
+
+    private static AnnotationFinder finder(final ScanIndexCache cache) throws Exception {
+        final File jar = Archives.jarArchive(CLASSES);
+        final URL url = new URL("jar:" + jar.toURI().toURL() + "!/");
+        final ClassLoader loader = new URLClassLoader(new URL[]{url}, null) {
+            @Override
+            protected Class<?> loadClass(final String name, final boolean resolve) throws ClassNotFoundException {
+                throw new AssertionError("loaded " + name);
+            }
+        };
+        if (cache == null) {
+            return new AnnotationFinder(new JarArchive(loader, url));
+        }
+        return new AnnotationFinder(new JarArchive(loader, url), new AnnotationFinder.Options().indexes(true).cache(cache));
+    }
+
+    @Retention(RetentionPolicy.RUNTIME)
+    public static @interface Route {
+        String value();
+
+        String[] methods() default {};
+
+        ElementType target() default ElementType.METHOD;
+
+        Class<?> produces() default Object.class;
+
+        int[] versions() default {};
+
+        long timeout() default 0;
+
+        boolean secured() default false;
+
+        int priority() default 0;
+
+        Header header() default @Header("");
+    }
+
+    @Retention(RetentionPolicy.RUNTIME)
+    public static @interface Header {
+        String value();
+    }
+
+    @Route(value = "/users", methods = {"GET", "POST"}, target = ElementType.TYPE, produces = String.class,
+            versions = {1, 2}, timeout = 10, secured = true, header = @Header("X-Users"))
+    public static class Users {
+    }
+
+    @Route(value = "/orders", methods = "GET")
+    public static class Orders {
+        @Header("X-Trace")
+        private String trace;
+
+        @Route("/orders/{id}")
+        public Object order(@Header("X-Tenant") final String tenant) {
+            return null;
+        }
+
+        @Route("/orders/all")
+        public Object orders() {
+            return null;
+        }
+    }
+}
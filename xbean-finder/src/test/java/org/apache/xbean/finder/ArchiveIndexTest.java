@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.acme.foo.Blue;
+import org.acme.foo.Color;
+import org.acme.foo.Green;
+import org.acme.foo.Red;
+import org.apache.xbean.finder.archive.Archives;
+import org.apache.xbean.finder.archive.FileArchive;
+import org.apache.xbean.finder.archive.JarArchive;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ArchiveIndexTest {
+
+    @Test
+    public void readIndexInsteadOfBytecode() throws Exception {
+        final File classes = Archives.fileArchive(new Class[]{Blue.class, Green.class, Red.class});
+        final ClassLoader loader = new URLClassLoader(new URL[]{classes.toURI().toURL()});
+        ArchiveIndex.write(new FileArchive(loader, classes), new File(classes, ArchiveIndex.LOCATION));
+
+        // same size and date, only the index can still tell Red is a Color
+        final File red = new File(classes, Red.class.getName().replace('.', '/') + ".class");
+        final long lastModified = red.lastModified();
+        final FileOutputStream out = new FileOutputStream(red);
+        out.write(new byte[(int) red.length()]);
+        out.close();
+        assertTrue(red.setLastModified(lastModified));
+
+        final AnnotationFinder finder = new AnnotationFinder(new FileArchive(loader, classes), new AnnotationFinder.Options().checkRuntimeAnnotation(false).indexes(true));
+        final List<Class<?>> colors = finder.findAnnotatedClasses(Color.class);
+        assertEquals(3, colors.size());
+        assertTrue(colors.contains(Blue.class));
+        assertTrue(colors.contains(Green.class));
+        assertTrue(colors.contains(Red.class));
+    }
+
+    @Test
+    public void staleDirectoryIndex() throws Exception {
+        final File classes = Archives.fileArchive(new Class[]{Blue.class, Green.class, Red.class});
+        final ClassLoader loader = new URLClassLoader(new URL[]{classes.toURI().toURL()});
+        ArchiveIndex.write(new FileArchive(loader, classes), new File(classes, ArchiveIndex.LOCATION));
+
+        // compiled after the index was written, the directory is scanned again
+        final File pink = new File(classes, Red.Pink.class.getName().replace('.', '/') + ".class");
+        assertTrue(pink.getParentFile().isDirectory());
+        copy(Red.Pink.class, pink);
+
+        final AnnotationFinder finder = new AnnotationFinder(new FileArchive(loader, classes), new AnnotationFinder.Options().checkRuntimeAnnotation(false).indexes(true));
+        final List<Class<?>> colors = finder.findAnnotatedClasses(Color.class);
+        assertEquals(4, colors.size());
+        assertTrue(colors.contains(Red.Pink.class));
+    }
+
+    @Test
+    public void jarWithIndex() throws Exception {
+        final File classes = Archives.fileArchive(new Class[]{Blue.class, Green.class, Red.class});
+        final ClassLoader loader = new URLClassLoader(new URL[]{classes.toURI().toURL()});
+        final ByteArrayOutputStream index = new ByteArrayOutputStream();
+        ArchiveIndex.write(new FileArchive(loader, classes), index);
+
+        // the index can't be told apart from the bytecode but by Red, empty in the jar
+        final File jar = jar(index.toByteArray(), new Class[]{Blue.class, Green.class}, Red.class);
+
+        final URL url = new URL("jar:" + jar.toURI().toURL() + "!/");
+        final AnnotationFinder finder = new AnnotationFinder(new JarArchive(new URLClassLoader(new URL[]{url}), url), new AnnotationFinder.Options().checkRuntimeAnnotation(false).indexes(true));
+        assertEquals(3, finder.findAnnotatedClasses(Color.class).size());
+    }
+
+    @Test
+    public void jarWithIndexOfOtherClasses() throws Exception {
+        final File classes = Archives.fileArchive(new Class[]{Blue.class, Green.class});
+        final ClassLoader loader = new URLClassLoader(new URL[]{classes.toURI().toURL()});
+        final ByteArrayOutputStream index = new ByteArrayOutputStream();
+        ArchiveIndex.write(new FileArchive(loader, classes), index);
+
+        // a shaded jar merging Red and the classes of the index, the jar is scanned
+        final File jar = jar(index.toByteArray(), new Class[]{Blue.class, Green.class, Red.class});
+
+        final URL url = new URL("jar:" + jar.toURI().toURL() + "!/");
+        final AnnotationFinder finder = new AnnotationFinder(new JarArchive(new URLClassLoader(new URL[]{url}), url), new AnnotationFinder.Options().checkRuntimeAnnotation(false).indexes(true));
+        assertEquals(3, finder.findAnnotatedClasses(Color.class).size());
+        assertTrue(finder.findAnnotatedClasses(Color.class).contains(Red.class));
+    }
+
+    @Test
+    public void scanWithoutIndex() throws Exception {
+        final File classes = Archives.fileArchive(new Class[]{Blue.class, Green.class, Red.class});
+        final ClassLoader loader = new URLClassLoader(new URL[]{classes.toURI().toURL()});
+        final AnnotationFinder finder = new AnnotationFinder(new FileArchive(loader, classes), new AnnotationFinder.Options().checkRuntimeAnnotation(false).indexes(true));
+        assertEquals(3, finder.findAnnotatedClasses(Color.class).size());
+    }
+
+    private File jar(final byte[] index, final Class<?>[] classes, final Class<?>... empty) throws Exception {
+        final File jar = File.createTempFile("indexed", ".jar");
+        final ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar));
+        for (Class<?> clazz : classes) {
+            final String name = clazz.getName().replace('.', '/') + ".class";
+            out.putNextEntry(new ZipEntry(name));
+            final InputStream in = getClass().getClassLoader().getResourceAsStream(name);
+            final byte[] buffer = new byte[1024];
+            for (int length = in.read(buffer); length != -1; length = in.read(buffer)) {
+                out.write(buffer, 0, length);
+            }
+            in.close();
+        }
+        for (Class<?> clazz : empty) {
+            out.putNextEntry(new ZipEntry(clazz.getName().replace('.', '/') + ".class"));
+        }
+        out.putNextEntry(new ZipEntry(ArchiveIndex.LOCATION));
+        out.write(index);
+        out.close();
+        return jar;
+    }
+
+    private static void copy(final Class<?> clazz, final File to) throws Exception {
+        final File source = Archives.fileArchive(new Class[]{clazz});
+        final File file = new File(source, clazz.getName().replace('.', '/') + ".class");
+        assertTrue(file.renameTo(to));
+    }
+}
@@ -23,8 +23,14 @@ import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
 import java.util.Enumeration;
 import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static java.util.Collections.enumeration;
 import static java.util.Collections.singleton;
@@ -86,6 +92,115 @@ public class ClassLoadersTest {
         assertEquals(1, ClassLoaders.findUrls(loader).size());
     }
 
+    @Test
+    public void notCachedByDefault() throws IOException {
+        final AtomicInteger calls = new AtomicInteger();
+        final URL a = new File("target/ClassLoadersTest/notCachedByDefault/a").toURI().toURL();
+        final URL b = new File("target/ClassLoadersTest/notCachedByDefault/b").toURI().toURL();
+        final URLClassLoader loader = new URLClassLoader(new URL[]{a, b}, null) {
+            @Override
+            public URL[] getURLs() {
+                calls.incrementAndGet();
+                return super.getURLs();
+            }
+        };
+
+        assertEquals(2, ClassLoaders.findUrls(loader).size());
+        assertEquals(2, ClassLoaders.findUrls(loader).size());
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void cached() throws IOException {
+        final URL a = new File("target/ClassLoadersTest/cached/a").toURI().toURL();
+        final URL b = new File("target/ClassLoadersTest/cached/b").toURI().toURL();
+        final URL c = new File("target/ClassLoadersTest/cached/c").toURI().toURL();
+        final OpenURLClassLoader parent = new OpenURLClassLoader(new URL[]{a}, null);
+        final URLClassLoader loader = new URLClassLoader(new URL[]{b}, parent);
+
+        System.setProperty("xbean.finder.classloaders.cache", "true");
+        try {
+            final Set<URL> urls = ClassLoaders.findUrls(loader);
+            assertTrue(urls.contains(a));
+            assertTrue(urls.contains(b));
+
+            urls.clear(); // callers get their own copy
+            assertEquals(2, ClassLoaders.findUrls(loader).size());
+
+            parent.addURL(c); // outdates the parent and the child
+            final Set<URL> updated = ClassLoaders.findUrls(loader);
+            assertEquals(3, updated.size());
+            assertTrue(updated.contains(c));
+            assertEquals(2, ClassLoaders.findUrls(parent).size());
+        } finally {
+            System.clearProperty("xbean.finder.classloaders.cache");
+            ClassLoaders.invalidate(loader);
+            ClassLoaders.invalidate(parent);
+        }
+    }
+
+    @Test
+    public void customHandlersAreNotCached() throws IOException {
+        final URL a = new File("target/ClassLoadersTest/customHandlersAreNotCached/a").toURI().toURL();
+        final URL b = new URL(a, "b", new URLStreamHandler() {
+            @Override
+            protected URLConnection openConnection(final URL u) throws IOException {
+                return new URLConnection(u) {
+                    @Override
+                    public void connect() throws IOException {
+                        // no-op
+                    }
+                };
+            }
+        });
+        final URLClassLoader loader = new URLClassLoader(new URL[]{a, b}, null);
+
+        System.setProperty("xbean.finder.classloaders.cache", "true");
+        try {
+            ClassLoaders.findUrls(loader);
+            boolean found = false;
+            for (final URL url : ClassLoaders.findUrls(loader)) {
+                found |= url == b; // a cached url would be a copy without the handler
+            }
+            assertTrue(found);
+        } finally {
+            System.clearProperty("xbean.finder.classloaders.cache");
+            ClassLoaders.invalidate(loader);
+        }
+    }
+
+    @Test
+    public void parallel() throws Exception {
+        final URL a = new File("target/ClassLoadersTest/parallel/a").toURI().toURL();
+        final URL b = new File("target/ClassLoadersTest/parallel/b").toURI().toURL();
+        final ClassLoader parent = new URLClassLoader(new URL[]{a}, getClass().getClassLoader());
+        final ClassLoader child = new URLClassLoader(new URL[]{b}, parent);
+
+        final Set<URL> expected = ClassLoaders.findUrls(child);
+        ClassLoaders.invalidate(child);
+        ClassLoaders.invalidate(parent);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            assertEquals(expected, ClassLoaders.findUrls(child, executor));
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(expected.contains(a));
+        assertTrue(expected.contains(b));
+    }
+
+    private static class OpenURLClassLoader extends URLClassLoader {
+        private OpenURLClassLoader(final URL[] urls, final ClassLoader parent) {
+            super(urls, parent);
+        }
+
+        @Override
+        public void addURL(final URL url) {
+            super.addURL(url);
+        }
+    }
+
     public static class EmptyEnumeration<E> implements Enumeration<E> {
         public static final EmptyEnumeration EMPTY_ENUMERATION
             = new EmptyEnumeration();
@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.acme.foo.Blue;
+import org.acme.foo.Color;
+import org.acme.foo.FamilyHalloween;
+import org.acme.foo.FunnyFamilyHalloween;
+import org.acme.foo.Green;
+import org.acme.foo.Halloween;
+import org.acme.foo.Holiday;
+import org.acme.foo.Primary;
+import org.acme.foo.Red;
+import org.acme.foo.Thanksgiving;
+import org.apache.xbean.finder.archive.Archives;
+import org.apache.xbean.finder.archive.ClassesArchive;
+import org.apache.xbean.finder.archive.JarArchive;
+import org.junit.Test;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ConcurrentAnnotationFinderTest {
+
+    private static final Class<?>[] CLASSES = {
+            Primary.class, Color.class, Blue.class, Green.class, Green.Emerald.class, Red.class,
+            Holiday.class, Halloween.class, FamilyHalloween.class, FunnyFamilyHalloween.class, Thanksgiving.class};
+
+    @Test
+    public void concurrentQueries() throws Exception {
+        final AnnotationFinder expected = new AnnotationFinder(new ClassesArchive(CLASSES)).link();
+        final AnnotationFinder finder = new ConcurrentAnnotationFinder(new ClassesArchive(CLASSES)).link();
+
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+            for (int i = 0; i < 64; i++) {
+                results.add(executor.submit(new Callable<Boolean>() {
+                    public Boolean call() throws Exception {
+                        assertEquals(set(expected.findAnnotatedClasses(Color.class)), set(finder.findAnnotatedClasses(Color.class)));
+                        assertEquals(set(expected.findImplementations(Primary.class)), set(finder.findImplementations(Primary.class)));
+                        assertEquals(set(expected.findSubclasses(Halloween.class)), set(finder.findSubclasses(Halloween.class)));
+                        assertEquals(set(expected.findInheritedAnnotatedClasses(Holiday.class)), set(finder.findInheritedAnnotatedClasses(Holiday.class)));
+                        return true;
+                    }
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+
+    @Test
+    public void lazyLinkingWhileQuerying() throws Exception {
+        final AnnotationFinder expected = new AnnotationFinder(new ClassesArchive(CLASSES)).link();
+
+        for (int round = 0; round < 10; round++) {
+            final AnnotationFinder finder = new ConcurrentAnnotationFinder(new ClassesArchive(CLASSES));
+
+            final ExecutorService executor = Executors.newFixedThreadPool(4);
+            try {
+                final Future<?> linking = executor.submit(new Runnable() {
+                    public void run() {
+                        finder.link();
+                    }
+                });
+                final Future<Set<Class<?>>> colors = executor.submit(new Callable<Set<Class<?>>>() {
+                    public Set<Class<?>> call() throws Exception {
+                        return set(finder.findAnnotatedClasses(Color.class));
+                    }
+                });
+                linking.get();
+
+                assertEquals(set(expected.findAnnotatedClasses(Color.class)), colors.get());
+                assertEquals(set(expected.findImplementations(Primary.class)), set(finder.findImplementations(Primary.class)));
+                assertEquals(set(expected.findSubclasses(Halloween.class)), set(finder.findSubclasses(Halloween.class)));
+            } finally {
+                executor.shutdown();
+                executor.awaitTermination(1, TimeUnit.MINUTES);
+            }
+        }
+    }
+
+    @Test
+    public void classesNotLoadedByThread() throws Exception {
+        final ClassLoader loader = new ClassLoader(getClass().getClassLoader()) {
+            @Override
+            protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+                if (Red.class.getName().equals(name)) throw new ClassNotFoundException(name);
+                return super.loadClass(name, resolve);
+            }
+        };
+        final URL jar = new URL("jar:" + Archives.jarArchive(Red.class, Blue.class).toURI().toURL() + "!/");
+        final AnnotationFinder finder = new ConcurrentAnnotationFinder(new JarArchive(loader, jar));
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            assertEquals(Arrays.asList(Blue.class), executor.submit(new Callable<List<Class<?>>>() {
+                public List<Class<?>> call() throws Exception {
+                    return finder.findAnnotatedClasses(Color.class);
+                }
+            }).get());
+
+            // a query of another thread doesn't clear the failures of the first one
+            assertTrue(finder.findAnnotatedClasses(Holiday.class).isEmpty());
+            assertTrue(finder.getClassesNotLoaded().isEmpty());
+
+            assertEquals(Collections.singleton(Red.class.getName()), executor.submit(new Callable<Set<String>>() {
+                public Set<String> call() throws Exception {
+                    return new HashSet<String>(finder.getClassesNotLoaded());
+                }
+            }).get());
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+
+    private static Set<Class<?>> set(List<? extends Class<?>> classes) {
+        return new HashSet<Class<?>>(classes);
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.acme.foo.Color;
+import org.acme.foo.Green;
+import org.acme.foo.Red;
+import org.apache.xbean.finder.archive.Archive;
+import org.apache.xbean.finder.archive.Archives;
+import org.apache.xbean.finder.archive.ClassesArchive;
+import org.apache.xbean.finder.archive.CompositeArchive;
+import org.apache.xbean.finder.archive.JarArchive;
+import org.apache.xbean.finder.archive.MappedJarArchive;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class DuplicateClassTest {
+
+    @Test
+    public void identicalCopies() throws Exception {
+        final File jar = Archives.jarArchive(Red.class, Green.class);
+        final URL url = new URL("jar:" + jar.toURI().toURL() + "!/");
+        final Archive first = new JarArchive(new URLClassLoader(new URL[]{url}), url);
+        final Archive second = new MappedJarArchive(new URLClassLoader(new URL[]{url}), url);
+        final Archive third = new ClassesArchive(Red.class); // checksum computed from the bytecode
+        final Archive archive = new CompositeArchive(first, second, third);
+
+        final AnnotationFinder plain = new AnnotationFinder(archive);
+        assertEquals(0, plain.getDuplicates().size());
+
+        final AnnotationFinder finder = deduplicating(archive, null);
+        final List<DuplicateClass> duplicates = finder.getDuplicates();
+        assertEquals(3, duplicates.size());
+        for (DuplicateClass duplicate : duplicates) {
+            assertTrue(duplicate.toString(), duplicate.isIdentical());
+            assertSame(first, duplicate.getPrevious());
+        }
+        assertSame(third, duplicates.get(2).getDuplicate());
+        assertEquals(Red.class.getName(), duplicates.get(2).getClassName());
+
+        // each class is indexed once
+        assertEquals(2, finder.findAnnotatedClasses(Color.class).size());
+        assertTrue(plain.findAnnotatedClasses(Color.class).size() > 2);
+    }
+
+    @Test
+    public void parallelPrefilteredScan() throws Exception {
+        final Archive red = new ClassesArchive(Red.class, Green.class, DuplicateClassTest.class);
+        final Archive copy = new ClassesArchive(Red.class, DuplicateClassTest.class);
+        final List<ArchiveScan> scans = new ArrayList<ArchiveScan>();
+
+        final AnnotationFinder finder = new AnnotationFinder(new CompositeArchive(red, copy), new AnnotationFinder.Options()
+                .annotationTypes(Collections.singletonList(Color.class.getName()))
+                .parallelism(2)
+                .deduplicate(true)
+                .listener(recorder(scans)));
+
+        assertEquals(2, finder.getDuplicates().size());
+        assertEquals(2, finder.findAnnotatedClasses(Color.class).size());
+
+        assertEquals(2, scans.size());
+        assertEquals(3, scans.get(0).getEntries());
+        assertEquals(2, scans.get(0).getParsed());
+        assertEquals(1, scans.get(0).getSkipped());
+        assertEquals(0, scans.get(0).getDuplicates());
+        assertEquals(2, scans.get(1).getEntries());
+        assertEquals(0, scans.get(1).getParsed());
+        assertEquals(2, scans.get(1).getDuplicates());
+        assertTrue(scans.get(0).getBytesRead() > 0);
+    }
+
+    @Test
+    public void differentCopy() throws Exception {
+        final Archive red = new ClassesArchive(Red.class);
+        final Archive other = new ClassesArchive(Red.Pink.class);
+        // a different class file under the same name
+        final Archive shaded = new Archive() {
+            public InputStream getBytecode(String className) throws IOException, ClassNotFoundException {
+                return other.getBytecode(Red.Pink.class.getName());
+            }
+
+            public Class<?> loadClass(String className) throws ClassNotFoundException {
+                return other.loadClass(className);
+            }
+
+            public Iterator<Entry> iterator() {
+                return Collections.<Entry>singletonList(new Entry() {
+                    public String getName() {
+                        return Red.class.getName();
+                    }
+
+                    public InputStream getBytecode() throws IOException {
+                        try {
+                            return other.getBytecode(Red.Pink.class.getName());
+                        } catch (ClassNotFoundException e) {
+                            throw new IOException(e);
+                        }
+                    }
+                }).iterator();
+            }
+        };
+
+        final List<ArchiveScan> scans = new ArrayList<ArchiveScan>();
+        final AnnotationFinder finder = deduplicating(new CompositeArchive(red, shaded, red), recorder(scans));
+
+        final List<DuplicateClass> duplicates = finder.getDuplicates();
+        assertEquals(2, duplicates.size());
+        assertFalse(duplicates.get(0).isIdentical());
+        assertSame(shaded, duplicates.get(0).getDuplicate());
+        // compared with the copy read last
+        assertFalse(duplicates.get(1).isIdentical());
+        assertSame(shaded, duplicates.get(1).getPrevious());
+
+        assertEquals(3, scans.size());
+        for (ArchiveScan scan : scans) {
+            assertEquals(0, scan.getDuplicates());
+            assertEquals(1, scan.getParsed());
+        }
+    }
+
+    private static AnnotationFinder deduplicating(Archive archive, ScanListener listener) {
+        return new AnnotationFinder(archive, new AnnotationFinder.Options().listener(listener).deduplicate(true));
+    }
+
+    private static ScanListener recorder(final List<ArchiveScan> scans) {
+        return new ScanListener() {
+            public void archiveScanned(ArchiveScan scan) {
+                scans.add(scan);
+            }
+
+            public void classLoaded(String className, long nanos, boolean found) {
+            }
+
+            public void linked(ScanListener.LinkPhase phase, long nanos) {
+            }
+        };
+    }
+}
@@ -23,6 +23,16 @@ import org.apache.xbean.finder.filter.Filter;
 import org.apache.xbean.finder.filter.FilterList;
 import org.apache.xbean.finder.filter.Filters;
 import org.apache.xbean.finder.filter.IncludeExcludeFilter;
+import org.apache.xbean.finder.filter.PackageFilter;
+import org.apache.xbean.finder.filter.PackageScope;
+import org.apache.xbean.finder.filter.PatternFilter;
+import org.apache.xbean.finder.filter.PrefixFilter;
+import org.apache.xbean.finder.filter.SuffixFilter;
+import org.apache.xbean.finder.filter.TrieFilter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * @version $Rev$ $Date$
@@ -94,6 +104,89 @@ public class FiltersTest extends TestCase {
         assertSame(foo, Filters.optimize(filter));
     }
 
+    public void testCompiled() throws Exception {
+        Filter filter = Filters.optimize(
+                Filters.packages("org.foo", "org.foo.bar", "com.acme"),
+                Filters.prefixes("net.Re"),
+                Filters.classes("org.baz.Blue", "org.baz"),
+                Filters.suffixes("Test", "IT"),
+                Filters.patterns(".*\\$Inner", "io\\.[a-z]+\\.Main"));
+
+        assertTrue(filter instanceof FilterList);
+        assertEquals(2, ((FilterList) filter).getFilters().size());
+        assertTrue(((FilterList) filter).getFilters().get(0) instanceof TrieFilter);
+
+        assertTrue(filter.accept("org.foo.Red"));
+        assertTrue(filter.accept("org.foo.bar.Red"));
+        assertTrue(filter.accept("com.acme.Red"));
+        assertTrue(filter.accept("net.Red"));
+        assertTrue(filter.accept("org.baz.Blue"));
+        assertTrue(filter.accept("org.baz"));
+        assertTrue(filter.accept("com.other.FooTest"));
+        assertTrue(filter.accept("com.other.FooIT"));
+        assertTrue(filter.accept("com.other.Foo$Inner"));
+        assertTrue(filter.accept("io.app.Main"));
+
+        assertFalse(filter.accept("org.fooo.Red"));
+        assertFalse(filter.accept("org.foo"));
+        assertFalse(filter.accept("com.acm"));
+        assertFalse(filter.accept("net.Ra"));
+        assertFalse(filter.accept("org.baz.Blues"));
+        assertFalse(filter.accept("org.baz.Green"));
+        assertFalse(filter.accept("com.other.Testing"));
+        assertFalse(filter.accept("io.App.Main"));
+        assertFalse(filter.accept(""));
+    }
+
+    public void testCompiledMatchesFilterList() throws Exception {
+        final List<Filter> filters = new ArrayList<Filter>();
+        for (int i = 0; i < 100; i++) {
+            filters.add(new PackageFilter("org.p" + i));
+            filters.add(new PrefixFilter("com.prefix" + i));
+            filters.add(new ClassFilter("net.C" + i));
+            filters.add(new SuffixFilter("S" + i));
+        }
+        filters.add(new PatternFilter("x\\.(a|b)\\1"));
+
+        final Filter compiled = Filters.optimize(filters);
+        final Filter plain = new FilterList(filters);
+        for (String name : Arrays.asList("org.p1.A", "org.p10.A", "org.p100.A", "org.p1", "com.prefix99", "com.prefix9",
+                "com.prefi", "net.C42", "net.C42.A", "net.C420", "aS7", "aS77", "aS", "S", "x.aa", "x.ab", "")) {
+            assertEquals(name, plain.accept(name), compiled.accept(name));
+        }
+    }
+
+    public void testPackageScope() {
+        final PackageScope scope = new PackageScope("org.foo", "com.acme.bar");
+
+        assertTrue(scope.accept("org.foo.Red"));
+        assertTrue(scope.accept("org.foo.util.Red"));
+        assertFalse(scope.accept("org.foobar.Red"));
+
+        assertTrue(scope.enterPackage(""));
+        assertTrue(scope.enterPackage("com."));
+        assertTrue(scope.enterPackage("com.acme.bar.util."));
+        assertFalse(scope.enterPackage("com.acme.baz."));
+        assertFalse(scope.enterPackage("net."));
+        assertTrue(scope.enterPackage("META-INF."));
+        assertTrue(scope.enterPackage("META-INF.versions.9."));
+        assertTrue(scope.enterPackage("META-INF.versions.9.org."));
+        assertFalse(scope.enterPackage("META-INF.versions.9.net."));
+        assertFalse(scope.enterPackage("META-INF.maven."));
+
+        assertFalse(scope.acceptPackage("com.acme."));
+        assertTrue(scope.acceptPackage("com.acme.bar."));
+        assertTrue(scope.acceptPackage("META-INF.versions.11.org.foo."));
+
+        assertTrue(scope.acceptEntry("org/foo/Red.class"));
+        assertTrue(scope.acceptEntry("META-INF/versions/9/org/foo/Red.class"));
+        assertFalse(scope.acceptEntry("META-INF/versions/9/net/Red.class"));
+        assertFalse(scope.acceptEntry("org/Red.class"));
+
+        assertEquals(Arrays.asList("org.foo.", "org.bar."), PackageScope.of(Filters.packages("org.foo", "org.bar")).getPackages());
+        assertNull(PackageScope.of(Filters.optimize(new PackageFilter("org.foo"), new PrefixFilter("org.b"))));
+    }
+
     public void testIncludeExclude() {
         Filter filter = new IncludeExcludeFilter(Filters.packages("org.foo", "org.bar"), Filters.packages("org.foo.util"));
 
@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.acme.foo.Blue;
+import org.acme.foo.Color;
+import org.acme.foo.FamilyHalloween;
+import org.acme.foo.FunnyFamilyHalloween;
+import org.acme.foo.Green;
+import org.acme.foo.Halloween;
+import org.acme.foo.Holiday;
+import org.acme.foo.Primary;
+import org.acme.foo.Red;
+import org.acme.foo.Thanksgiving;
+import org.apache.xbean.finder.archive.ClassesArchive;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HierarchyIndexTest {
+
+    private final AnnotationFinder finder = new AnnotationFinder(new ClassesArchive(
+            Primary.class, Color.class, Blue.class, Green.class, Green.Emerald.class, Red.class,
+            Holiday.class, Halloween.class, FamilyHalloween.class, FunnyFamilyHalloween.class, Thanksgiving.class)).link();
+
+    @Test
+    public void accessFlags() {
+        final AnnotationFinder.ClassInfo primary = finder.classInfos.get(Primary.class.getName());
+        assertTrue(primary.isInterface());
+        assertTrue(primary.isAbstract());
+        assertFalse(primary.isAnnotation());
+
+        final AnnotationFinder.ClassInfo color = finder.classInfos.get(Color.class.getName());
+        assertTrue(color.isInterface());
+        assertTrue(color.isAnnotation());
+
+        final AnnotationFinder.ClassInfo red = finder.classInfos.get(Red.class.getName());
+        assertFalse(red.isInterface());
+        assertFalse(red.isAbstract());
+        assertFalse(red.isAnnotation());
+    }
+
+    @Test
+    public void implementations() {
+        final List<Class<? extends Primary>> implementations = finder.findImplementations(Primary.class);
+        assertEquals(4, implementations.size());
+        assertTrue(implementations.contains(Blue.class));
+        assertTrue(implementations.contains(Green.class));
+        assertTrue(implementations.contains(Green.Emerald.class));
+        assertTrue(implementations.contains(Red.class));
+    }
+
+    @Test
+    public void subclasses() {
+        final List<Class<? extends Halloween>> subclasses = finder.findSubclasses(Halloween.class);
+        assertEquals(2, subclasses.size());
+        assertTrue(subclasses.contains(FamilyHalloween.class));
+        assertTrue(subclasses.contains(FunnyFamilyHalloween.class));
+    }
+
+    @Test
+    public void inheritedAnnotatedClasses() {
+        final List<Class<?>> holidays = finder.findInheritedAnnotatedClasses(Holiday.class);
+        assertEquals(4, holidays.size());
+        assertTrue(holidays.contains(Halloween.class));
+        assertTrue(holidays.contains(FamilyHalloween.class));
+        assertTrue(holidays.contains(FunnyFamilyHalloween.class));
+        assertTrue(holidays.contains(Thanksgiving.class));
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.acme.bar.Construct;
+import org.acme.bar.Field;
+import org.acme.bar.FullyAnnotated;
+import org.acme.bar.Get;
+import org.acme.foo.Blue;
+import org.acme.foo.Color;
+import org.acme.foo.Green;
+import org.acme.foo.Red;
+import org.apache.xbean.finder.archive.Archives;
+import org.apache.xbean.finder.archive.FileArchive;
+import org.junit.Test;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LazyQueryTest {
+
+    @Test
+    public void namesWithoutLoading() throws Exception {
+        final File classes = Archives.fileArchive(new Class[]{Blue.class, Green.class, Red.class, FullyAnnotated.class});
+        final ClassLoader loader = new URLClassLoader(new URL[]{classes.toURI().toURL()}) {
+            @Override
+            protected Class<?> loadClass(final String name, final boolean resolve) throws ClassNotFoundException {
+                throw new AssertionError("loaded " + name);
+            }
+        };
+        final AnnotationFinder finder = new AnnotationFinder(new FileArchive(loader, classes));
+
+        final List<String> colors = new ArrayList<String>();
+        for (String name : finder.findAnnotatedClassNames(Color.class.getName())) {
+            colors.add(name);
+        }
+        assertEquals(3, colors.size());
+        assertTrue(colors.contains(Blue.class.getName()));
+        assertTrue(colors.contains(Green.class.getName()));
+        assertTrue(colors.contains(Red.class.getName()));
+
+        int getters = 0;
+        for (AnnotationFinder.MethodInfo method : finder.findAnnotatedMethodInfos(Get.class.getName())) {
+            assertEquals(FullyAnnotated.class.getName(), method.getDeclaringClass().getName());
+            assertTrue(method.getName().startsWith("get"));
+            assertTrue(method.getDescriptor().startsWith("()"));
+            getters++;
+        }
+        assertEquals(5, getters);
+
+        final List<String> methods = new ArrayList<String>();
+        for (String name : finder.findAnnotatedMethodNames(Get.class.getName())) {
+            methods.add(name);
+        }
+        assertEquals(5, methods.size());
+        assertTrue(methods.contains(FullyAnnotated.class.getName() + "#getField()Ljava/lang/String;"));
+
+        final Iterator<AnnotationFinder.MethodInfo> constructors = finder.findAnnotatedConstructorInfos(Construct.class.getName()).iterator();
+        assertTrue(constructors.hasNext());
+        assertEquals("<init>", constructors.next().getName());
+        assertFalse(constructors.hasNext());
+
+        int fields = 0;
+        for (AnnotationFinder.FieldInfo ignored : finder.findAnnotatedFieldInfos(Field.class.getName())) {
+            fields++;
+        }
+        assertEquals(7, fields);
+
+        assertFalse(finder.findAnnotatedClassNames("org.acme.Unknown").iterator().hasNext());
+    }
+}
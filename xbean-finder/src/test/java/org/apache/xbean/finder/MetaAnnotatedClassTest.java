@@ -17,13 +17,19 @@
 package org.apache.xbean.finder;
 
 import junit.framework.TestCase;
+import org.apache.xbean.finder.archive.Archive;
 import org.apache.xbean.finder.archive.ClassesArchive;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.lang.annotation.Annotation;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -171,6 +177,38 @@ public class MetaAnnotatedClassTest extends TestCase {
 
     }
 
+    public void testResolvedWithoutLoading() throws Exception {
+        final List<String> loaded = new ArrayList<String>();
+        final ClassesArchive classes = new ClassesArchive(Square.class, Circle.class, Triangle.class, Fake.class, Store.class, Farm.class, None.class);
+        final Archive archive = new Archive() {
+            public InputStream getBytecode(String className) throws IOException, ClassNotFoundException {
+                return classes.getBytecode(className);
+            }
+
+            public Class<?> loadClass(String className) throws ClassNotFoundException {
+                loaded.add(className);
+                return classes.loadClass(className);
+            }
+
+            public Iterator<Entry> iterator() {
+                return classes.iterator();
+            }
+        };
+
+        final AnnotationFinder finder = new AnnotationFinder(archive).enableMetaAnnotations();
+        assertTrue(finder.hasMetaAnnotations());
+        assertEquals(Collections.<String>emptyList(), loaded);
+
+        // the whole chain Crimson -> Red -> Color was read
+        final List<Annotated<Class<?>>> colored = finder.findMetaAnnotatedClasses(Color.class);
+        final List<Class<?>> types = new ArrayList<Class<?>>();
+        for (Annotated<Class<?>> annotated : colored) {
+            types.add(annotated.get());
+        }
+        assertTrue(types.contains(Triangle.class));
+        assertFalse(types.contains(Fake.class));
+    }
+
     private boolean contains(Class<? extends Annotation> type, Annotation[] annotations) {
         for (Annotation annotation : annotations) {
             if (type.isAssignableFrom(annotation.annotationType())) return true;
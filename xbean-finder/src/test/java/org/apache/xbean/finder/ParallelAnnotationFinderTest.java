@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.acme.ClassAnnotatedClass;
+import org.acme.ClassMultipleAnnotatedClass;
+import org.acme.NotAnnotated;
+import org.acme.bar.ClassAnnotation;
+import org.acme.bar.FullyAnnotated;
+import org.acme.bar.Get;
+import org.acme.foo.Blue;
+import org.acme.foo.Color;
+import org.acme.foo.Green;
+import org.acme.foo.Halloween;
+import org.acme.foo.Holiday;
+import org.acme.foo.Property;
+import org.acme.foo.Red;
+import org.acme.foo.Thanksgiving;
+import org.acme.foo.ValentinesDay;
+import org.apache.xbean.finder.archive.Archive;
+import org.apache.xbean.finder.archive.ClassesArchive;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+
+public class ParallelAnnotationFinderTest {
+
+    private static final Archive ARCHIVE = new ClassesArchive(
+            ClassAnnotatedClass.class, ClassMultipleAnnotatedClass.class, NotAnnotated.class, FullyAnnotated.class,
+            Blue.class, Blue.Navy.class, Blue.Sky.class, Green.class, Green.Emerald.class, Red.class,
+            Halloween.class, Thanksgiving.class, ValentinesDay.class);
+
+    @Test
+    public void forkJoin() {
+        assertSameIndexes(new AnnotationFinder(ARCHIVE, false), new AnnotationFinder(ARCHIVE, new AnnotationFinder.Options().checkRuntimeAnnotation(false).parallelism(4)));
+    }
+
+    @Test
+    public void executor() {
+        final ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            assertSameIndexes(new AnnotationFinder(ARCHIVE, false), new AnnotationFinder(ARCHIVE, new AnnotationFinder.Options().checkRuntimeAnnotation(false).executor(executor, 3)));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void singleThread() {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            assertSameIndexes(new AnnotationFinder(ARCHIVE, false), new AnnotationFinder(ARCHIVE, new AnnotationFinder.Options().checkRuntimeAnnotation(false).executor(executor, 1)));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void assertSameIndexes(final AnnotationFinder sequential, final AnnotationFinder parallel) {
+        assertEquals(sequential.classInfos.keySet(), parallel.classInfos.keySet());
+        assertEquals(sequential.originalInfos.keySet(), parallel.originalInfos.keySet());
+        assertEquals(sequential.annotated.keySet(), parallel.annotated.keySet());
+        for (final String annotation : sequential.annotated.keySet()) {
+            assertEquals(annotation, new ArrayList<Object>(sequential.annotated.get(annotation)).toString(),
+                    new ArrayList<Object>(parallel.annotated.get(annotation)).toString());
+        }
+
+        assertEquals(sequential.findAnnotatedClasses(Color.class), parallel.findAnnotatedClasses(Color.class));
+        assertEquals(sequential.findAnnotatedClasses(Holiday.class), parallel.findAnnotatedClasses(Holiday.class));
+        assertEquals(sequential.findAnnotatedClasses(ClassAnnotation.class), parallel.findAnnotatedClasses(ClassAnnotation.class));
+        assertEquals(sequential.findAnnotatedMethods(Get.class), parallel.findAnnotatedMethods(Get.class));
+        assertEquals(sequential.findAnnotatedFields(Property.class), parallel.findAnnotatedFields(Property.class));
+    }
+}
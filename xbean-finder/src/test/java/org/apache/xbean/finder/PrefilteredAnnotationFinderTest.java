@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.acme.bar.FullyAnnotated;
+import org.acme.bar.Get;
+import org.acme.bar.ParamB;
+import org.acme.foo.Blue;
+import org.acme.foo.Color;
+import org.acme.foo.FamilyHalloween;
+import org.acme.foo.Green;
+import org.acme.foo.Halloween;
+import org.acme.foo.Holiday;
+import org.acme.foo.Red;
+import org.acme.foo.Thanksgiving;
+import org.apache.xbean.finder.archive.ClassesArchive;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PrefilteredAnnotationFinderTest {
+
+    private static final Class<?>[] CLASSES = {
+            Blue.class, Green.class, Red.class, Halloween.class, FamilyHalloween.class, Thanksgiving.class, FullyAnnotated.class
+    };
+
+    @Test
+    public void onlyConfiguredAnnotations() {
+        final AnnotationFinder expected = new AnnotationFinder(new ClassesArchive(CLASSES));
+        final AnnotationFinder finder = new AnnotationFinder(new ClassesArchive(CLASSES), new AnnotationFinder.Options()
+                .annotationTypes(Arrays.asList(Color.class.getName(), ParamB.class.getName())));
+
+        assertEquals(3, finder.findAnnotatedClasses(Color.class).size());
+        assertEquals(expected.findAnnotatedMethodParameters(ParamB.class).size(), finder.findAnnotatedMethodParameters(ParamB.class).size());
+
+        // FullyAnnotated uses ParamB so it is fully parsed
+        assertEquals(expected.findAnnotatedMethods(Get.class).size(), finder.findAnnotatedMethods(Get.class).size());
+
+        // Halloween and Thanksgiving only have a hierarchy record
+        assertTrue(finder.findAnnotatedClasses(Holiday.class).isEmpty());
+        assertFalse(finder.classInfos.get(Halloween.class.getName()).getAnnotations().iterator().hasNext());
+        assertEquals(expected.classInfos.keySet(), finder.classInfos.keySet());
+    }
+
+    @Test
+    public void hierarchyIsKept() {
+        final AnnotationFinder finder = new AnnotationFinder(new ClassesArchive(CLASSES), new AnnotationFinder.Options()
+                .annotationTypes(Arrays.asList(Color.class.getName()))).link();
+
+        assertEquals(Arrays.asList(FamilyHalloween.class), finder.findSubclasses(Halloween.class));
+    }
+
+    @Test
+    public void skippedClassesAreCounted() {
+        // Halloween, FamilyHalloween, Thanksgiving and FullyAnnotated don't use Color
+        for (ArchiveScan scan : Arrays.asList(scan(false, 0), scan(true, 0), scan(false, 2))) {
+            assertEquals(4, scan.getSkipped());
+            assertEquals(3, scan.getParsed());
+        }
+    }
+
+    private static ArchiveScan scan(boolean concurrent, int parallelism) {
+        final List<ArchiveScan> scans = new ArrayList<ArchiveScan>();
+        final AnnotationFinder.Options options = new AnnotationFinder.Options()
+                .annotationTypes(Arrays.asList(Color.class.getName()))
+                .parallelism(parallelism)
+                .listener(new ScanListener() {
+                    public void archiveScanned(ArchiveScan scan) {
+                        scans.add(scan);
+                    }
+
+                    public void classLoaded(String className, long nanos, boolean found) {
+                    }
+
+                    public void linked(LinkPhase phase, long nanos) {
+                    }
+                });
+        if (concurrent) {
+            new ConcurrentAnnotationFinder(new ClassesArchive(CLASSES), options);
+        } else {
+            new AnnotationFinder(new ClassesArchive(CLASSES), options);
+        }
+        assertEquals(1, scans.size());
+        return scans.get(0);
+    }
+}
@@ -24,12 +24,18 @@ import java.io.File;
 import java.io.IOException;
 import java.net.JarURLConnection;
 import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 
@@ -114,6 +120,25 @@ public class ResourceFinderTest extends TestCase {
         }
     }
 
+    public void testFindAllStringsOfManyUris() throws Exception {
+        List<String> uris = Arrays.asList("MANIFEST.MF", "java.io.Serializable", "java.io.InputStream", "notthere");
+
+        Map<String, List<String>> strings = resourceFinder.findAllStrings(uris);
+        assertEquals(uris, new ArrayList<String>(strings.keySet()));
+        for (String uri : uris) {
+            assertEquals(uri, resourceFinder.findAllStrings(uri), strings.get(uri));
+        }
+        assertTrue("manifests found", strings.get("MANIFEST.MF").size() > 1);
+        assertEquals(0, strings.get("notthere").size());
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            assertEquals(strings, resourceFinder.findAllStrings(uris, executor));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
     public void testMapAllStrings() throws Exception {
         Map<String, String> resourcesMap = resourceFinder.mapAllStrings("serializables");
 
@@ -375,6 +400,101 @@ public class ResourceFinderTest extends TestCase {
     }
 
 
+    public void testFindAllStringsInUrls() throws Exception {
+        Map<String, String> map = new HashMap<String, String>();
+        map.put("META-INF/services/org.acme.One", "org.acme.One");
+        map.put("META-INF/services/org.acme.Two", "org.acme.Two");
+        final File jar = Archives.jarArchive(map);
+
+        map.put("META-INF/MANIFEST.MF", "Manifest-Version: 1.0\nMulti-Release: true\n");
+        map.put("META-INF/versions/9/META-INF/services/org.acme.One", "org.acme.OneForNine");
+        final File multiRelease = Archives.jarArchive(map);
+
+        final List<String> uris = Arrays.asList("org.acme.One", "org.acme.Two", "org.acme.Three");
+        for (boolean indexed : new boolean[]{false, true}) {
+            final ResourceFinder finder = new ResourceFinder("META-INF/services/",
+                jar.toURI().toURL(), multiRelease.toURI().toURL()).setIndexed(indexed);
+
+            final Map<String, List<String>> strings = finder.findAllStrings(uris);
+            assertEquals(uris, new ArrayList<String>(strings.keySet()));
+            for (String uri : uris) {
+                assertEquals(uri, finder.findAllStrings(uri), strings.get(uri));
+            }
+            assertEquals(2, strings.get("org.acme.One").size());
+            assertEquals(0, strings.get("org.acme.Three").size());
+        }
+    }
+
+    public void testFindAllStringsInClassLoader() throws Exception {
+        Map<String, String> map = new HashMap<String, String>();
+        map.put("META-INF/services/org.acme.One", "org.acme.One");
+        map.put("META-INF/services/org.acme.Two", "org.acme.Two");
+        final File jar = Archives.jarArchive(map);
+
+        map = new HashMap<String, String>();
+        map.put("META-INF/services/org.acme.Two", "org.acme.TwoMore");
+        final File directory = Archives.fileArchive(map);
+
+        map = new HashMap<String, String>();
+        map.put("META-INF/services/org.acme.One", "org.acme.OneMore");
+        final File other = Archives.jarArchive(map);
+
+        // its archives are not listed by the loader, it is asked for each uri
+        map.put("META-INF/MANIFEST.MF", "Manifest-Version: 1.0\nClass-Path: " + other.getName() + "\n");
+        final File withClassPath = Archives.jarArchive(new File(other.getParentFile(), "classpath-" + other.getName()), map);
+
+        final List<String> uris = Arrays.asList("org.acme.One", "org.acme.Two", "org.acme.Three");
+        final URLClassLoader parent = new URLClassLoader(new URL[]{withClassPath.toURI().toURL()}, getClass().getClassLoader());
+        final URLClassLoader loader = new URLClassLoader(new URL[]{jar.toURI().toURL(), directory.toURI().toURL()}, parent);
+        for (boolean indexed : new boolean[]{false, true}) {
+            final ResourceFinder finder = new ResourceFinder("META-INF/services/", loader).setIndexed(indexed);
+
+            final Map<String, List<String>> strings = finder.findAllStrings(uris);
+            assertEquals(uris, new ArrayList<String>(strings.keySet()));
+            for (String uri : uris) {
+                assertEquals(uri, finder.findAllStrings(uri), strings.get(uri));
+                assertEquals(uri, Collections.list(loader.getResources("META-INF/services/" + uri)).size(), strings.get(uri).size());
+            }
+            assertEquals(Arrays.asList("org.acme.OneMore", "org.acme.One"), strings.get("org.acme.One"));
+            assertEquals(Arrays.asList("org.acme.Two", "org.acme.TwoMore"), strings.get("org.acme.Two"));
+            assertEquals(0, strings.get("org.acme.Three").size());
+        }
+    }
+
+    public void testIndexedJar() throws Exception {
+        Map<String, String> map = new HashMap<String, String>();
+        map.put("WEB-INF/beans.xml", "<beans/>");
+        map.put("META-INF/services/", "");
+        map.put("META-INF/services/org.acme.One", "org.acme.One");
+        map.put("META-INF/services/org.acme.Two", "org.acme.Two");
+        map.put("META-INF/services/nested/org.acme.Three", "org.acme.Three");
+
+        final File jarFile = Archives.jarArchive(map);
+        final ResourceFinder finder = new ResourceFinder("META-INF/", jarFile.toURI().toURL()).setIndexed(true);
+
+        assertNotNull(finder.find("services/org.acme.One"));
+        assertNull(finder.getResource("META-INF/services/org.acme.Four"));
+        assertEquals("org.acme.Two", finder.findString("services/org.acme.Two"));
+
+        // as JarFile.getEntry() a directory without its own entry is not found
+        assertNull(finder.getResource("WEB-INF/"));
+        assertNull(new ResourceFinder("META-INF/", jarFile.toURI().toURL()).getResource("WEB-INF/"));
+
+        // the directory entry is not listed
+        Map<String, URL> services = finder.getResourcesMap("services");
+        assertEquals(2, services.size());
+        assertTrue(services.containsKey("org.acme.One"));
+        assertTrue(services.containsKey("org.acme.Two"));
+
+        map.put("META-INF/services/org.acme.Four", "org.acme.Four");
+        Archives.jarArchive(jarFile, map);
+        assertTrue(jarFile.setLastModified(jarFile.lastModified() + 10000));
+
+        assertNotNull(finder.getResource("META-INF/services/org.acme.Four"));
+        assertEquals(3, finder.getResourcesMap("services").size());
+    }
+
+
     private static void readJarEntries(URL location, String basePath, Map<String, URL> resources) throws IOException {
         JarURLConnection conn = (JarURLConnection) location.openConnection();
         JarFile jarfile = null;
@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.acme.ClassAnnotatedClass;
+import org.acme.NotAnnotated;
+import org.acme.bar.ClassAnnotation;
+import org.acme.bar.FullyAnnotated;
+import org.acme.bar.Get;
+import org.acme.bar.ParamA;
+import org.acme.foo.Blue;
+import org.acme.foo.Color;
+import org.acme.foo.Green;
+import org.acme.foo.Red;
+import org.apache.xbean.finder.archive.Archive;
+import org.apache.xbean.finder.archive.Archives;
+import org.apache.xbean.finder.archive.FileArchive;
+import org.apache.xbean.finder.archive.JarArchive;
+import org.junit.Test;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ScanIndexCacheTest {
+
+    private static final Class<?>[] CLASSES = {
+            ClassAnnotatedClass.class, NotAnnotated.class, FullyAnnotated.class,
+            Blue.class, Blue.Navy.class, Green.class, Red.class
+    };
+
+    @Test
+    public void jar() throws Exception {
+        final File jar = Archives.jarArchive(CLASSES);
+        final URL url = new URL("jar:" + jar.toURI().toURL() + "!/");
+        final ClassLoader loader = new URLClassLoader(new URL[]{url});
+
+        assertCached(new JarArchive(loader, url), new JarArchive(loader, url), new JarArchive(loader, url));
+    }
+
+    @Test
+    public void directory() throws Exception {
+        final File dir = Archives.fileArchive(CLASSES);
+        final ClassLoader loader = new URLClassLoader(new URL[]{dir.toURI().toURL()});
+
+        assertCached(new FileArchive(loader, dir), new FileArchive(loader, dir), new FileArchive(loader, dir));
+    }
+
+    @Test
+    public void finderConfiguration() throws Exception {
+        final File jar = Archives.jarArchive(CLASSES);
+        final URL url = new URL("jar:" + jar.toURI().toURL() + "!/");
+        final ClassLoader loader = new URLClassLoader(new URL[]{url});
+        final File directory = File.createTempFile("scan", "cache");
+        assertTrue(directory.delete());
+        final ScanIndexCache cache = new ScanIndexCache(directory);
+
+        // filters its annotations, neither reads nor writes the cache
+        final AnnotationFinder tracking = new AnnotationFinder(new JarArchive(loader, url), options(cache)) {
+            @Override
+            protected boolean isTracked(final String annotationType) {
+                return !annotationType.equals("L" + Color.class.getName().replace('.', '/') + ";");
+            }
+        };
+        assertTrue(tracking.findAnnotatedClasses(Color.class).isEmpty());
+        assertNull(directory.listFiles());
+
+        final AnnotationFinder plain = new AnnotationFinder(new JarArchive(loader, url), options(cache));
+        assertEquals(1, directory.listFiles().length);
+        assertEquals(4, plain.findAnnotatedClasses(Color.class).size());
+
+        // an entry per set of annotation types
+        final AnnotationFinder prefiltered = new AnnotationFinder(new JarArchive(loader, url), options(cache)
+                .annotationTypes(Arrays.asList(Get.class.getName())));
+        assertEquals(2, directory.listFiles().length);
+        assertTrue(prefiltered.findAnnotatedClasses(Color.class).isEmpty());
+        assertEquals(plain.findAnnotatedMethods(Get.class).size(), prefiltered.findAnnotatedMethods(Get.class).size());
+    }
+
+    private static void assertCached(final Archive plain, final Archive first, final Archive second) throws Exception {
+        final File directory = File.createTempFile("scan", "cache");
+        assertTrue(directory.delete());
+
+        final ScanIndexCache cache = new ScanIndexCache(directory);
+        final AnnotationFinder expected = new AnnotationFinder(plain, false);
+        final AnnotationFinder stored = new AnnotationFinder(first, options(cache));
+
+        final File[] files = directory.listFiles();
+        assertEquals(1, files.length);
+        assertTrue(files[0].setLastModified(10000));
+
+        final AnnotationFinder loaded = new AnnotationFinder(second, options(cache));
+        assertEquals(10000, files[0].lastModified());
+        assertEquals(1, directory.listFiles().length);
+
+        assertSameIndexes(expected, stored);
+        assertSameIndexes(expected, loaded);
+    }
+
+    private static AnnotationFinder.Options options(final ScanIndexCache cache) {
+        return new AnnotationFinder.Options().checkRuntimeAnnotation(false).cache(cache);
+    }
+
+    private static void assertSameIndexes(final AnnotationFinder expected, final AnnotationFinder actual) {
+        assertEquals(expected.classInfos.keySet(), actual.classInfos.keySet());
+        assertEquals(expected.annotated.keySet(), actual.annotated.keySet());
+        for (final String annotation : expected.annotated.keySet()) {
+            assertEquals(annotation, new ArrayList<Object>(expected.annotated.get(annotation)).toString(),
+                    new ArrayList<Object>(actual.annotated.get(annotation)).toString());
+        }
+
+        assertEquals(names(expected.findAnnotatedClasses(Color.class)), names(actual.findAnnotatedClasses(Color.class)));
+        assertEquals(names(expected.findAnnotatedClasses(ClassAnnotation.class)), names(actual.findAnnotatedClasses(ClassAnnotation.class)));
+        assertEquals(expected.findAnnotatedMethods(Get.class).toString(), actual.findAnnotatedMethods(Get.class).toString());
+        assertEquals(expected.findAnnotatedMethodParameters(ParamA.class).size(), actual.findAnnotatedMethodParameters(ParamA.class).size());
+    }
+
+    private static String names(final Iterable<Class<?>> classes) {
+        final StringBuilder builder = new StringBuilder();
+        for (Class<?> clazz : classes) {
+            builder.append(clazz.getName()).append(',');
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,132 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.acme.foo.Blue;
+import org.acme.foo.Color;
+import org.acme.foo.Green;
+import org.acme.foo.Red;
+import org.apache.xbean.finder.archive.Archive;
+import org.apache.xbean.finder.archive.Archives;
+import org.apache.xbean.finder.archive.ClassesArchive;
+import org.apache.xbean.finder.archive.CompositeArchive;
+import org.apache.xbean.finder.archive.JarArchive;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class ScanListenerTest {
+
+    @Test
+    public void measures() throws Exception {
+        final File jar = Archives.jarArchive(Blue.class, Blue.Navy.class, Blue.Sky.class);
+        final URL url = new URL("jar:" + jar.toURI().toURL() + "!/");
+        final Archive blue = new JarArchive(new URLClassLoader(new URL[]{url}), url);
+        final Archive red = new ClassesArchive(Red.class, Green.class);
+
+        final Recorder recorder = new Recorder();
+        final AnnotationFinder finder = new AnnotationFinder(new CompositeArchive(blue, red), new AnnotationFinder.Options().listener(recorder));
+
+        assertEquals(2, recorder.scans.size());
+        final ArchiveScan jarScan = recorder.scans.get(0);
+        assertTrue(jarScan.getArchive() == blue);
+        assertEquals(3, jarScan.getEntries());
+        assertEquals(3, jarScan.getParsed());
+        assertEquals(0, jarScan.getSkipped());
+        assertTrue(jarScan.getBytesRead() > 0);
+        assertEquals(2, recorder.scans.get(1).getEntries());
+
+        finder.link();
+        assertEquals(ScanListener.LinkPhase.values().length, recorder.phases.size());
+
+        assertEquals(0, recorder.loaded.size());
+        final int annotated = finder.findAnnotatedClasses(Color.class).size();
+        assertTrue(annotated > 0);
+        assertEquals(annotated, recorder.loaded.size());
+    }
+
+    @Test
+    public void prefiltered() throws Exception {
+        final Recorder recorder = new Recorder();
+        new AnnotationFinder(new ClassesArchive(Red.class, Blue.class, ScanListenerTest.class), new AnnotationFinder.Options()
+                .annotationTypes(Collections.singletonList(Color.class.getName()))
+                .listener(recorder));
+
+        assertEquals(1, recorder.scans.size());
+        final ArchiveScan scan = recorder.scans.get(0);
+        assertEquals(3, scan.getEntries());
+        assertEquals(2, scan.getParsed());
+        assertEquals(1, scan.getSkipped());
+    }
+
+    @Test
+    public void jmx() throws Exception {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName name = new ObjectName("org.apache.xbean:type=AnnotationFinder,name=ScanListenerTest");
+
+        final JmxScanListener listener = new JmxScanListener(1);
+        listener.register(server, name);
+        try {
+            new AnnotationFinder(new CompositeArchive(new ClassesArchive(Red.class), new ClassesArchive(Blue.class, Green.class)),
+                    new AnnotationFinder.Options().listener(listener)).link();
+
+            assertEquals(2L, server.getAttribute(name, "Archives"));
+            assertEquals(3L, server.getAttribute(name, "Entries"));
+            assertEquals(3L, server.getAttribute(name, "Parsed"));
+            assertEquals(1, ((String[]) server.getAttribute(name, "SlowestArchives")).length);
+
+            server.invoke(name, "reset", null, null);
+            assertEquals(0L, server.getAttribute(name, "Archives"));
+        } finally {
+            listener.unregister();
+        }
+        assertFalse(server.isRegistered(name));
+    }
+
+    private static class Recorder implements ScanListener {
+        private final List<ArchiveScan> scans = new ArrayList<ArchiveScan>();
+        private final List<String> loaded = new ArrayList<String>();
+        private final List<LinkPhase> phases = new ArrayList<LinkPhase>();
+
+        public void archiveScanned(ArchiveScan scan) {
+            scans.add(scan);
+        }
+
+        public void classLoaded(String className, long nanos, boolean found) {
+            loaded.add(className);
+        }
+
+        public void linked(LinkPhase phase, long nanos) {
+            phases.add(phase);
+        }
+    }
+}
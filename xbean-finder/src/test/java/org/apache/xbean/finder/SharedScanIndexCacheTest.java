@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.acme.ClassAnnotatedClass;
+import org.acme.NotAnnotated;
+import org.acme.bar.FullyAnnotated;
+import org.acme.bar.Get;
+import org.acme.foo.Blue;
+import org.acme.foo.Color;
+import org.acme.foo.Green;
+import org.acme.foo.Red;
+import org.apache.xbean.finder.archive.Archive;
+import org.apache.xbean.finder.archive.Archives;
+import org.apache.xbean.finder.archive.JarArchive;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+public class SharedScanIndexCacheTest {
+
+    private static final Class<?>[] CLASSES = {
+            ClassAnnotatedClass.class, NotAnnotated.class, FullyAnnotated.class,
+            Blue.class, Blue.Navy.class, Green.class, Red.class
+    };
+
+    @Test
+    public void sameJarInTwoApplications() throws Exception {
+        final File jar = Archives.jarArchive(CLASSES);
+        final File copy = File.createTempFile("copy", ".jar");
+        copy.deleteOnExit();
+        copy(jar, copy);
+        assertTrue(copy.setLastModified(jar.lastModified() - 60000));
+
+        final SharedScanIndexCache cache = new SharedScanIndexCache(null, 4);
+        final AnnotationFinder first = new AnnotationFinder(archive(jar), options(cache));
+        assertEquals(1, cache.size());
+        assertEquals(0, cache.getHits());
+
+        final AnnotationFinder second = new AnnotationFinder(archive(copy), options(cache));
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.getHits());
+
+        // each finder has its own infos
+        assertNotSame(first.classInfos.get(Red.class.getName()), second.classInfos.get(Red.class.getName()));
+        assertEquals(first.classInfos.keySet(), second.classInfos.keySet());
+        assertEquals(first.annotated.keySet(), second.annotated.keySet());
+        assertEquals(first.findAnnotatedClasses(Color.class).size(), second.findAnnotatedClasses(Color.class).size());
+        assertEquals(first.findAnnotatedMethods(Get.class).toString(), second.findAnnotatedMethods(Get.class).toString());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() throws Exception {
+        final SharedScanIndexCache cache = new SharedScanIndexCache(null, 2);
+        final File a = Archives.jarArchive(Red.class);
+        final File b = Archives.jarArchive(Green.class);
+        final File c = Archives.jarArchive(Blue.class);
+
+        new AnnotationFinder(archive(a), options(cache));
+        new AnnotationFinder(archive(b), options(cache));
+        new AnnotationFinder(archive(a), options(cache));
+        new AnnotationFinder(archive(c), options(cache));
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getHits());
+
+        new AnnotationFinder(archive(a), options(cache));
+        assertEquals(2, cache.getHits());
+        new AnnotationFinder(archive(b), options(cache));
+        assertEquals(2, cache.getHits());
+    }
+
+    @Test
+    public void finderConfiguration() throws Exception {
+        final SharedScanIndexCache cache = new SharedScanIndexCache(null, 4);
+        final File jar = Archives.jarArchive(CLASSES);
+
+        new AnnotationFinder(archive(jar), options(cache));
+        assertEquals(1, cache.size());
+
+        // another application filtering its annotations
+        final AnnotationFinder tracking = new AnnotationFinder(archive(jar), options(cache)) {
+            @Override
+            protected boolean isTracked(final String annotationType) {
+                return false;
+            }
+        };
+        assertTrue(tracking.findAnnotatedClasses(Color.class).isEmpty());
+        assertEquals(0, cache.getHits());
+        assertEquals(1, cache.size());
+
+        final AnnotationFinder prefiltered = new AnnotationFinder(archive(jar), options(cache)
+                .annotationTypes(Collections.singletonList(Get.class.getName())));
+        assertTrue(prefiltered.findAnnotatedClasses(Color.class).isEmpty());
+        assertEquals(0, cache.getHits());
+        assertEquals(2, cache.size());
+
+        final AnnotationFinder plain = new AnnotationFinder(archive(jar), options(cache));
+        assertEquals(1, cache.getHits());
+        assertEquals(4, plain.findAnnotatedClasses(Color.class).size());
+    }
+
+    private static AnnotationFinder.Options options(final ScanIndexCache cache) {
+        return new AnnotationFinder.Options().checkRuntimeAnnotation(false).cache(cache);
+    }
+
+    private static Archive archive(final File jar) throws Exception {
+        final URL url = new URL("jar:" + jar.toURI().toURL() + "!/");
+        return new JarArchive(new URLClassLoader(new URL[]{url}), url);
+    }
+
+    private static void copy(final File from, final File to) throws IOException {
+        final InputStream in = new FileInputStream(from);
+        final OutputStream out = new FileOutputStream(to);
+        try {
+            final byte[] buffer = new byte[8192];
+            for (int length = in.read(buffer); length != -1; length = in.read(buffer)) {
+                out.write(buffer, 0, length);
+            }
+        } finally {
+            in.close();
+            out.close();
+        }
+    }
+}
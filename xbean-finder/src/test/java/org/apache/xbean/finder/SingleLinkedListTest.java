@@ -153,6 +153,16 @@ public class SingleLinkedListTest extends TestCase {
         }
     }
     
+    public void testRemove() {
+        assertTrue(list.remove("five"));
+        assertTrue(list.remove("three"));
+        assertTrue(list.remove("one"));
+        assertFalse(list.remove("foo"));
+
+        assertEquals(2, list.size());
+        assertEquals(Arrays.asList("four", "two"), new ArrayList<String>(list));
+    }
+
     public void testIsEmpty() {
         SingleLinkedList<String> temp = new SingleLinkedList<String>();
         assertTrue(temp.isEmpty());
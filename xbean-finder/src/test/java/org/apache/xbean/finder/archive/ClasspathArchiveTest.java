@@ -22,7 +22,14 @@ import org.acme.foo.Green;
 import org.acme.foo.Red;
 import org.apache.xbean.finder.UrlSet;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -100,6 +107,49 @@ public class ClasspathArchiveTest extends TestCase {
         assertTrue(sublist(list, JarArchive.class).size() >= 1);
     }
 
+    public void testArchiveType() throws Exception {
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+
+        File jar = Archives.jarArchive(Red.class);
+        File dir = Archives.fileArchive(new Class[]{Red.class});
+        File text = File.createTempFile("notajar", ".jar");
+        text.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(text);
+        out.write("PK not a zip".getBytes("UTF-8"));
+        out.close();
+
+        assertTrue(ClasspathArchive.archive(classLoader, jar.toURI().toURL()) instanceof JarArchive);
+        assertTrue(ClasspathArchive.archive(classLoader, dir.toURI().toURL()) instanceof FileArchive);
+        assertTrue(ClasspathArchive.archive(classLoader, text.toURI().toURL()) instanceof FileArchive);
+    }
+
+    public void testFactories() throws Exception {
+        final ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        final ClassesArchive classes = new ClassesArchive(Red.class);
+        final List<ArchiveFactory> factories = Collections.<ArchiveFactory>singletonList(new ArchiveFactory() {
+            public Archive create(ClassLoader loader, URL url) {
+                return "remote".equals(url.getProtocol()) ? classes : null;
+            }
+        });
+        final URL remote = new URL("remote", "host", 80, "/lib.jar", new URLStreamHandler() {
+            @Override
+            protected URLConnection openConnection(URL u) {
+                throw new UnsupportedOperationException();
+            }
+        });
+
+        assertSame(classes, ClasspathArchive.archive(classLoader, remote, factories));
+        assertTrue(ClasspathArchive.archive(classLoader, Archives.jarArchive(Red.class).toURI().toURL(), factories) instanceof JarArchive);
+        assertEquals(Arrays.<Archive>asList(classes), ClasspathArchive.archives(classLoader, Arrays.asList(remote), factories));
+
+        try {
+            ClasspathArchive.archive(classLoader, remote);
+            fail("UnsupportedOperationException should have been thrown");
+        } catch (UnsupportedOperationException e) {
+            // pass
+        }
+    }
+
     private <T> List<T> sublist(List<Archive> list, Class<? extends T> type) {
         List<T> ts = new ArrayList<T>();
         for (Archive archive : list) {
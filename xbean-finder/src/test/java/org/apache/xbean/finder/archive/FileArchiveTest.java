@@ -16,9 +16,13 @@
  */
 package org.apache.xbean.finder.archive;
 
+import org.acme.NotAnnotated;
+import org.acme.bar.FullyAnnotated;
 import org.acme.foo.Blue;
 import org.acme.foo.Green;
 import org.acme.foo.Red;
+import org.apache.xbean.finder.filter.PackageScope;
+import org.apache.xbean.finder.util.DirectoryWalker;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -30,6 +34,7 @@ import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertFalse;
@@ -118,5 +123,42 @@ public class FileArchiveTest {
         assertEquals(classes.length, actual.size());
     }
 
+    @Test
+    public void testScope() throws Exception {
+        final File dir = Archives.fileArchive(new Class[]{Blue.class, Blue.Navy.class, FullyAnnotated.class, NotAnnotated.class});
+        final URL url = dir.toURI().toURL();
+        final PackageScope scope = new PackageScope("org.acme.foo", "org.acme.bar.nothing");
+
+        final List<String> actual = new ArrayList<String>();
+        for (Archive.Entry entry : new FileArchive(new URLClassLoader(new URL[]{url}), dir, scope)) {
+            actual.add(entry.getName());
+        }
+        assertEquals(2, actual.size());
+        assertTrue(actual.contains(Blue.class.getName()));
+        assertTrue(actual.contains(Blue.Navy.class.getName()));
+    }
+
+    @Test
+    public void testParallelWalker() throws Exception {
+        final List<String> sequential = new ArrayList<String>();
+        for (Archive.Entry entry : archive) {
+            sequential.add(entry.getName());
+        }
+
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            final FileArchive parallel = new FileArchive(new URLClassLoader(new URL[]{classpath.toURI().toURL()}), classpath)
+                    .setWalker(new DirectoryWalker(pool));
+            final List<String> actual = new ArrayList<String>();
+            for (Archive.Entry entry : parallel) {
+                actual.add(entry.getName());
+            }
+            assertEquals(sequential, actual);
+            assertEquals(classes.length, actual.size());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
 
 }
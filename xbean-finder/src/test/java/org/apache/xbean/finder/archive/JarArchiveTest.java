@@ -16,18 +16,24 @@
  */
 package org.apache.xbean.finder.archive;
 
+import org.acme.NotAnnotated;
+import org.acme.bar.FullyAnnotated;
 import org.acme.foo.Blue;
 import org.acme.foo.Green;
 import org.acme.foo.Red;
+import org.apache.xbean.finder.filter.PackageScope;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import java.io.DataInputStream;
 import java.io.File;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertFalse;
@@ -104,5 +110,42 @@ public class JarArchiveTest {
         assertEquals(classes.length, actual.size());
     }
 
+    @Test
+    public void testScope() throws Exception {
+        final File jar = Archives.jarArchive(Blue.class, Blue.Navy.class, FullyAnnotated.class, NotAnnotated.class);
+        final URL url = new URL("jar:" + jar.toURI().toURL() + "!/");
+        final PackageScope scope = new PackageScope("org.acme.foo", "org.acme.bar.nothing");
+
+        final List<String> actual = new ArrayList<String>();
+        for (Archive.Entry entry : new JarArchive(new URLClassLoader(new URL[]{url}), url, scope)) {
+            actual.add(entry.getName());
+        }
+        assertEquals(2, actual.size());
+        assertTrue(actual.contains(Blue.class.getName()));
+        assertTrue(actual.contains(Blue.Navy.class.getName()));
+    }
+
+    @Test
+    public void testMultiRelease() throws Exception {
+        final Map<String, String> entries = new HashMap<String, String>();
+        entries.put("META-INF/MANIFEST.MF", "Manifest-Version: 1.0\nMulti-Release: true\n");
+        entries.put("META-INF/versions/99998/org/acme/foo/Red.class", "not bytecode");
+        entries.put("META-INF/versions/99999/org/acme/foo/Green.class", "not bytecode");
+        entries.put("META-INF/versions/9/org/acme/foo/Extra.class", "not bytecode");
+        final File jar = Archives.jarArchive(entries, Red.class, Green.class);
+        final URL url = new URL("jar:" + jar.toURI().toURL() + "!/");
+
+        final List<String> actual = new ArrayList<String>();
+        for (Archive.Entry entry : new JarArchive(new URLClassLoader(new URL[]{url}), url)) {
+            actual.add(entry.getName());
+            final DataInputStream in = new DataInputStream(entry.getBytecode());
+            assertEquals(0xCAFEBABE, in.readInt());
+            in.close();
+        }
+        assertEquals(2, actual.size());
+        assertTrue(actual.contains(Red.class.getName()));
+        assertTrue(actual.contains(Green.class.getName()));
+    }
+
 
-}
\ No newline at end of file
+}
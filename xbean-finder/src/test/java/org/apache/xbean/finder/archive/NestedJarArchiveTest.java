@@ -0,0 +1,191 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.archive;
+
+import org.acme.foo.Blue;
+import org.acme.foo.Color;
+import org.acme.foo.Green;
+import org.acme.foo.Red;
+import org.apache.xbean.finder.AnnotationFinder;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class NestedJarArchiveTest {
+
+    private static File fatJar;
+
+    @BeforeClass
+    public static void classSetUp() throws Exception {
+        final byte[] stored = read(new FileInputStream(Archives.jarArchive(Blue.class, Blue.Navy.class, Blue.Sky.class)));
+        final byte[] deflated = read(new FileInputStream(Archives.jarArchive(Green.class, Green.Emerald.class)));
+
+        fatJar = File.createTempFile("fat", ".jar");
+        final ZipOutputStream out = new ZipOutputStream(new FileOutputStream(fatJar));
+        try {
+            // boot loader classes are at the root and are not part of the application
+            add(out, "org/springframework/boot/loader/Launcher.class", bytecode(Red.Pink.class), false);
+            add(out, "BOOT-INF/classes/" + Red.class.getName().replace('.', '/') + ".class", bytecode(Red.class), false);
+            add(out, "BOOT-INF/classes/" + Red.CandyApple.class.getName().replace('.', '/') + ".class", bytecode(Red.CandyApple.class), false);
+            add(out, "BOOT-INF/lib/blue.jar", stored, true);
+            add(out, "BOOT-INF/lib/green.jar", deflated, false);
+        } finally {
+            out.close();
+        }
+    }
+
+    @Test
+    public void expand() throws Exception {
+        final URL url = fatJar.toURI().toURL();
+        final CompositeArchive archive = NestedJarArchive.expand(new URLClassLoader(new URL[0]), url);
+        assertEquals(3, archive.getArchives().size());
+
+        final List<String> names = new ArrayList<String>();
+        for (Archive.Entry entry : archive) {
+            names.add(entry.getName());
+            assertNotNull(entry.getBytecode());
+        }
+        assertEquals(7, names.size());
+        assertTrue(names.contains(Red.class.getName()));
+        assertTrue(names.contains(Red.CandyApple.class.getName()));
+        assertTrue(names.contains(Blue.Navy.class.getName()));
+        assertTrue(names.contains(Green.Emerald.class.getName()));
+
+        for (Class<?> clazz : new Class<?>[]{Red.class, Blue.Sky.class, Green.class}) {
+            assertEquals(bytecode(clazz).length, read(archive.getBytecode(clazz.getName())).length);
+        }
+        try {
+            archive.getBytecode("org.springframework.boot.loader.Launcher");
+            fail("ClassNotFoundException should have been thrown");
+        } catch (ClassNotFoundException e) {
+            // pass
+        }
+
+        final AnnotationFinder finder = new AnnotationFinder(archive);
+        assertEquals(7, finder.findAnnotatedClasses(Color.class).size());
+    }
+
+    @Test
+    public void nestedUrl() throws Exception {
+        final URL url = new URL("jar:" + fatJar.toURI().toURL() + "!/BOOT-INF/lib/green.jar!/");
+        assertTrue(NestedJarArchive.isNested(url));
+
+        final Archive archive = ClasspathArchive.archive(new URLClassLoader(new URL[0]), url);
+        assertTrue(archive instanceof NestedJarArchive);
+
+        final List<String> names = new ArrayList<String>();
+        for (Archive.Entry entry : archive) {
+            names.add(entry.getName());
+        }
+        assertEquals(2, names.size());
+        assertTrue(names.contains(Green.class.getName()));
+        assertTrue(names.contains(Green.Emerald.class.getName()));
+    }
+
+    @Test
+    public void nestedUrlsOfOneJar() throws Exception {
+        final URL green = new URL("jar:" + fatJar.toURI().toURL() + "!/BOOT-INF/lib/green.jar!/");
+        final URL blue = new URL("jar:" + fatJar.toURI().toURL() + "!/BOOT-INF/lib/blue.jar!/");
+
+        final List<Archive> archives = ClasspathArchive.archives(new URLClassLoader(new URL[0]), green, blue);
+        assertEquals(2, archives.size());
+        assertEquals("BOOT-INF/lib/green.jar", ((NestedJarArchive) archives.get(0)).getPath());
+        assertEquals("BOOT-INF/lib/blue.jar", ((NestedJarArchive) archives.get(1)).getPath());
+
+        final AnnotationFinder finder = new AnnotationFinder(new CompositeArchive(archives));
+        assertEquals(5, finder.findAnnotatedClasses(Color.class).size());
+    }
+
+    @Test
+    public void close() throws Exception {
+        final MappedJarArchive outer = new MappedJarArchive(new URLClassLoader(new URL[0]), fatJar.toURI().toURL());
+        final NestedJarArchive green = new NestedJarArchive(new URLClassLoader(new URL[0]), outer, "BOOT-INF/lib/green.jar");
+        final NestedJarArchive blue = new NestedJarArchive(new URLClassLoader(new URL[0]), outer, "BOOT-INF/lib/blue.jar");
+
+        // the nested jars keep the outer one mapped
+        outer.close();
+        assertTrue(Arrays.equals(bytecode(Green.class), read(green.getBytecode(Green.class.getName()))));
+        assertTrue(Arrays.equals(bytecode(Blue.class), read(blue.getBytecode(Blue.class.getName()))));
+
+        new CompositeArchive(green, blue).close();
+        try {
+            blue.getBytecode(Blue.class.getName());
+            fail("IOException should have been thrown");
+        } catch (IOException e) {
+            // pass
+        }
+    }
+
+    @Test
+    public void notNested() throws Exception {
+        assertFalse(NestedJarArchive.isNested(new URL("jar:" + fatJar.toURI().toURL() + "!/")));
+        assertFalse(NestedJarArchive.isNested(new URL("jar:" + fatJar.toURI().toURL() + "!/com/acme/jars/")));
+        assertFalse(NestedJarArchive.isNested(new URL("jar:" + fatJar.toURI().toURL() + "!/META-INF/x.jarindex")));
+    }
+
+    private static void add(ZipOutputStream out, String name, byte[] bytes, boolean stored) throws Exception {
+        final ZipEntry entry = new ZipEntry(name);
+        if (stored) {
+            final CRC32 crc = new CRC32();
+            crc.update(bytes);
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(bytes.length);
+            entry.setCompressedSize(bytes.length);
+            entry.setCrc(crc.getValue());
+        }
+        out.putNextEntry(entry);
+        out.write(bytes);
+        out.closeEntry();
+    }
+
+    private static byte[] bytecode(Class<?> clazz) throws Exception {
+        return read(NestedJarArchiveTest.class.getClassLoader().getResourceAsStream(clazz.getName().replace('.', '/') + ".class"));
+    }
+
+    private static byte[] read(InputStream in) throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[1024];
+        for (int length = in.read(buffer); length != -1; length = in.read(buffer)) {
+            out.write(buffer, 0, length);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+}